@@ -1,7 +1,10 @@
 package com.intellispend.config;
 
+import com.intellispend.service.PrincipalCache;
+import com.intellispend.service.UserDetailsImpl;
 import com.intellispend.service.UserDetailsServiceImpl;
 import com.intellispend.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -18,11 +21,19 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 
+/**
+ * Authenticates requests carrying a bearer token. In stateless mode the principal is built from
+ * the token's user id and roles, without touching the database; otherwise, and for tokens that
+ * predate those claims, the user is loaded through {@link PrincipalCache}. Tokens of users
+ * revoked in the cache are rejected in both modes.
+ */
 @Slf4j
 @RequiredArgsConstructor
 public class AuthTokenFilter extends OncePerRequestFilter {
     private final JwtUtil jwtUtil;
     private final UserDetailsServiceImpl userDetailsService;
+    private final PrincipalCache principalCache;
+    private final boolean stateless;
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request,
@@ -31,10 +42,9 @@ public class AuthTokenFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && jwtUtil.validateJwtToken(jwt)) {
-                String username = jwtUtil.getUserNameFromJwtToken(jwt);
-
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            Claims claims = jwt != null ? jwtUtil.parseJwtToken(jwt) : null;
+            UserDetails userDetails = claims != null ? principal(claims) : null;
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(
                                 userDetails,
@@ -51,6 +61,20 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    private UserDetails principal(Claims claims) {
+        Long userId = jwtUtil.getUserId(claims);
+        if (userId != null && principalCache.isRevoked(userId)) {
+            log.warn("Rejected token of revoked user {}", userId);
+            return null;
+        }
+        UserDetails userDetails = stateless ? jwtUtil.getPrincipal(claims) : null;
+        if (userDetails == null) {
+            userDetails = principalCache.get(claims.getSubject(),
+                    username -> (UserDetailsImpl) userDetailsService.loadUserByUsername(username));
+        }
+        return userDetails;
+    }
+
     private String parseJwt(HttpServletRequest request) {
         String headerAuth = request.getHeader("Authorization");
 
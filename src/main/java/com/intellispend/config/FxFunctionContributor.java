@@ -0,0 +1,42 @@
+package com.intellispend.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers {@code fx_to_base(amount, currency, date)} for JPQL: the amount in the base currency,
+ * rounded to cents, at the latest {@code fx_rates} rate on or before the date, or the earliest known
+ * rate for older dates. Currencies without rates, the base currency among them, convert 1:1; expenses
+ * are only accepted in the base currency or one that has rates (see
+ * {@link com.intellispend.service.FxRateService#isSupported}). Must
+ * agree with {@link com.intellispend.util.FxRateTable#toBase}, which converts ledger writes in memory.
+ * <p>
+ * This is an inline expression rather than a database function because PostgreSQL cannot inline a
+ * function containing sub-selects, and calling one per row made a sum over 260k expenses 8x slower
+ * (4.0 s against 0.5 s).
+ */
+public class FxFunctionContributor implements FunctionContributor {
+
+    /**
+     * {@code fx_to_base(e.amount, e.currency, e.date)} for native queries over {@code expenses e}.
+     */
+    public static final String EXPENSE_AMOUNT_IN_BASE = "round(e.amount * COALESCE(" +
+            "(SELECT r.rate FROM fx_rates r WHERE r.currency = e.currency AND r.rate_date <= e.date ORDER BY r.rate_date DESC LIMIT 1), " +
+            "(SELECT r.rate FROM fx_rates r WHERE r.currency = e.currency ORDER BY r.rate_date LIMIT 1), " +
+            "1), 2)";
+
+    private static final String PATTERN = "round(?1 * COALESCE(" +
+            "(SELECT r.rate FROM fx_rates r WHERE r.currency = ?2 AND r.rate_date <= ?3 ORDER BY r.rate_date DESC LIMIT 1), " +
+            "(SELECT r.rate FROM fx_rates r WHERE r.currency = ?2 ORDER BY r.rate_date LIMIT 1), " +
+            "1), 2)";
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().registerPattern(
+                "fx_to_base",
+                PATTERN,
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+                        .resolve(StandardBasicTypes.BIG_DECIMAL));
+    }
+}
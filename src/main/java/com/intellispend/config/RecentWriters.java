@@ -0,0 +1,53 @@
+package com.intellispend.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.intellispend.service.ExpenseChangedEvent;
+import com.intellispend.service.UserDetailsImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+
+/**
+ * Users whose expense writes committed within the replica lag tolerance. Their read-only
+ * transactions stay on the primary so they see what they just wrote; everyone else may read from
+ * the replica.
+ * <p>
+ * Held in memory, so a user whose next request lands on another node may briefly read stale data
+ * there.
+ */
+public class RecentWriters {
+    private static final long MAX_TRACKED_USERS = 100_000;
+
+    private final Cache<Long, Boolean> writers;
+
+    public RecentWriters(Duration lagTolerance) {
+        this(lagTolerance, Ticker.systemTicker());
+    }
+
+    RecentWriters(Duration lagTolerance, Ticker ticker) {
+        this.writers = Caffeine.newBuilder()
+                .maximumSize(MAX_TRACKED_USERS)
+                .expireAfterWrite(lagTolerance)
+                .ticker(ticker)
+                .build();
+    }
+
+    @TransactionalEventListener
+    public void onExpenseChanged(ExpenseChangedEvent event) {
+        writers.put(event.userId(), Boolean.TRUE);
+    }
+
+    /**
+     * Whether the user authenticated on this thread wrote within the lag tolerance.
+     */
+    public boolean currentUserWroteRecently() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null
+                && authentication.getPrincipal() instanceof UserDetailsImpl user
+                && writers.getIfPresent(user.getId()) != null;
+    }
+}
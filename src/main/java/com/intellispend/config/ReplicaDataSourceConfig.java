@@ -0,0 +1,70 @@
+package com.intellispend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Read replica support, active when {@code replica.url} is set. {@code spring.datasource} stays the
+ * primary; {@code @Transactional(readOnly = true)} paths (insights, reports, trends, scheduled
+ * report batches) read from a separate replica pool, except for users who wrote within
+ * {@code replica.lag-tolerance}. Flyway, Hibernate bootstrap and all writes use the primary.
+ * Without {@code replica.url} Spring Boot's single pool is used as before.
+ */
+@Configuration
+@ConditionalOnExpression("!'${replica.url:}'.isEmpty()")
+@Slf4j
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${replica.url}") String url,
+                                              @Value("${replica.username}") String username,
+                                              @Value("${replica.password}") String password,
+                                              @Value("${replica.pool-size}") int poolSize) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("replica");
+        replica.setJdbcUrl(url);
+        replica.setUsername(username);
+        replica.setPassword(password);
+        replica.setDriverClassName(properties.determineDriverClassName());
+        replica.setMaximumPoolSize(poolSize);
+        replica.setReadOnly(true);
+        return replica;
+    }
+
+    @Bean
+    public RecentWriters recentWriters(@Value("${replica.lag-tolerance}") Duration lagTolerance) {
+        return new RecentWriters(lagTolerance);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 RecentWriters recentWriters,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${replica.lag-tolerance}") Duration lagTolerance) {
+        log.info("Routing read-only transactions to the replica pool, read-your-writes window {}", lagTolerance);
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replica, recentWriters, meterRegistry));
+    }
+}
@@ -0,0 +1,63 @@
+package com.intellispend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends connections for read-only transactions to the replica and everything else, including work
+ * outside a transaction, to the primary. A read-only transaction of a user in {@link RecentWriters}
+ * also goes to the primary.
+ * <p>
+ * The read-only flag is only known once the transaction has started, so this must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}; the target is then
+ * chosen at the first statement. Choices are counted as {@code datasource.route} with
+ * {@code target} and {@code reason} tags.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    enum Target {
+        PRIMARY, REPLICA
+    }
+
+    private final RecentWriters recentWriters;
+    private final Counter readWrite;
+    private final Counter readOnly;
+    private final Counter recentWrite;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, RecentWriters recentWriters,
+                                    MeterRegistry meterRegistry) {
+        this.recentWriters = recentWriters;
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+        this.readWrite = route(meterRegistry, Target.PRIMARY, "read-write");
+        this.readOnly = route(meterRegistry, Target.REPLICA, "read-only");
+        this.recentWrite = route(meterRegistry, Target.PRIMARY, "recent-write");
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            readWrite.increment();
+            return Target.PRIMARY;
+        }
+        if (recentWriters.currentUserWroteRecently()) {
+            recentWrite.increment();
+            return Target.PRIMARY;
+        }
+        readOnly.increment();
+        return Target.REPLICA;
+    }
+
+    private static Counter route(MeterRegistry meterRegistry, Target target, String reason) {
+        return Counter.builder("datasource.route")
+                .tag("target", target.name().toLowerCase())
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,21 @@
+package com.intellispend.config;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers {@code fts_match(description, tsquery)} for criteria queries. The tsvector expression
+ * must stay identical to idx_expenses_description_fts (V4) for PostgreSQL to use the index.
+ */
+public class SearchFunctionContributor implements FunctionContributor {
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        functionContributions.getFunctionRegistry().registerPattern(
+                "fts_match",
+                "(to_tsvector('simple', coalesce(?1, '')) @@ to_tsquery('simple', ?2))",
+                functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+                        .resolve(StandardBasicTypes.BOOLEAN));
+    }
+}
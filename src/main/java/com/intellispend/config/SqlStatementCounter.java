@@ -0,0 +1,39 @@
+package com.intellispend.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts SQL statements prepared on the current thread while a count is active. Registered as the
+ * Hibernate statement inspector; plain JDBC callers report their statements with {@link #increment()}.
+ */
+public class SqlStatementCounter implements StatementInspector {
+    private static final ThreadLocal<long[]> COUNT = new ThreadLocal<>();
+
+    public static void start() {
+        COUNT.set(new long[1]);
+    }
+
+    public static long get() {
+        long[] count = COUNT.get();
+        return count != null ? count[0] : 0;
+    }
+
+    public static long stop() {
+        long count = get();
+        COUNT.remove();
+        return count;
+    }
+
+    public static void increment() {
+        long[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        increment();
+        return sql;
+    }
+}
@@ -1,8 +1,10 @@
 package com.intellispend.config;
 
+import com.intellispend.service.PrincipalCache;
 import com.intellispend.service.UserDetailsServiceImpl;
 import com.intellispend.util.JwtUtil;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -24,10 +26,14 @@ public class WebSecurityConfig {
     private final UserDetailsServiceImpl userDetailsService;
     private final AuthEntryPointJwt unauthorizedHandler;
     private final JwtUtil jwtUtil;
+    private final PrincipalCache principalCache;
+
+    @Value("${jwt.stateless}")
+    private boolean statelessAuth;
 
     @Bean
     public AuthTokenFilter authenticationJwtTokenFilter() {
-        return new AuthTokenFilter(jwtUtil, userDetailsService);
+        return new AuthTokenFilter(jwtUtil, userDetailsService, principalCache, statelessAuth);
     }
 
     @Bean
@@ -4,9 +4,10 @@ import com.intellispend.entity.Budget;
 import com.intellispend.entity.User;
 import com.intellispend.repository.BudgetRepository;
 import com.intellispend.repository.UserRepository;
+import com.intellispend.service.UserDetailsImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
@@ -25,10 +26,9 @@ public class BudgetController {
             @RequestParam String category,
             @RequestParam BigDecimal amount,
             @RequestParam String month, // YYYY-MM
-            Authentication authentication) {
+            @AuthenticationPrincipal UserDetailsImpl principal) {
         
-        User user = userRepository.findByUsername(authentication.getName())
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        User user = userRepository.getReferenceById(principal.getId());
 
         YearMonth yearMonth = YearMonth.parse(month);
         
@@ -44,9 +44,8 @@ public class BudgetController {
     }
 
     @GetMapping
-    public ResponseEntity<List<Budget>> getBudgets(Authentication authentication) {
-        User user = userRepository.findByUsername(authentication.getName())
-                .orElseThrow(() -> new RuntimeException("User not found"));
+    public ResponseEntity<List<Budget>> getBudgets(@AuthenticationPrincipal UserDetailsImpl principal) {
+        User user = userRepository.getReferenceById(principal.getId());
         return ResponseEntity.ok(budgetRepository.findAllByUser(user));
     }
 }
@@ -2,13 +2,16 @@ package com.intellispend.controller;
 
 import com.intellispend.dto.ExpenseRequest;
 import com.intellispend.dto.ExpenseResponse;
+import com.intellispend.dto.ImportJobResponse;
+import com.intellispend.dto.ImportReport;
 import com.intellispend.dto.MessageResponse;
 import com.intellispend.service.ExpenseService;
+import com.intellispend.service.UserDetailsImpl;
 import jakarta.validation.Valid;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -18,23 +21,23 @@ import java.util.List;
 @RequiredArgsConstructor
 public class ExpenseController {
     private final ExpenseService expenseService;
-    private final com.intellispend.service.CsvService csvService;
+    private final com.intellispend.service.ExpenseImportService expenseImportService;
 
     @PostMapping
-    public ResponseEntity<ExpenseResponse> createExpense(@Valid @RequestBody ExpenseRequest expenseRequest, Authentication authentication) {
-        return ResponseEntity.ok(expenseService.createExpense(expenseRequest, authentication.getName()));
+    public ResponseEntity<ExpenseResponse> createExpense(@Valid @RequestBody ExpenseRequest expenseRequest, @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseService.createExpense(expenseRequest, user));
     }
 
     @GetMapping
-    public ResponseEntity<List<ExpenseResponse>> getAllExpenses(Authentication authentication) {
-        return ResponseEntity.ok(expenseService.getAllExpenses(authentication.getName()));
+    public ResponseEntity<List<ExpenseResponse>> getAllExpenses(@AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseService.getAllExpenses(user));
     }
 
     @GetMapping("/paginated")
     public ResponseEntity<org.springframework.data.domain.Page<ExpenseResponse>> getPaginatedExpenses(
             @org.springframework.data.web.PageableDefault(size = 10, sort = "date", direction = org.springframework.data.domain.Sort.Direction.DESC) org.springframework.data.domain.Pageable pageable,
-            Authentication authentication) {
-        return ResponseEntity.ok(expenseService.getPaginatedExpenses(authentication.getName(), pageable));
+            @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseService.getPaginatedExpenses(user, pageable));
     }
 
     @GetMapping("/filter")
@@ -45,26 +48,75 @@ public class ExpenseController {
             @RequestParam(required = false) java.math.BigDecimal minAmount,
             @RequestParam(required = false) java.math.BigDecimal maxAmount,
             @RequestParam(required = false) String description,
+            @RequestParam(defaultValue = "SUBSTRING") com.intellispend.dto.SearchMode searchMode,
             @org.springframework.data.web.PageableDefault(size = 10, sort = "date", direction = org.springframework.data.domain.Sort.Direction.DESC) org.springframework.data.domain.Pageable pageable,
-            Authentication authentication) {
+            @AuthenticationPrincipal UserDetailsImpl user) {
         return ResponseEntity.ok(expenseService.getFilteredExpenses(
-                authentication.getName(), category, startDate, endDate, minAmount, maxAmount, description, pageable));
+                user, category, startDate, endDate, minAmount, maxAmount, description, searchMode, pageable));
+    }
+
+    @GetMapping("/scroll")
+    public ResponseEntity<com.intellispend.dto.CursorPage<ExpenseResponse>> scrollExpenses(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseService.scrollFilteredExpenses(
+                user, null, null, null, null, null, null, null, cursor, size));
+    }
+
+    @GetMapping("/filter/scroll")
+    public ResponseEntity<com.intellispend.dto.CursorPage<ExpenseResponse>> scrollFilteredExpenses(
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate startDate,
+            @RequestParam(required = false) @org.springframework.format.annotation.DateTimeFormat(iso = org.springframework.format.annotation.DateTimeFormat.ISO.DATE) java.time.LocalDate endDate,
+            @RequestParam(required = false) java.math.BigDecimal minAmount,
+            @RequestParam(required = false) java.math.BigDecimal maxAmount,
+            @RequestParam(required = false) String description,
+            @RequestParam(defaultValue = "SUBSTRING") com.intellispend.dto.SearchMode searchMode,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size,
+            @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseService.scrollFilteredExpenses(
+                user, category, startDate, endDate, minAmount, maxAmount, description, searchMode, cursor, size));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<ExpenseResponse>> searchExpenses(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "20") int limit,
+            @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseService.searchExpenses(user, q, limit));
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<ExpenseResponse> updateExpense(@PathVariable Long id, @Valid @RequestBody ExpenseRequest expenseRequest, Authentication authentication) {
-        return ResponseEntity.ok(expenseService.updateExpense(id, expenseRequest, authentication.getName()));
+    public ResponseEntity<ExpenseResponse> updateExpense(@PathVariable Long id, @Valid @RequestBody ExpenseRequest expenseRequest, @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseService.updateExpense(id, expenseRequest, user));
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<MessageResponse> deleteExpense(@PathVariable Long id, Authentication authentication) {
-        expenseService.deleteExpense(id, authentication.getName());
+    public ResponseEntity<MessageResponse> deleteExpense(@PathVariable Long id, @AuthenticationPrincipal UserDetailsImpl user) {
+        expenseService.deleteExpense(id, user);
         return ResponseEntity.ok(new MessageResponse("Expense deleted successfully"));
     }
 
     @PostMapping("/upload")
-    public ResponseEntity<List<ExpenseResponse>> uploadExpenses(@RequestParam("file") org.springframework.web.multipart.MultipartFile file, Authentication authentication) {
-        List<ExpenseRequest> requests = csvService.parseCsv(file);
-        return ResponseEntity.ok(expenseService.createExpenses(requests, authentication.getName()));
+    public ResponseEntity<ImportReport> uploadExpenses(@RequestParam("file") org.springframework.web.multipart.MultipartFile file, @AuthenticationPrincipal UserDetailsImpl user) throws java.io.IOException {
+        try (java.io.InputStream in = file.getInputStream()) {
+            return ResponseEntity.ok(expenseImportService.importCsv(in, user));
+        }
+    }
+
+    /**
+     * Imports a (large) CSV in the background; poll {@code GET /imports/{id}} for progress.
+     */
+    @PostMapping("/imports")
+    public ResponseEntity<ImportJobResponse> submitImport(@RequestParam("file") org.springframework.web.multipart.MultipartFile file, @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.status(org.springframework.http.HttpStatus.ACCEPTED)
+                .body(expenseImportService.submit(file, user));
+    }
+
+    @GetMapping("/imports/{id}")
+    public ResponseEntity<ImportJobResponse> getImport(@PathVariable Long id, @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(expenseImportService.getJob(id, user));
     }
 }
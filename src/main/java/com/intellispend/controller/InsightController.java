@@ -1,11 +1,14 @@
 package com.intellispend.controller;
 
 import com.intellispend.dto.InsightResponse;
+import com.intellispend.dto.TrendResponse;
 import com.intellispend.service.InsightService;
+import com.intellispend.service.TrendService;
+import com.intellispend.service.UserDetailsImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.YearMonth;
@@ -15,13 +18,25 @@ import java.time.YearMonth;
 @RequiredArgsConstructor
 public class InsightController {
     private final InsightService insightService;
+    private final TrendService trendService;
 
     @GetMapping
     public ResponseEntity<InsightResponse> getInsights(
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
-            Authentication authentication) {
+            @AuthenticationPrincipal UserDetailsImpl user) {
         
         YearMonth targetMonth = (month != null) ? month : YearMonth.now();
-        return ResponseEntity.ok(insightService.getMonthlyInsights(authentication.getName(), targetMonth));
+        return ResponseEntity.ok(insightService.getMonthlyInsights(user, targetMonth));
+    }
+
+    @GetMapping("/trends")
+    public ResponseEntity<TrendResponse> getTrends(
+            @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth to,
+            @RequestParam(defaultValue = "12") int months,
+            @RequestParam(required = false) String category,
+            @AuthenticationPrincipal UserDetailsImpl user) {
+
+        YearMonth lastMonth = (to != null) ? to : YearMonth.now();
+        return ResponseEntity.ok(trendService.getTrends(user, lastMonth, months, category));
     }
 }
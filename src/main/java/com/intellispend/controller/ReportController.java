@@ -1,14 +1,18 @@
 package com.intellispend.controller;
 
+import com.intellispend.exception.InvalidRequestException;
 import com.intellispend.service.ReportService;
+import com.intellispend.service.UserDetailsImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
 import java.time.YearMonth;
 
 @RestController
@@ -18,30 +22,53 @@ public class ReportController {
     private final ReportService reportService;
 
     @GetMapping("/pdf")
-    public ResponseEntity<byte[]> downloadPdf(
+    public ResponseEntity<StreamingResponseBody> downloadPdf(
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
-            Authentication authentication) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @AuthenticationPrincipal UserDetailsImpl user) {
 
-        YearMonth targetMonth = (month != null) ? month : YearMonth.now();
-        byte[] data = reportService.generatePdfReport(authentication.getName(), targetMonth);
+        ReportPeriod period = ReportPeriod.of(month, from, to);
+        StreamingResponseBody body = out -> reportService.writePdfReport(user, period.from(), period.to(), out);
 
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=report_" + targetMonth + ".pdf")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=report_" + period.label() + ".pdf")
                 .contentType(MediaType.APPLICATION_PDF)
-                .body(data);
+                .body(body);
     }
 
     @GetMapping("/csv")
-    public ResponseEntity<byte[]> downloadCsv(
+    public ResponseEntity<StreamingResponseBody> downloadCsv(
             @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
-            Authentication authentication) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @AuthenticationPrincipal UserDetailsImpl user) {
 
-        YearMonth targetMonth = (month != null) ? month : YearMonth.now();
-        byte[] data = reportService.generateCsvReport(authentication.getName(), targetMonth);
+        ReportPeriod period = ReportPeriod.of(month, from, to);
+        StreamingResponseBody body = out -> reportService.writeCsvReport(user, period.from(), period.to(), out);
 
         return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=report_" + targetMonth + ".csv")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=report_" + period.label() + ".csv")
                 .contentType(MediaType.parseMediaType("text/csv"))
-                .body(data);
+                .body(body);
+    }
+
+    /**
+     * Either an explicit {@code from}/{@code to} range or a single month (current month by default).
+     */
+    private record ReportPeriod(LocalDate from, LocalDate to, String label) {
+        static ReportPeriod of(YearMonth month, LocalDate from, LocalDate to) {
+            if (from == null && to == null) {
+                YearMonth targetMonth = (month != null) ? month : YearMonth.now();
+                return new ReportPeriod(targetMonth.atDay(1), targetMonth.atEndOfMonth(), targetMonth.toString());
+            }
+            if (month != null || from == null || to == null) {
+                throw new InvalidRequestException("Provide either month, or both from and to");
+            }
+            if (from.isAfter(to)) {
+                throw new InvalidRequestException("from must not be after to");
+            }
+            return new ReportPeriod(from, to, from + "_" + to);
+        }
     }
 }
@@ -0,0 +1,8 @@
+package com.intellispend.dto;
+
+public enum AiSummaryStatus {
+    READY,
+    PENDING,
+    FAILED,
+    UNAVAILABLE
+}
@@ -4,6 +4,7 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
+import com.intellispend.util.FxRateTable;
 import lombok.Data;
 
 import java.math.BigDecimal;
@@ -32,4 +33,9 @@ public class ExpenseRequest {
     
     @Size(max = 10, message = "Currency code is too long")
     private String currency;
+
+    // Codes are stored upper case, as in the FX rates; blank means the base currency
+    public void setCurrency(String currency) {
+        this.currency = FxRateTable.currencyCode(currency);
+    }
 }
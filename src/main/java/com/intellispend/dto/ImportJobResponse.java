@@ -0,0 +1,29 @@
+package com.intellispend.dto;
+
+import com.intellispend.entity.EImportStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportJobResponse {
+    private Long id;
+    private String fileName;
+    private EImportStatus status;
+    private long rowsRead;
+    private long accepted;
+    private long rejected;
+    private long duplicates;
+    private String message;
+    private List<ImportRowError> errors;
+    private List<Long> duplicateLines;
+    private LocalDateTime createdAt;
+    private LocalDateTime completedAt;
+}
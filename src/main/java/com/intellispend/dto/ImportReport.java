@@ -0,0 +1,31 @@
+package com.intellispend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a CSV import. {@code errors} lists rejected rows and {@code duplicateLines} the rows
+ * skipped because they were imported before, each in file order and up to a configured maximum;
+ * the {@code ...Truncated} flags are set when there were more than are listed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportReport {
+    private long rowsRead;
+    private long accepted;
+    private long rejected;
+    private long duplicates;
+    @Builder.Default
+    private List<ImportRowError> errors = new ArrayList<>();
+    private boolean errorsTruncated;
+    @Builder.Default
+    private List<Long> duplicateLines = new ArrayList<>();
+    private boolean duplicateLinesTruncated;
+}
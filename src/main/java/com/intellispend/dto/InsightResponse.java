@@ -18,6 +18,7 @@ public class InsightResponse {
     private BigDecimal previousMonthTotal;
     private Double monthOverMonthPercentage;
     private String aiSummary;
+    private AiSummaryStatus aiSummaryStatus;
     private java.util.Map<java.time.LocalDate, java.math.BigDecimal> dailySpending;
     private java.util.Map<Integer, java.math.BigDecimal> weeklySpending;
 }
@@ -0,0 +1,30 @@
+package com.intellispend.dto;
+
+import com.intellispend.entity.User;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+
+/**
+ * Aggregates for one user and month, computed once and shared by insights and reports.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MonthlySnapshot {
+    private User user;
+    private YearMonth month;
+    private Map<String, BigDecimal> categoryTotals;
+    private BigDecimal totalSpending;
+    private BigDecimal previousMonthTotal;
+    private Double monthOverMonthPercentage;
+    private Map<LocalDate, BigDecimal> dailySpending;
+    private Map<Integer, BigDecimal> weeklySpending;
+}
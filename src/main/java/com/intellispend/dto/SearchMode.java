@@ -0,0 +1,11 @@
+package com.intellispend.dto;
+
+/**
+ * How the description filter matches text.
+ * SUBSTRING: case-insensitive "contains" (trigram index).
+ * WORDS: every word in the query must prefix-match a word in the description (full-text index).
+ */
+public enum SearchMode {
+    SUBSTRING,
+    WORDS
+}
@@ -0,0 +1,28 @@
+package com.intellispend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+/**
+ * One month of a spending series. {@code minAmount} and {@code maxAmount} are null for a month
+ * without expenses; {@code rollingTwelveMonthTotal} covers this month and the eleven before it.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendPoint {
+    private YearMonth month;
+    private long expenseCount;
+    private BigDecimal total;
+    private BigDecimal minAmount;
+    private BigDecimal maxAmount;
+    private BigDecimal rollingTwelveMonthTotal;
+    private BigDecimal yearAgoTotal;
+    private Double yearOverYearPercentage;
+}
@@ -0,0 +1,21 @@
+package com.intellispend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendResponse {
+    private YearMonth from;
+    private YearMonth to;
+    private List<TrendPoint> months;
+    private Map<String, List<TrendPoint>> categories;
+}
@@ -1,5 +1,6 @@
 package com.intellispend.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -10,7 +11,8 @@ import java.math.BigDecimal;
 import java.time.YearMonth;
 
 @Entity
-@Table(name = "budgets")
+@Table(name = "budgets",
+        uniqueConstraints = @UniqueConstraint(name = "uk_budgets_user_category_month", columnNames = {"user_id", "category", "month"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,9 +28,11 @@ public class Budget {
     @Column(nullable = false)
     private BigDecimal amount;
 
-    @Column(nullable = false)
+    @Column(nullable = false, length = 7)
+    @Convert(converter = YearMonthConverter.class)
     private YearMonth month;
 
+    @JsonIgnore
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
@@ -0,0 +1,44 @@
+package com.intellispend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Remembered category for a normalised expense description. AI results have no {@code userId} and
+ * are shared across users; corrections belong to the user who made them. Maintained by
+ * {@link com.intellispend.service.CategoryMemoService}.
+ */
+@Entity
+@Table(name = "category_memo")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CategoryMemo {
+    public static final String SOURCE_AI = "AI";
+    public static final String SOURCE_USER = "USER";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "description_key", nullable = false, length = 255)
+    private String descriptionKey;
+
+    @Column(nullable = false, length = 50)
+    private String category;
+
+    @Column(nullable = false, length = 10)
+    private String source;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,8 @@
+package com.intellispend.entity;
+
+public enum ECategorySource {
+    // Chosen by the user, when creating the expense or by correcting it later
+    USER,
+    // Filled in by CategorizationService (corrections memo, keyword rules, local model or OpenAI)
+    AUTO
+}
@@ -0,0 +1,8 @@
+package com.intellispend.entity;
+
+public enum EImportStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,9 @@
+package com.intellispend.entity;
+
+public enum EReportStatus {
+    RUNNING,
+    // Report item only: waiting for its AI summary, retried without counting an attempt
+    AWAITING_SUMMARY,
+    COMPLETED,
+    FAILED
+}
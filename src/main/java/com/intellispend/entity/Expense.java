@@ -21,8 +21,10 @@ import org.hibernate.annotations.Where;
 @SQLDelete(sql = "UPDATE expenses SET is_deleted = true WHERE id=?")
 @Where(clause = "is_deleted=false")
 public class Expense {
+    // Ids are allocated in blocks so bulk inserts can be batched (see V7 migration)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "expenses_id_seq")
+    @SequenceGenerator(name = "expenses_id_seq", sequenceName = "expenses_id_seq", allocationSize = 500)
     private Long id;
 
     @Column(nullable = false)
@@ -31,6 +33,11 @@ public class Expense {
     @Column(nullable = false)
     private String category;
 
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    @Builder.Default
+    private ECategorySource categorySource = ECategorySource.AUTO;
+
     private String description;
 
     @Column(nullable = false)
@@ -38,6 +45,10 @@ public class Expense {
 
     private String paymentMethod;
 
+    // Set on rows created by a CSV import, to recognise the same row in a later upload
+    @Column(name = "import_fingerprint", length = 48)
+    private String importFingerprint;
+
     @Column(nullable = false)
     @Builder.Default
     private String currency = "USD";
@@ -0,0 +1,35 @@
+package com.intellispend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A CSV row an {@link ImportJob} did not import: rejected with a reason, or skipped because the
+ * user already has it ({@code duplicate}).
+ */
+@Entity
+@Table(name = "import_job_errors")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportJobError {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "line_number", nullable = false)
+    private long lineNumber;
+
+    @Column(nullable = false, length = 500)
+    private String message;
+
+    @Column(nullable = false)
+    private boolean duplicate;
+}
@@ -9,7 +9,8 @@ import lombok.NoArgsConstructor;
 import java.time.YearMonth;
 
 @Entity
-@Table(name = "insights")
+@Table(name = "insights",
+        uniqueConstraints = @UniqueConstraint(name = "uk_insights_user_month", columnNames = {"user_id", "month"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -19,7 +20,8 @@ public class Insight {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    @Column(nullable = false, length = 7)
+    @Convert(converter = YearMonthConverter.class)
     private YearMonth month;
 
     @Column(columnDefinition = "TEXT")
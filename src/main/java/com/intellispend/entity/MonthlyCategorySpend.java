@@ -0,0 +1,51 @@
+package com.intellispend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+/**
+ * Rollup of non-deleted expenses per (user, category, month): total, count and amount bounds.
+ * Maintained by {@link com.intellispend.service.SpendLedgerService} on every expense write.
+ */
+@Entity
+@Table(name = "monthly_category_spend",
+        uniqueConstraints = @UniqueConstraint(name = "uk_monthly_category_spend", columnNames = {"user_id", "category", "month"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MonthlyCategorySpend {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String category;
+
+    @Column(nullable = false, length = 7)
+    @Convert(converter = YearMonthConverter.class)
+    private YearMonth month;
+
+    @Column(nullable = false)
+    private BigDecimal total;
+
+    @Column(name = "expense_count", nullable = false)
+    private long expenseCount;
+
+    // Null when the cell has no live expenses
+    @Column(name = "min_amount")
+    private BigDecimal minAmount;
+
+    @Column(name = "max_amount")
+    private BigDecimal maxAmount;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+}
@@ -0,0 +1,41 @@
+package com.intellispend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+
+/**
+ * One scheduled report batch per month. A run stays {@code RUNNING} until every user has been
+ * processed, so an interrupted batch is picked up again on the next resume check.
+ */
+@Entity
+@Table(name = "report_runs",
+        uniqueConstraints = @UniqueConstraint(name = "uk_report_runs_month", columnNames = {"month"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReportRun {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, length = 7)
+    @Convert(converter = YearMonthConverter.class)
+    private YearMonth month;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private EReportStatus status;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,51 @@
+package com.intellispend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of one user's report within a {@link ReportRun}.
+ */
+@Entity
+@Table(name = "report_run_items",
+        uniqueConstraints = @UniqueConstraint(name = "uk_report_run_items_run_user", columnNames = {"run_id", "user_id"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReportRunItem {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "run_id", nullable = false)
+    private ReportRun run;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private EReportStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "summary_deferrals", nullable = false)
+    private int summaryDeferrals;
+
+    @Column(name = "file_path", length = 500)
+    private String filePath;
+
+    @Column(length = 500)
+    private String error;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -17,6 +17,7 @@ import java.util.Set;
 @Builder
 @org.hibernate.annotations.SQLDelete(sql = "UPDATE users SET is_deleted = true WHERE id=?")
 @org.hibernate.annotations.Where(clause = "is_deleted=false")
+@EntityListeners(com.intellispend.service.UserRevocationListener.class)
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,24 @@
+package com.intellispend.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.time.YearMonth;
+
+/**
+ * Stores {@link YearMonth} as its ISO text form ("2024-05") so it can be indexed, compared
+ * and produced from SQL with {@code to_char(date, 'YYYY-MM')}.
+ */
+@Converter
+public class YearMonthConverter implements AttributeConverter<YearMonth, String> {
+
+    @Override
+    public String convertToDatabaseColumn(YearMonth month) {
+        return month != null ? month.toString() : null;
+    }
+
+    @Override
+    public YearMonth convertToEntityAttribute(String value) {
+        return value != null ? YearMonth.parse(value) : null;
+    }
+}
@@ -0,0 +1,11 @@
+package com.intellispend.exception;
+
+/**
+ * An OpenAI call turned away without being attempted, because the circuit is open or too many
+ * calls are already in flight.
+ */
+public class OpenAiUnavailableException extends OpenAiException {
+    public OpenAiUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,49 @@
+package com.intellispend.repository;
+
+import com.intellispend.entity.CategoryMemo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CategoryMemoRepository extends JpaRepository<CategoryMemo, Long> {
+    /**
+     * Shared AI results for the given keys.
+     */
+    List<CategoryMemo> findByUserIdIsNullAndDescriptionKeyIn(Collection<String> descriptionKeys);
+
+    /**
+     * Every correction one user has made.
+     */
+    List<CategoryMemo> findByUserId(Long userId);
+
+    /**
+     * Inserts or replaces the shared AI result for {@code descriptionKey}.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_memo (description_key, category, source, updated_at) " +
+            "VALUES (:descriptionKey, :category, 'AI', now()) " +
+            "ON CONFLICT (description_key) WHERE user_id IS NULL DO UPDATE " +
+            "SET category = EXCLUDED.category, updated_at = EXCLUDED.updated_at",
+            nativeQuery = true)
+    void upsertAiResult(@Param("descriptionKey") String descriptionKey,
+                        @Param("category") String category);
+
+    /**
+     * Inserts or replaces one user's correction for {@code descriptionKey}.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO category_memo (user_id, description_key, category, source, updated_at) " +
+            "VALUES (:userId, :descriptionKey, :category, 'USER', now()) " +
+            "ON CONFLICT (user_id, description_key) WHERE user_id IS NOT NULL DO UPDATE " +
+            "SET category = EXCLUDED.category, updated_at = EXCLUDED.updated_at",
+            nativeQuery = true)
+    void upsertCorrection(@Param("userId") Long userId,
+                          @Param("descriptionKey") String descriptionKey,
+                          @Param("category") String category);
+}
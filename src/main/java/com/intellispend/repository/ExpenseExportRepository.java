@@ -0,0 +1,53 @@
+package com.intellispend.repository;
+
+import com.intellispend.config.SqlStatementCounter;
+import com.intellispend.repository.projection.ExpenseExportRow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * Reads expenses for exports through a forward-only JDBC cursor. Rows are handed to the caller one
+ * at a time and never held as entities, so memory use does not depend on the size of the range.
+ * <p>
+ * PostgreSQL only honours the fetch size inside a transaction; call from a
+ * {@code @Transactional(readOnly = true)} method.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ExpenseExportRepository {
+    private static final int FETCH_SIZE = 500;
+
+    private static final String SELECT_BY_USER_AND_DATE_RANGE =
+            "SELECT date, category, description, amount, currency, payment_method FROM expenses " +
+            "WHERE user_id = ? AND date BETWEEN ? AND ? AND is_deleted = false " +
+            "ORDER BY date, id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public void streamByUserAndDateRange(Long userId, LocalDate from, LocalDate to, Consumer<ExpenseExportRow> rowHandler) {
+        SqlStatementCounter.increment();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_BY_USER_AND_DATE_RANGE,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, userId);
+            ps.setObject(2, from);
+            ps.setObject(3, to);
+            return ps;
+        }, (ResultSet rs) -> {
+            rowHandler.accept(new ExpenseExportRow(
+                    rs.getObject(1, LocalDate.class),
+                    rs.getString(2),
+                    rs.getString(3),
+                    rs.getBigDecimal(4),
+                    rs.getString(5),
+                    rs.getString(6)));
+        });
+    }
+}
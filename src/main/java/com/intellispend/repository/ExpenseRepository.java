@@ -2,12 +2,20 @@ package com.intellispend.repository;
 
 import com.intellispend.entity.Expense;
 import com.intellispend.entity.User;
+import com.intellispend.repository.projection.CategorizedDescription;
+import com.intellispend.repository.projection.CategoryTotal;
+import com.intellispend.repository.projection.DailyTotal;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 
 @Repository
@@ -15,4 +23,66 @@ public interface ExpenseRepository extends JpaRepository<Expense, Long>, JpaSpec
     List<Expense> findAllByUser(User user);
     Page<Expense> findAllByUser(User user, Pageable pageable);
     List<Expense> findAllByUserId(Long userId);
+
+    // Aggregates below are computed by the database so callers only receive a handful of rows
+    // per month instead of hydrating the user's whole expense history. Amounts are converted to the
+    // base currency row by row inside the query (fx_to_base, see FxFunctionContributor).
+
+    @Query("select e.category as category, sum(fx_to_base(e.amount, e.currency, e.date)) as total from Expense e " +
+            "where e.user = :user and e.date between :start and :end " +
+            "group by e.category")
+    List<CategoryTotal> sumByCategory(@Param("user") User user,
+                                      @Param("start") LocalDate start,
+                                      @Param("end") LocalDate end);
+
+    @Query("select e.date as date, sum(fx_to_base(e.amount, e.currency, e.date)) as total from Expense e " +
+            "where e.user = :user and e.date between :start and :end " +
+            "group by e.date")
+    List<DailyTotal> sumByDay(@Param("user") User user,
+                              @Param("start") LocalDate start,
+                              @Param("end") LocalDate end);
+
+    @Query("select coalesce(sum(fx_to_base(e.amount, e.currency, e.date)), 0) from Expense e " +
+            "where e.user = :user and e.date between :start and :end")
+    BigDecimal sumAmount(@Param("user") User user,
+                         @Param("start") LocalDate start,
+                         @Param("end") LocalDate end);
+
+    /**
+     * Ranked description search for one user: word-prefix matches (full-text index) and substring
+     * matches (trigram index), best full-text rank first, then closest trigram similarity.
+     */
+    @Query(value = "SELECT e.* FROM expenses e " +
+            "WHERE e.user_id = :userId AND e.is_deleted = false " +
+            "AND (to_tsvector('simple', coalesce(e.description, '')) @@ to_tsquery('simple', :tsQuery) " +
+            "     OR lower(e.description) LIKE :pattern ESCAPE '\\') " +
+            "ORDER BY ts_rank(to_tsvector('simple', coalesce(e.description, '')), to_tsquery('simple', :tsQuery)) DESC, " +
+            "similarity(lower(e.description), :term) DESC, e.date DESC, e.id DESC " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<Expense> searchByDescription(@Param("userId") Long userId,
+                                      @Param("tsQuery") String tsQuery,
+                                      @Param("pattern") String pattern,
+                                      @Param("term") String term,
+                                      @Param("limit") int limit);
+
+    /**
+     * Most recent described expenses whose category a user chose themselves and is one of
+     * {@code categories}, across all users: training data for the local categorization model.
+     */
+    @Query("select e.description as description, e.category as category from Expense e " +
+            "where e.categorySource = com.intellispend.entity.ECategorySource.USER " +
+            "and e.description is not null and e.category in :categories " +
+            "order by e.id desc")
+    List<CategorizedDescription> findRecentCategorized(@Param("categories") java.util.Collection<String> categories,
+                                                       Limit limit);
+
+    /**
+     * Which of {@code fingerprints} the user already has, counting deleted expenses too.
+     */
+    @Query(value = "SELECT e.import_fingerprint FROM expenses e " +
+            "WHERE e.user_id = :userId AND e.import_fingerprint IN (:fingerprints)",
+            nativeQuery = true)
+    List<String> findExistingImportFingerprints(@Param("userId") Long userId,
+                                                @Param("fingerprints") java.util.Collection<String> fingerprints);
 }
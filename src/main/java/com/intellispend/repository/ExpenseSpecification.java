@@ -1,11 +1,16 @@
 package com.intellispend.repository;
 
+import com.intellispend.dto.ExpenseCursor;
+import com.intellispend.dto.SearchMode;
 import com.intellispend.entity.Expense;
 import com.intellispend.entity.User;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
 
 public class ExpenseSpecification {
 
@@ -17,6 +22,18 @@ public class ExpenseSpecification {
             BigDecimal minAmount,
             BigDecimal maxAmount,
             String description) {
+        return filterBy(user, category, startDate, endDate, minAmount, maxAmount, description, SearchMode.SUBSTRING);
+    }
+
+    public static Specification<Expense> filterBy(
+            User user,
+            String category,
+            LocalDate startDate,
+            LocalDate endDate,
+            BigDecimal minAmount,
+            BigDecimal maxAmount,
+            String description,
+            SearchMode searchMode) {
 
         return (root, query, cb) -> {
             var predicate = cb.conjunction();
@@ -44,10 +61,54 @@ public class ExpenseSpecification {
             }
 
             if (description != null && !description.isEmpty()) {
-                predicate = cb.and(predicate, cb.like(cb.lower(root.get("description")), "%" + description.toLowerCase() + "%"));
+                if (searchMode == SearchMode.WORDS) {
+                    // Backed by idx_expenses_description_fts
+                    predicate = cb.and(predicate, cb.isTrue(cb.function("fts_match", Boolean.class,
+                            root.get("description"), cb.literal(toPrefixTsQuery(description)))));
+                } else {
+                    // Backed by idx_expenses_description_trgm
+                    predicate = cb.and(predicate, cb.like(cb.lower(root.get("description")),
+                            toContainsPattern(description), '\\'));
+                }
             }
 
             return predicate;
         };
     }
+
+    /**
+     * Keyset predicate for the (date DESC, id DESC) ordering: rows strictly after the cursor row.
+     * The redundant {@code date <= :date} gives PostgreSQL a range condition on the (user_id, date)
+     * index so a deep page starts at the cursor instead of filtering every newer row.
+     */
+    public static Specification<Expense> after(ExpenseCursor cursor) {
+        return (root, query, cb) -> cb.and(
+                cb.lessThanOrEqualTo(root.get("date"), cursor.date()),
+                cb.or(
+                        cb.lessThan(root.get("date"), cursor.date()),
+                        cb.lessThan(root.get("id"), cursor.id())));
+    }
+
+    /**
+     * Lower-cased LIKE pattern matching {@code text} anywhere, with LIKE wildcards in the input escaped.
+     */
+    public static String toContainsPattern(String text) {
+        String escaped = text.toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+
+    /**
+     * Builds a {@code to_tsquery} expression requiring every word of {@code text} as a prefix,
+     * e.g. {@code "Star bucks!"} becomes {@code "star:* & bucks:*"}. Non-alphanumeric input is dropped, so the
+     * result is always a valid tsquery (possibly empty, which matches nothing).
+     */
+    public static String toPrefixTsQuery(String text) {
+        return Arrays.stream(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .map(word -> word + ":*")
+                .collect(Collectors.joining(" & "));
+    }
 }
@@ -0,0 +1,50 @@
+package com.intellispend.repository;
+
+import com.intellispend.util.FxRateTable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The {@code fx_rates} table read by the {@code fx_to_base} conversion in aggregation queries.
+ */
+@Repository
+@RequiredArgsConstructor
+public class FxRateRepository {
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public FxRateTable findAll() {
+        return FxRateTable.of(jdbcTemplate.query("SELECT currency, rate_date, rate FROM fx_rates",
+                (rs, rowNum) -> new FxRateTable.Rate(
+                        rs.getString(1), rs.getObject(2, LocalDate.class), rs.getBigDecimal(3))));
+    }
+
+    /**
+     * Replaces the stored rates with {@code rates} unless they are already identical. The table is
+     * locked first so nodes loading the same file at once do not interleave.
+     *
+     * @return whether the stored rates changed
+     */
+    @Transactional
+    public boolean replaceIfChanged(FxRateTable rates) {
+        jdbcTemplate.execute("LOCK TABLE fx_rates IN EXCLUSIVE MODE");
+        if (findAll().equals(rates)) {
+            return false;
+        }
+        jdbcTemplate.update("DELETE FROM fx_rates");
+        List<FxRateTable.Rate> rows = rates.rates();
+        jdbcTemplate.batchUpdate("INSERT INTO fx_rates (currency, rate_date, rate) VALUES (?, ?, ?)",
+                rows, BATCH_SIZE, (ps, rate) -> {
+                    ps.setString(1, rate.currency());
+                    ps.setObject(2, rate.date());
+                    ps.setBigDecimal(3, rate.rate());
+                });
+        return true;
+    }
+}
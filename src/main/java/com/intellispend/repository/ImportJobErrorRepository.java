@@ -0,0 +1,13 @@
+package com.intellispend.repository;
+
+import com.intellispend.entity.ImportJobError;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ImportJobErrorRepository extends JpaRepository<ImportJobError, Long> {
+    List<ImportJobError> findByJobIdAndDuplicateOrderByLineNumberAsc(Long jobId, boolean duplicate, Limit limit);
+}
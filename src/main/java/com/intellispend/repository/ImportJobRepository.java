@@ -0,0 +1,19 @@
+package com.intellispend.repository;
+
+import com.intellispend.entity.EImportStatus;
+import com.intellispend.entity.ImportJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ImportJobRepository extends JpaRepository<ImportJob, Long> {
+    Optional<ImportJob> findByIdAndUserId(Long id, Long userId);
+
+    List<ImportJob> findByNodeAndStatusInAndCreatedAtBefore(String node, Collection<EImportStatus> statuses,
+                                                            LocalDateTime createdBefore);
+}
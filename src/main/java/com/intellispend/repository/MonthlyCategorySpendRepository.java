@@ -0,0 +1,135 @@
+package com.intellispend.repository;
+
+import com.intellispend.entity.MonthlyCategorySpend;
+import com.intellispend.entity.User;
+import com.intellispend.repository.projection.LedgerCell;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+import static com.intellispend.config.FxFunctionContributor.EXPENSE_AMOUNT_IN_BASE;
+
+@Repository
+public interface MonthlyCategorySpendRepository extends JpaRepository<MonthlyCategorySpend, Long> {
+    // Converts each expense once, however many aggregates read the amount
+    String LIVE_EXPENSES_IN_BASE = "SELECT e.user_id, e.category, e.date, " + EXPENSE_AMOUNT_IN_BASE + " AS base_amount " +
+            "FROM expenses e WHERE e.is_deleted = false";
+
+    Optional<MonthlyCategorySpend> findByUserAndCategoryAndMonth(User user, String category, YearMonth month);
+
+    /**
+     * Atomically folds {@code count} expenses totalling {@code amount}, with the given amount bounds,
+     * into the rollup row, creating it if needed. Amounts are in the base currency; {@code month} is
+     * the ISO text form, e.g. "2024-05".
+     */
+    @Modifying
+    @Query(value = "INSERT INTO monthly_category_spend (user_id, category, month, total, expense_count, min_amount, max_amount) " +
+            "VALUES (:userId, :category, :month, :amount, :count, :minAmount, :maxAmount) " +
+            "ON CONFLICT (user_id, category, month) " +
+            "DO UPDATE SET total = monthly_category_spend.total + EXCLUDED.total, " +
+            "expense_count = monthly_category_spend.expense_count + EXCLUDED.expense_count, " +
+            "min_amount = LEAST(monthly_category_spend.min_amount, EXCLUDED.min_amount), " +
+            "max_amount = GREATEST(monthly_category_spend.max_amount, EXCLUDED.max_amount)",
+            nativeQuery = true)
+    void addExpenses(@Param("userId") Long userId,
+                     @Param("category") String category,
+                     @Param("month") String month,
+                     @Param("count") long count,
+                     @Param("amount") BigDecimal amount,
+                     @Param("minAmount") BigDecimal minAmount,
+                     @Param("maxAmount") BigDecimal maxAmount);
+
+    /**
+     * Takes one expense, {@code amount} being its value in the base currency, out of its rollup row.
+     * Total and count are adjusted in place; a bound is only recomputed, from the cell's other live
+     * expenses, when the removed amount was that bound. The expense is excluded by id, so this is
+     * correct whether or not its change is flushed yet.
+     */
+    @Modifying
+    @Query(value = "UPDATE monthly_category_spend s " +
+            "SET total = s.total - :amount, " +
+            "expense_count = s.expense_count - 1, " +
+            "min_amount = CASE WHEN :amount > s.min_amount THEN s.min_amount ELSE (" +
+            "  SELECT MIN(" + EXPENSE_AMOUNT_IN_BASE + ") FROM expenses e WHERE e.user_id = s.user_id AND e.category = s.category " +
+            "  AND e.date >= :monthStart AND e.date <= :monthEnd AND e.is_deleted = false AND e.id <> :expenseId) END, " +
+            "max_amount = CASE WHEN :amount < s.max_amount THEN s.max_amount ELSE (" +
+            "  SELECT MAX(" + EXPENSE_AMOUNT_IN_BASE + ") FROM expenses e WHERE e.user_id = s.user_id AND e.category = s.category " +
+            "  AND e.date >= :monthStart AND e.date <= :monthEnd AND e.is_deleted = false AND e.id <> :expenseId) END " +
+            "WHERE s.user_id = :userId AND s.category = :category AND s.month = :month",
+            nativeQuery = true)
+    void removeExpense(@Param("userId") Long userId,
+                       @Param("category") String category,
+                       @Param("month") String month,
+                       @Param("monthStart") LocalDate monthStart,
+                       @Param("monthEnd") LocalDate monthEnd,
+                       @Param("expenseId") Long expenseId,
+                       @Param("amount") BigDecimal amount);
+
+    /**
+     * Non-empty rollup cells of one user between two months inclusive, oldest first. Reads at most
+     * (months x categories) rows however many expenses the user has.
+     */
+    @Query("select s from MonthlyCategorySpend s where s.user.id = :userId " +
+            "and s.month between :from and :to and s.expenseCount > 0 order by s.month, s.category")
+    List<MonthlyCategorySpend> findRollup(@Param("userId") Long userId,
+                                          @Param("from") YearMonth from,
+                                          @Param("to") YearMonth to);
+
+    /**
+     * The (user, category, month) cells whose ledger total, count or bounds differ from the
+     * expenses table. Reads without locking anything.
+     */
+    @Query(value = "SELECT COALESCE(s.user_id, e.user_id) AS \"userId\", COALESCE(s.category, e.category) AS category, " +
+            "COALESCE(s.month, e.month) AS month FROM (" +
+            "  SELECT user_id, category, to_char(date, 'YYYY-MM') AS month, SUM(base_amount) AS total, " +
+            "  count(*) AS expense_count, MIN(base_amount) AS min_amount, MAX(base_amount) AS max_amount " +
+            "  FROM (" + LIVE_EXPENSES_IN_BASE + ") c GROUP BY user_id, category, to_char(date, 'YYYY-MM')" +
+            ") e FULL OUTER JOIN monthly_category_spend s " +
+            "ON s.user_id = e.user_id AND s.category = e.category AND s.month = e.month " +
+            "WHERE COALESCE(e.total, 0) <> COALESCE(s.total, 0) " +
+            "OR COALESCE(e.expense_count, 0) <> COALESCE(s.expense_count, 0) " +
+            "OR e.min_amount IS DISTINCT FROM s.min_amount OR e.max_amount IS DISTINCT FROM s.max_amount",
+            nativeQuery = true)
+    List<LedgerCell> findDriftedCells();
+
+    /**
+     * Locks one rollup row until the surrounding transaction ends, creating it empty if needed.
+     * Waits for any transaction that is writing to the cell, so a statement run afterwards sees
+     * its expenses too.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO monthly_category_spend (user_id, category, month, total, expense_count) " +
+            "VALUES (:userId, :category, :month, 0, 0) " +
+            "ON CONFLICT (user_id, category, month) DO UPDATE SET total = monthly_category_spend.total",
+            nativeQuery = true)
+    void lockCell(@Param("userId") Long userId,
+                  @Param("category") String category,
+                  @Param("month") String month);
+
+    /**
+     * Recomputes one rollup row from the cell's live expenses. Lock it with {@link #lockCell} first.
+     */
+    @Modifying
+    @Query(value = "UPDATE monthly_category_spend s " +
+            "SET total = COALESCE(c.total, 0), expense_count = c.expense_count, " +
+            "min_amount = c.min_amount, max_amount = c.max_amount " +
+            "FROM (SELECT SUM(base_amount) AS total, count(*) AS expense_count, " +
+            "  MIN(base_amount) AS min_amount, MAX(base_amount) AS max_amount " +
+            "  FROM (" + LIVE_EXPENSES_IN_BASE + " AND e.user_id = :userId AND e.category = :category " +
+            "  AND e.date >= :monthStart AND e.date <= :monthEnd) x) c " +
+            "WHERE s.user_id = :userId AND s.category = :category AND s.month = :month",
+            nativeQuery = true)
+    void recomputeCell(@Param("userId") Long userId,
+                       @Param("category") String category,
+                       @Param("month") String month,
+                       @Param("monthStart") LocalDate monthStart,
+                       @Param("monthEnd") LocalDate monthEnd);
+}
@@ -0,0 +1,17 @@
+package com.intellispend.repository;
+
+import com.intellispend.entity.EReportStatus;
+import com.intellispend.entity.ReportRun;
+import com.intellispend.entity.ReportRunItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReportRunItemRepository extends JpaRepository<ReportRunItem, Long> {
+    List<ReportRunItem> findByRunAndUserIdIn(ReportRun run, Collection<Long> userIds);
+    long countByRunAndStatus(ReportRun run, EReportStatus status);
+    long countByRunAndStatusAndAttemptsLessThan(ReportRun run, EReportStatus status, int attempts);
+}
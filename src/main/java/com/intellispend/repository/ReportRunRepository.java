@@ -0,0 +1,16 @@
+package com.intellispend.repository;
+
+import com.intellispend.entity.EReportStatus;
+import com.intellispend.entity.ReportRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ReportRunRepository extends JpaRepository<ReportRun, Long> {
+    Optional<ReportRun> findByMonth(YearMonth month);
+    List<ReportRun> findByStatusOrderByMonthAsc(EReportStatus status);
+}
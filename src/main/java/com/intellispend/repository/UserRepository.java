@@ -1,9 +1,12 @@
 package com.intellispend.repository;
 
 import com.intellispend.entity.User;
+import com.intellispend.repository.projection.UserRef;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +14,5 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByUsername(String username);
     Boolean existsByUsername(String username);
     Boolean existsByEmail(String email);
+    List<UserRef> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
 }
@@ -0,0 +1,8 @@
+package com.intellispend.repository.projection;
+
+import java.math.BigDecimal;
+
+public interface CategoryTotal {
+    String getCategory();
+    BigDecimal getTotal();
+}
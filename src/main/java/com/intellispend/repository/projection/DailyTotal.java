@@ -0,0 +1,9 @@
+package com.intellispend.repository.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public interface DailyTotal {
+    LocalDate getDate();
+    BigDecimal getTotal();
+}
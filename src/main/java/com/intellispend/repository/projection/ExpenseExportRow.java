@@ -0,0 +1,13 @@
+package com.intellispend.repository.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record ExpenseExportRow(
+        LocalDate date,
+        String category,
+        String description,
+        BigDecimal amount,
+        String currency,
+        String paymentMethod) {
+}
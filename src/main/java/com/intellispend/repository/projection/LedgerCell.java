@@ -0,0 +1,7 @@
+package com.intellispend.repository.projection;
+
+public interface LedgerCell {
+    Long getUserId();
+    String getCategory();
+    String getMonth();
+}
@@ -0,0 +1,6 @@
+package com.intellispend.repository.projection;
+
+public interface UserRef {
+    Long getId();
+    String getUsername();
+}
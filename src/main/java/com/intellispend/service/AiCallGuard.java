@@ -0,0 +1,225 @@
+package com.intellispend.service;
+
+import com.intellispend.exception.OpenAiUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker and bulkhead in front of every OpenAI call attempt, so a degraded API costs
+ * callers a fast fallback instead of a blocked thread.
+ * <p>
+ * At most {@code max-concurrent-calls} calls run at once; a caller that gets no slot within
+ * {@code max-wait} is turned away. The circuit opens once at least {@code minimum-calls} of the
+ * last {@code sliding-window-size} calls were made and {@code failure-rate-threshold} percent of
+ * them failed. While open every call is turned away; after {@code open-duration}
+ * {@code half-open-calls} trial calls are let through, and the circuit closes if they all succeed
+ * or opens again on the first failure. Turned-away calls throw {@link OpenAiUnavailableException}.
+ * <p>
+ * I/O errors, timeouts, 5xx and 429 responses and empty replies count as failures; other 4xx
+ * responses say nothing about OpenAI's health and count as successes. Published as
+ * {@code openai.circuit.state} (1 for the current state), {@code openai.circuit.transitions} by
+ * {@code from} and {@code to}, {@code openai.calls.rejected} by {@code reason} and
+ * {@code openai.bulkhead.active}.
+ */
+@Component
+@Slf4j
+public class AiCallGuard {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Semaphore bulkhead;
+    private final Duration maxWait;
+    private final int failureRateThreshold;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejectedOpen;
+    private final Counter rejectedFull;
+
+    // Outcomes of the most recent calls while closed, true for a failure; guarded by this
+    private final boolean[] window;
+    private int windowNext;
+    private int windowCalls;
+    private int windowFailures;
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private long firstOpenedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    public AiCallGuard(@Value("${openai.resilience.max-concurrent-calls}") int maxConcurrentCalls,
+                       @Value("${openai.resilience.max-wait}") Duration maxWait,
+                       @Value("${openai.resilience.failure-rate-threshold}") int failureRateThreshold,
+                       @Value("${openai.resilience.sliding-window-size}") int slidingWindowSize,
+                       @Value("${openai.resilience.minimum-calls}") int minimumCalls,
+                       @Value("${openai.resilience.open-duration}") Duration openDuration,
+                       @Value("${openai.resilience.half-open-calls}") int halfOpenCalls,
+                       MeterRegistry meterRegistry,
+                       ApplicationEventPublisher eventPublisher) {
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.maxWait = maxWait;
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[slidingWindowSize];
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.rejectedOpen = meterRegistry.counter("openai.calls.rejected", "reason", "circuit-open");
+        this.rejectedFull = meterRegistry.counter("openai.calls.rejected", "reason", "bulkhead-full");
+        for (State gauged : State.values()) {
+            Gauge.builder("openai.circuit.state", this, guard -> guard.state == gauged ? 1 : 0)
+                    .tag("state", tagValue(gauged))
+                    .register(meterRegistry);
+        }
+        Gauge.builder("openai.bulkhead.active", bulkhead, b -> maxConcurrentCalls - b.availablePermits())
+                .register(meterRegistry);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Whether a call made now would be attempted, barring a full bulkhead. Lets callers skip
+     * building a prompt they could not send.
+     */
+    public synchronized boolean isCallPermitted() {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> System.nanoTime() - openedAt >= openNanos;
+            case HALF_OPEN -> trialsStarted < halfOpenCalls;
+        };
+    }
+
+    public <T> T call(Supplier<T> call) {
+        acquirePermission();
+        if (!acquireSlot()) {
+            releasePermission();
+            rejectedFull.increment();
+            throw new OpenAiUnavailableException("Too many OpenAI calls in flight");
+        }
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } catch (HttpClientErrorException e) {
+            failed = e instanceof HttpClientErrorException.TooManyRequests;
+            throw e;
+        } finally {
+            bulkhead.release();
+            record(failed);
+        }
+    }
+
+    private synchronized void acquirePermission() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trialsStarted >= halfOpenCalls)) {
+            rejectedOpen.increment();
+            throw new OpenAiUnavailableException("OpenAI circuit is open");
+        }
+        if (state == State.HALF_OPEN) {
+            trialsStarted++;
+        }
+    }
+
+    private synchronized void releasePermission() {
+        if (state == State.HALF_OPEN) {
+            trialsStarted--;
+        }
+    }
+
+    private boolean acquireSlot() {
+        try {
+            return bulkhead.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void record(boolean failed) {
+        Duration downtime = null;
+        synchronized (this) {
+            switch (state) {
+                case CLOSED -> {
+                    if (window[windowNext] && windowCalls == window.length) {
+                        windowFailures--;
+                    }
+                    window[windowNext] = failed;
+                    windowNext = (windowNext + 1) % window.length;
+                    windowCalls = Math.min(windowCalls + 1, window.length);
+                    if (failed) {
+                        windowFailures++;
+                    }
+                    if (windowCalls >= minimumCalls && windowFailures * 100 >= failureRateThreshold * windowCalls) {
+                        firstOpenedAt = System.nanoTime();
+                        transition(State.OPEN);
+                    }
+                }
+                case HALF_OPEN -> {
+                    if (failed) {
+                        transition(State.OPEN);
+                    } else if (++trialsSucceeded >= halfOpenCalls) {
+                        downtime = Duration.ofNanos(System.nanoTime() - firstOpenedAt);
+                        transition(State.CLOSED);
+                    }
+                }
+                // Calls that started before the circuit opened
+                case OPEN -> {
+                }
+            }
+        }
+        // Outside the lock, listeners may take their time
+        if (downtime != null) {
+            eventPublisher.publishEvent(new OpenAiRecoveredEvent(downtime));
+        }
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        switch (to) {
+            case OPEN -> {
+                openedAt = System.nanoTime();
+                log.warn("OpenAI circuit opened ({} of the last {} calls failed), failing fast for {} ms",
+                        windowFailures, windowCalls, TimeUnit.NANOSECONDS.toMillis(openNanos));
+            }
+            case HALF_OPEN -> {
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+                log.info("OpenAI circuit half-open, letting {} trial calls through", halfOpenCalls);
+            }
+            case CLOSED -> {
+                Arrays.fill(window, false);
+                windowNext = 0;
+                windowCalls = 0;
+                windowFailures = 0;
+                log.info("OpenAI circuit closed");
+            }
+        }
+        meterRegistry.counter("openai.circuit.transitions", "from", tagValue(from), "to", tagValue(to)).increment();
+    }
+
+    private static String tagValue(State state) {
+        return state.name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,191 @@
+package com.intellispend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.intellispend.dto.AiSummaryStatus;
+import com.intellispend.dto.MonthlySnapshot;
+import com.intellispend.entity.Insight;
+import com.intellispend.exception.OpenAiUnavailableException;
+import com.intellispend.repository.InsightRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Generates monthly AI summaries off the request thread. A request never waits for OpenAI: it
+ * gets the persisted summary if there is one, otherwise a status and a background generation is
+ * started (at most one per user and month). Generation runs on a bounded pool with a bounded
+ * queue and an overall deadline; when it finishes the user's cached insights for that month are
+ * dropped so the next poll picks up the result. While {@link AiCallGuard} is failing fast no
+ * generation is started and a placeholder is returned; that doesn't count as a failed month.
+ */
+@Service
+@Slf4j
+public class AiSummaryService {
+    public static final String NOT_AVAILABLE = "AI Summary not available.";
+    public static final String GENERATION_FAILED = "Insight generation failed or took too long.";
+    public static final String TEMPORARILY_UNAVAILABLE = "AI Summary is temporarily unavailable, please try again later.";
+
+    private final OpenAiClient openAiClient;
+    private final InsightRepository insightRepository;
+    private final InsightCache insightCache;
+    private final Duration timeout;
+    private final ThreadPoolExecutor executor;
+    private final Map<Key, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    // Months whose last generation failed; not retried until the entry expires
+    private final Cache<Key, Boolean> recentFailures;
+
+    public AiSummaryService(OpenAiClient openAiClient,
+                            InsightRepository insightRepository,
+                            InsightCache insightCache,
+                            @Value("${openai.summary.concurrency}") int concurrency,
+                            @Value("${openai.summary.queue-capacity}") int queueCapacity,
+                            @Value("${openai.summary.timeout}") Duration timeout,
+                            @Value("${openai.summary.retry-after}") Duration retryAfter) {
+        this.openAiClient = openAiClient;
+        this.insightRepository = insightRepository;
+        this.insightCache = insightCache;
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("ai-summary-"));
+        this.recentFailures = Caffeine.newBuilder().expireAfterWrite(retryAfter).build();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public record Summary(AiSummaryStatus status, String text) {
+        /**
+         * Whether waiting won't change the summary: it is ready, or OpenAI isn't configured at all.
+         */
+        public boolean isSettled() {
+            return status == AiSummaryStatus.READY || (status == AiSummaryStatus.UNAVAILABLE && NOT_AVAILABLE.equals(text));
+        }
+    }
+
+    public Summary summaryFor(MonthlySnapshot snapshot) {
+        Optional<Insight> persistedInsight = insightRepository.findByUserAndMonth(snapshot.getUser(), snapshot.getMonth());
+        if (persistedInsight.isPresent()) {
+            return new Summary(AiSummaryStatus.READY, persistedInsight.get().getSummary());
+        }
+        if (!openAiClient.isConfigured()) {
+            return new Summary(AiSummaryStatus.UNAVAILABLE, NOT_AVAILABLE);
+        }
+
+        if (!openAiClient.isAvailable()) {
+            return new Summary(AiSummaryStatus.UNAVAILABLE, TEMPORARILY_UNAVAILABLE);
+        }
+
+        Key key = new Key(snapshot.getUser().getId(), snapshot.getMonth());
+        if (recentFailures.getIfPresent(key) != null) {
+            return new Summary(AiSummaryStatus.FAILED, GENERATION_FAILED);
+        }
+        CompletableFuture<String> generation = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, generation) == null) {
+            start(key, snapshot, generation);
+        }
+        return new Summary(AiSummaryStatus.PENDING, null);
+    }
+
+    /**
+     * Like {@link #summaryFor}, but waits up to {@code maxWait} for a summary being generated. For
+     * batch work that needs the summary itself rather than a status to poll.
+     */
+    public Summary awaitSummary(MonthlySnapshot snapshot, Duration maxWait) {
+        Summary summary = summaryFor(snapshot);
+        CompletableFuture<String> generation = inFlight.get(new Key(snapshot.getUser().getId(), snapshot.getMonth()));
+        if (summary.status() != AiSummaryStatus.PENDING || generation == null) {
+            return summary;
+        }
+        try {
+            return new Summary(AiSummaryStatus.READY, generation.get(maxWait.toMillis(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            return summary;
+        } catch (ExecutionException e) {
+            return e.getCause() instanceof OpenAiUnavailableException
+                    ? new Summary(AiSummaryStatus.UNAVAILABLE, TEMPORARILY_UNAVAILABLE)
+                    : new Summary(AiSummaryStatus.FAILED, GENERATION_FAILED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return summary;
+        }
+    }
+
+    private void start(Key key, MonthlySnapshot snapshot, CompletableFuture<String> generation) {
+        String prompt = String.format(
+                com.intellispend.util.PromptConstants.INSIGHT_USER_PROMPT_TEMPLATE,
+                snapshot.getTotalSpending(), snapshot.getPreviousMonthTotal(),
+                snapshot.getMonthOverMonthPercentage(), snapshot.getCategoryTotals().toString());
+
+        try {
+            executor.execute(() -> {
+                try {
+                    generation.complete(openAiClient.complete(com.intellispend.util.PromptConstants.INSIGHT_SYSTEM_PROMPT, prompt, timeout));
+                } catch (Exception e) {
+                    generation.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Queue full: stay PENDING, and keep that out of the insights cache so a later poll tries again
+            log.warn("AI summary queue full, deferring user {} month {}", key.userId(), key.month());
+            inFlight.remove(key, generation);
+            insightCache.invalidate(key.userId(), key.month());
+            return;
+        }
+
+        generation.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((summary, error) -> {
+                    try {
+                        Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                        if (error == null) {
+                            saveSummary(snapshot, summary);
+                        } else if (cause instanceof OpenAiUnavailableException) {
+                            // Turned away without trying; the next poll gets the placeholder instead
+                            log.debug("AI Summary for user {} month {} skipped: {}", key.userId(), key.month(), cause.getMessage());
+                        } else {
+                            log.error("AI Summary generation failed for user {} month {}: {}",
+                                    key.userId(), key.month(), error.toString());
+                            recentFailures.put(key, Boolean.TRUE);
+                        }
+                    } finally {
+                        inFlight.remove(key, generation);
+                        insightCache.invalidate(key.userId(), key.month());
+                    }
+                });
+    }
+
+    private void saveSummary(MonthlySnapshot snapshot, String summary) {
+        try {
+            insightRepository.save(Insight.builder()
+                    .user(snapshot.getUser())
+                    .month(snapshot.getMonth())
+                    .summary(summary)
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // Another instance stored one first; theirs is as good as ours
+            log.debug("AI summary for user {} month {} already stored", snapshot.getUser().getId(), snapshot.getMonth());
+        }
+    }
+
+    private record Key(Long userId, YearMonth month) {
+    }
+}
@@ -2,9 +2,10 @@ package com.intellispend.service;
 
 import com.intellispend.entity.Budget;
 import com.intellispend.entity.Expense;
+import com.intellispend.entity.MonthlyCategorySpend;
 import com.intellispend.entity.User;
 import com.intellispend.repository.BudgetRepository;
-import com.intellispend.repository.ExpenseRepository;
+import com.intellispend.repository.MonthlyCategorySpendRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -18,7 +19,7 @@ import java.util.Optional;
 @Slf4j
 public class BudgetService {
     private final BudgetRepository budgetRepository;
-    private final ExpenseRepository expenseRepository;
+    private final MonthlyCategorySpendRepository spendRepository;
 
     public void checkBudget(Expense expense) {
         User user = expense.getUser();
@@ -28,17 +29,17 @@ public class BudgetService {
         Optional<Budget> budgetOpt = budgetRepository.findByUserAndCategoryAndMonth(user, category, month);
         if (budgetOpt.isPresent()) {
             Budget budget = budgetOpt.get();
-            BigDecimal totalSpent = expenseRepository.findAllByUser(user).stream()
-                    .filter(e -> e.getCategory().equals(category) && YearMonth.from(e.getDate()).equals(month))
-                    .map(Expense::getAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            // The ledger already includes this expense; SpendLedgerService records it before the check
+            BigDecimal totalSpent = spendRepository.findByUserAndCategoryAndMonth(user, category, month)
+                    .map(MonthlyCategorySpend::getTotal)
+                    .orElse(BigDecimal.ZERO);
 
             if (totalSpent.compareTo(budget.getAmount()) > 0) {
                 log.warn("BUDGET ALERT: Category {} for user {} exceeded budget of {}. Current spending: {}",
-                        category, user.getUsername(), budget.getAmount(), totalSpent);
+                        category, user.getId(), budget.getAmount(), totalSpent);
             } else if (totalSpent.compareTo(budget.getAmount().multiply(new BigDecimal("0.9"))) > 0) {
                 log.info("BUDGET WARNING: Category {} for user {} is over 90% of budget. Current spending: {}",
-                        category, user.getUsername(), totalSpent);
+                        category, user.getId(), totalSpent);
             }
         }
     }
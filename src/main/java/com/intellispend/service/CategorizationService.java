@@ -1,64 +1,113 @@
 package com.intellispend.service;
 
+import com.intellispend.exception.OpenAiUnavailableException;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.*;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
 @Slf4j
 public class CategorizationService {
+    // The categories OpenAI may answer with; "Other" means none of them fits
+    static final Set<String> CATEGORIES = Set.of(
+            "Food", "Groceries", "Transport", "Shopping", "Entertainment",
+            "Housing", "Utilities", "Health", "Education", "Other");
+
+    // "<number>: <category>" lines of a batch reply; tolerates "1." / "1)" / "1 -"
+    private static final Pattern BATCH_REPLY_LINE = Pattern.compile("^\\s*(\\d+)\\s*[:.)\\-]\\s*(.+?)\\s*$");
+
+    private final OpenAiClient openAiClient;
+    private final CategoryMemoService categoryMemoService;
+    private final KeywordRuleService keywordRuleService;
+    private final CategoryModelService categoryModelService;
+    private final int batchSize;
+    private final Duration timeout;
+    private final ExecutorService executor;
+
+    public CategorizationService(OpenAiClient openAiClient,
+                                 CategoryMemoService categoryMemoService,
+                                 KeywordRuleService keywordRuleService,
+                                 CategoryModelService categoryModelService,
+                                 @Value("${openai.categorization.batch-size}") int batchSize,
+                                 @Value("${openai.categorization.concurrency}") int concurrency,
+                                 @Value("${openai.categorization.queue-capacity}") int queueCapacity,
+                                 @Value("${openai.categorization.timeout}") Duration timeout) {
+        this.openAiClient = openAiClient;
+        this.categoryMemoService = categoryMemoService;
+        this.keywordRuleService = keywordRuleService;
+        this.categoryModelService = categoryModelService;
+        this.batchSize = batchSize;
+        this.timeout = timeout;
+        // Bounded, so a burst of uploads is turned away rather than queueing batches without limit
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("ai-categorize-"));
+    }
 
-    @Value("${openai.api.key}")
-    private String apiKey;
-
-    @Value("${openai.api.url}")
-    private String apiUrl;
-
-    private final RestTemplate restTemplate = new RestTemplate();
-
-    private static final Map<String, String> KEYWORD_MAP = new HashMap<>();
-
-    static {
-        KEYWORD_MAP.put("swiggy", "Food");
-        KEYWORD_MAP.put("zomato", "Food");
-        KEYWORD_MAP.put("restaurant", "Food");
-        KEYWORD_MAP.put("grocery", "Groceries");
-        KEYWORD_MAP.put("uber", "Transport");
-        KEYWORD_MAP.put("ola", "Transport");
-        KEYWORD_MAP.put("petrol", "Transport");
-        KEYWORD_MAP.put("amazon", "Shopping");
-        KEYWORD_MAP.put("flipkart", "Shopping");
-        KEYWORD_MAP.put("netflix", "Entertainment");
-        KEYWORD_MAP.put("spotify", "Entertainment");
-        KEYWORD_MAP.put("rent", "Housing");
-        KEYWORD_MAP.put("electricity", "Utilities");
-        KEYWORD_MAP.put("water", "Utilities");
-        KEYWORD_MAP.put("internet", "Utilities");
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
     }
 
-    public String categorize(String description) {
+    /**
+     * Category for one expense of {@code userId}; their own corrections take precedence.
+     */
+    public String categorize(String description, Long userId) {
         if (description == null || description.isEmpty()) {
             return "Other";
         }
 
-        String lowerDesc = description.toLowerCase();
+        // 1. Remembered category (the user's corrections and earlier AI results)
+        String key = CategoryMemoService.normalize(description);
+        String category = categoryMemoService.lookup(List.of(key), userId).get(key);
+        if (category != null) {
+            return category;
+        }
 
-        // 1. Keyword-based fallback
-        for (Map.Entry<String, String> entry : KEYWORD_MAP.entrySet()) {
-            if (lowerDesc.contains(entry.getKey())) {
-                return entry.getValue();
-            }
+        // 2. Keyword-based fallback
+        category = keywordRuleService.match(description);
+        if (category != null) {
+            return category;
+        }
+
+        // 3. Local model, when it is confident
+        category = categoryModelService.predict(description);
+        if (category != null) {
+            return category;
         }
 
-        // 2. OpenAI-based categorization (if API key is present)
-        if (apiKey != null && !apiKey.isEmpty() && !apiKey.equals("your_openai_api_key_here")) {
+        // 4. OpenAI-based categorization (if API key is present and OpenAI isn't failing)
+        if (openAiClient.isAvailable()) {
             try {
-                return categorizeWithAi(description);
+                category = toCategory(openAiClient.complete(
+                        com.intellispend.util.PromptConstants.CATEGORIZATION_SYSTEM_PROMPT,
+                        String.format(com.intellispend.util.PromptConstants.CATEGORIZATION_USER_PROMPT_TEMPLATE, description),
+                        timeout));
+                // "Other" is the fallback, not an answer; memoising it would pin it for every user
+                if (!"Other".equals(category)) {
+                    categoryMemoService.rememberAiResults(Map.of(key, category));
+                }
+                return category;
+            } catch (OpenAiUnavailableException e) {
+                log.debug("AI Categorization skipped: {}", e.getMessage());
             } catch (Exception e) {
                 log.error("AI Categorization failed: {}", e.getMessage());
             }
@@ -67,42 +116,140 @@ public class CategorizationService {
         return "Other";
     }
 
-    @org.springframework.retry.annotation.Retryable(
-            retryFor = {Exception.class},
-            maxAttempts = 3,
-            backoff = @org.springframework.retry.annotation.Backoff(delay = 1000, multiplier = 2)
-    )
-    private String categorizeWithAi(String description) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(apiKey);
-
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", "gpt-3.5-turbo");
-        
-        Map<String, String> systemMessage = new HashMap<>();
-        systemMessage.put("role", "system");
-        systemMessage.put("content", com.intellispend.util.PromptConstants.CATEGORIZATION_SYSTEM_PROMPT);
-        
-        Map<String, String> userMessage = new HashMap<>();
-        userMessage.put("role", "user");
-        userMessage.put("content", String.format(com.intellispend.util.PromptConstants.CATEGORIZATION_USER_PROMPT_TEMPLATE, description));
-        
-        requestBody.put("messages", new Object[]{systemMessage, userMessage});
-
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-        ResponseEntity<com.intellispend.dto.external.OpenAiResponse> response = restTemplate.postForEntity(apiUrl, entity, com.intellispend.dto.external.OpenAiResponse.class);
-
-        if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-            com.intellispend.dto.external.OpenAiResponse aiResponse = response.getBody();
-            if (aiResponse != null && aiResponse.getChoices() != null && !aiResponse.getChoices().isEmpty()) {
-                com.intellispend.dto.external.OpenAiResponse.Message message = aiResponse.getChoices().get(0).getMessage();
-                if (message != null && message.getContent() != null) {
-                    return message.getContent().trim();
+    /**
+     * Categorizes many descriptions of {@code userId} at once, e.g. for a CSV upload. Descriptions
+     * are reduced to their memo key, so "STARBUCKS #1234" and "Starbucks #77" are resolved once. Memo hits,
+     * keyword matches and confident local model predictions are resolved locally; the remaining
+     * keys are sent to OpenAI {@code batch-size} at a time, with at most {@code concurrency} prompts
+     * in flight and {@code queue-capacity} waiting across all callers, and the answers are memoised.
+     * A batch's {@code timeout} counts from when it starts running, not while it waits its turn, and
+     * also bounds the OpenAI call's retries, so a batch given up on stops making calls.
+     * Descriptions OpenAI skips, or whose batch fails, times out or is turned away (queue full, or by
+     * {@link AiCallGuard}), fall back to "Other".
+     * <p>
+     * Call this outside any transaction: it can block for as long as the batches take.
+     *
+     * @return category per distinct input description
+     */
+    public Map<String, String> categorizeAll(Collection<String> descriptions, Long userId) {
+        // memo key -> first spelling seen, in input order
+        Map<String, String> byKey = new LinkedHashMap<>();
+        for (String description : descriptions) {
+            if (description != null && !description.isEmpty()) {
+                byKey.putIfAbsent(CategoryMemoService.normalize(description), description);
+            }
+        }
+
+        Map<String, String> categoryByKey = new HashMap<>(categoryMemoService.lookup(byKey.keySet(), userId));
+        List<String> unresolved = new ArrayList<>();
+        byKey.forEach((key, description) -> {
+            if (!categoryByKey.containsKey(key)) {
+                String category = keywordRuleService.match(description);
+                if (category == null) {
+                    category = categoryModelService.predict(description);
+                }
+                if (category != null) {
+                    categoryByKey.put(key, category);
+                } else {
+                    unresolved.add(description);
+                }
+            }
+        });
+
+        if (!unresolved.isEmpty() && openAiClient.isAvailable()) {
+            List<CompletableFuture<Map<String, String>>> batches = new ArrayList<>();
+            for (int from = 0; from < unresolved.size(); from += batchSize) {
+                List<String> batch = unresolved.subList(from, Math.min(from + batchSize, unresolved.size()));
+                batches.add(submitBatch(batch));
+            }
+
+            Map<String, String> aiResults = new HashMap<>();
+            batches.forEach(batch -> batch.join().forEach((description, category) ->
+                    aiResults.put(CategoryMemoService.normalize(description), category)));
+            categoryByKey.putAll(aiResults);
+            categoryMemoService.rememberAiResults(aiResults);
+            log.debug("Categorized {} unique descriptions in {} AI requests", unresolved.size(), batches.size());
+        }
+
+        Map<String, String> result = new HashMap<>();
+        for (String description : descriptions) {
+            if (description != null && !description.isEmpty()) {
+                result.putIfAbsent(description, categoryByKey.getOrDefault(CategoryMemoService.normalize(description), "Other"));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remembers a category chosen by a user, so the same merchant is categorized that way for them
+     * from now on. Other users are not affected.
+     */
+    public void recordCorrection(String description, String category, Long userId) {
+        if (description != null && category != null && !category.trim().isEmpty()) {
+            categoryMemoService.rememberCorrection(description, category, userId);
+        }
+    }
+
+    private CompletableFuture<Map<String, String>> submitBatch(List<String> batch) {
+        CompletableFuture<Map<String, String>> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                // The deadline starts now rather than at submission, so waiting behind other uploads
+                // doesn't use it up
+                result.completeOnTimeout(Map.of(), timeout.toMillis(), TimeUnit.MILLISECONDS);
+                result.complete(categorizeBatch(batch));
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("AI batch categorization of {} descriptions skipped: queue is full", batch.size());
+            result.complete(Map.of());
+        }
+        return result;
+    }
+
+    private Map<String, String> categorizeBatch(List<String> batch) {
+        StringBuilder prompt = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            prompt.append(i + 1).append(". ").append(batch.get(i).replace('\n', ' ')).append('\n');
+        }
+
+        try {
+            String reply = openAiClient.complete(com.intellispend.util.PromptConstants.BATCH_CATEGORIZATION_SYSTEM_PROMPT, prompt.toString(), timeout);
+            Map<String, String> categories = new HashMap<>();
+            for (String line : reply.split("\\R")) {
+                Matcher matcher = BATCH_REPLY_LINE.matcher(line);
+                if (!matcher.matches()) {
+                    continue;
+                }
+                int index;
+                try {
+                    index = Integer.parseInt(matcher.group(1)) - 1;
+                } catch (NumberFormatException e) {
+                    log.debug("Skipping AI batch reply line with a malformed index: {}", line);
+                    continue;
+                }
+                String category = toCategory(matcher.group(2));
+                // Descriptions left out fall back to "Other" without it being memoised for every user
+                if (index >= 0 && index < batch.size() && !"Other".equals(category)) {
+                    categories.put(batch.get(index), category);
                 }
             }
+            return categories;
+        } catch (OpenAiUnavailableException e) {
+            log.debug("AI batch categorization of {} descriptions skipped: {}", batch.size(), e.getMessage());
+            return Map.of();
+        } catch (Exception e) {
+            log.error("AI batch categorization of {} descriptions failed: {}", batch.size(), e.getMessage());
+            return Map.of();
         }
+    }
 
+    private static String toCategory(String reply) {
+        String category = reply.trim().replaceAll("[.\\s]+$", "");
+        for (String known : CATEGORIES) {
+            if (known.equalsIgnoreCase(category)) {
+                return known;
+            }
+        }
         return "Other";
     }
 }
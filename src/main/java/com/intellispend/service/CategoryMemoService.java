@@ -0,0 +1,182 @@
+package com.intellispend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.intellispend.entity.CategoryMemo;
+import com.intellispend.repository.CategoryMemoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Memo of normalised description to category, backed by the {@code category_memo} table. A user's
+ * own corrections come first and apply only to that user; AI results are shared by every user and
+ * instance, behind a bounded in-memory LRU. A user's corrections are loaded with one query and kept
+ * in memory too. Memory entries expire after {@code ttl} so corrections made on another instance
+ * are picked up.
+ * <p>
+ * Lookups are counted in {@code category.memo.lookups} by {@code result} (correction, memory, db,
+ * miss); the memory tiers also publish {@code cache.*} metrics with {@code cache=category-memo} and
+ * {@code cache=category-corrections}.
+ */
+@Service
+public class CategoryMemoService {
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern HAS_DIGIT = Pattern.compile(".*\\d.*");
+
+    private final CategoryMemoRepository categoryMemoRepository;
+    private final Cache<String, String> memory;
+    private final Cache<Long, Map<String, String>> corrections;
+    private final Counter correctionHits;
+    private final Counter memoryHits;
+    private final Counter dbHits;
+    private final Counter misses;
+
+    public CategoryMemoService(CategoryMemoRepository categoryMemoRepository,
+                               @Value("${categorization.memo.max-size}") long maxSize,
+                               @Value("${categorization.memo.ttl}") Duration ttl,
+                               MeterRegistry meterRegistry) {
+        this.categoryMemoRepository = categoryMemoRepository;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // Weighed by corrections held, so a few heavy correctors can't take more than max-size entries
+        this.corrections = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .<Long, Map<String, String>>weigher((userId, byKey) -> byKey.size() + 1)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "category-memo");
+        CaffeineCacheMetrics.monitor(meterRegistry, corrections, "category-corrections");
+        this.correctionHits = meterRegistry.counter("category.memo.lookups", "result", "correction");
+        this.memoryHits = meterRegistry.counter("category.memo.lookups", "result", "memory");
+        this.dbHits = meterRegistry.counter("category.memo.lookups", "result", "db");
+        this.misses = meterRegistry.counter("category.memo.lookups", "result", "miss");
+    }
+
+    /**
+     * Memo key for a description: lower-cased words with store numbers, reference codes and
+     * punctuation dropped, so "STARBUCKS #1234" and "Starbucks 0871" share "starbucks".
+     * Descriptions made only of numbers keep them; blank descriptions give an empty key.
+     */
+    public static String normalize(String description) {
+        if (description == null) {
+            return "";
+        }
+        List<String> words = new ArrayList<>();
+        List<String> numbers = new ArrayList<>();
+        for (String word : NON_WORD.split(description.toLowerCase(Locale.ROOT))) {
+            if (!word.isEmpty()) {
+                (HAS_DIGIT.matcher(word).matches() ? numbers : words).add(word);
+            }
+        }
+        String key = String.join(" ", words.isEmpty() ? numbers : words);
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    /**
+     * Remembered categories for the given keys, as seen by {@code userId}: their own corrections,
+     * then shared AI results. Keys without a memo are absent from the result. Memory misses are
+     * resolved with a single query.
+     */
+    public Map<String, String> lookup(Collection<String> keys, Long userId) {
+        Map<String, String> userCorrections = userId != null
+                ? corrections.get(userId, this::loadCorrections)
+                : Map.of();
+        Map<String, String> result = new HashMap<>();
+        Set<String> notInMemory = new LinkedHashSet<>();
+        int corrected = 0;
+        for (String key : keys) {
+            String category = userCorrections.get(key);
+            if (category != null) {
+                corrected++;
+            } else {
+                category = memory.getIfPresent(key);
+            }
+            if (category != null) {
+                result.put(key, category);
+            } else if (!key.isEmpty()) {
+                notInMemory.add(key);
+            }
+        }
+        correctionHits.increment(corrected);
+        memoryHits.increment(result.size() - corrected);
+
+        if (!notInMemory.isEmpty()) {
+            List<CategoryMemo> stored = categoryMemoRepository.findByUserIdIsNullAndDescriptionKeyIn(notInMemory);
+            for (CategoryMemo memo : stored) {
+                memory.put(memo.getDescriptionKey(), memo.getCategory());
+                result.put(memo.getDescriptionKey(), memo.getCategory());
+            }
+            dbHits.increment(stored.size());
+            misses.increment(notInMemory.size() - stored.size());
+        }
+        return result;
+    }
+
+    /**
+     * Stores AI categorizations, shared by every user, in their own transaction, so they survive
+     * even if the upload that produced them fails. Users' own corrections still take precedence.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void rememberAiResults(Map<String, String> categoriesByKey) {
+        categoriesByKey.forEach((key, category) -> {
+            if (!key.isEmpty()) {
+                categoryMemoRepository.upsertAiResult(key, category);
+                memory.put(key, category);
+            }
+        });
+    }
+
+    /**
+     * Records a user's category choice for a description; it applies to that user's expenses only.
+     * Joins the caller's transaction; the user's corrections are only re-read once it commits.
+     */
+    @Transactional
+    public void rememberCorrection(String description, String category, Long userId) {
+        String key = normalize(description);
+        if (key.isEmpty()) {
+            return;
+        }
+        categoryMemoRepository.upsertCorrection(userId, key, category);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    corrections.invalidate(userId);
+                }
+            });
+        } else {
+            corrections.invalidate(userId);
+        }
+    }
+
+    private Map<String, String> loadCorrections(Long userId) {
+        Map<String, String> byKey = new HashMap<>();
+        for (CategoryMemo memo : categoryMemoRepository.findByUserId(userId)) {
+            byKey.put(memo.getDescriptionKey(), memo.getCategory());
+        }
+        return Map.copyOf(byKey);
+    }
+}
@@ -0,0 +1,124 @@
+package com.intellispend.service;
+
+import com.intellispend.repository.ExpenseRepository;
+import com.intellispend.repository.projection.CategorizedDescription;
+import com.intellispend.util.NaiveBayesClassifier;
+import com.intellispend.util.NaiveBayesClassifier.Example;
+import com.intellispend.util.NaiveBayesClassifier.Prediction;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Local categorization tier: a naive Bayes model trained in the background from expenses users
+ * have already categorized, answering only when it is at least {@code min-confidence} sure.
+ * <p>
+ * Only categories users chose themselves are learned from, never ones filled in automatically
+ * (including the model's own predictions), and only the built-in categories: the model is shared by
+ * all users, so one user's custom categories must not be predicted for anyone else.
+ * <p>
+ * Every tenth training row is held out; the share of held-out rows the model answers
+ * ({@code categorization.model.coverage}) and the accuracy of those answers
+ * ({@code categorization.model.accuracy}, percent) are published after each retraining.
+ */
+@Service
+@Slf4j
+public class CategoryModelService {
+    private static final int HOLD_OUT_EVERY = 10;
+    private static final Set<String> TRAINED_CATEGORIES = CategorizationService.CATEGORIES.stream()
+            .filter(category -> !category.equals("Other"))
+            .collect(Collectors.toUnmodifiableSet());
+
+    private final ExpenseRepository expenseRepository;
+    private final int maxTrainingRows;
+    private final int minTrainingRows;
+    private final double minConfidence;
+    private final AtomicLong accuracyPercent = new AtomicLong();
+    private final AtomicLong coveragePercent = new AtomicLong();
+    private final AtomicLong trainingRows = new AtomicLong();
+    private final Counter accepted;
+    private final Counter rejected;
+    private volatile NaiveBayesClassifier model;
+
+    public CategoryModelService(ExpenseRepository expenseRepository,
+                                @Value("${categorization.model.max-training-rows}") int maxTrainingRows,
+                                @Value("${categorization.model.min-training-rows}") int minTrainingRows,
+                                @Value("${categorization.model.min-confidence}") double minConfidence,
+                                MeterRegistry meterRegistry) {
+        this.expenseRepository = expenseRepository;
+        this.maxTrainingRows = maxTrainingRows;
+        this.minTrainingRows = minTrainingRows;
+        this.minConfidence = minConfidence;
+        meterRegistry.gauge("categorization.model.accuracy", accuracyPercent);
+        meterRegistry.gauge("categorization.model.coverage", coveragePercent);
+        meterRegistry.gauge("categorization.model.training.rows", trainingRows);
+        this.accepted = meterRegistry.counter("categorization.model.predictions", "result", "accepted");
+        this.rejected = meterRegistry.counter("categorization.model.predictions", "result", "rejected");
+    }
+
+    /**
+     * Predicted category, or {@code null} if no model is trained yet or it is not confident enough.
+     */
+    public String predict(String description) {
+        NaiveBayesClassifier current = model;
+        if (current == null) {
+            return null;
+        }
+        Prediction prediction = current.predict(CategoryMemoService.normalize(description));
+        if (prediction == null || prediction.confidence() < minConfidence) {
+            rejected.increment();
+            return null;
+        }
+        accepted.increment();
+        return prediction.label();
+    }
+
+    @Scheduled(initialDelayString = "${categorization.model.initial-delay}", fixedDelayString = "${categorization.model.retrain-interval}")
+    public void retrain() {
+        long started = System.nanoTime();
+        List<CategorizedDescription> rows = expenseRepository.findRecentCategorized(TRAINED_CATEGORIES, Limit.of(maxTrainingRows));
+        if (rows.size() < minTrainingRows) {
+            log.info("Not training categorization model: {} user-categorized expenses, need {}", rows.size(), minTrainingRows);
+            return;
+        }
+
+        List<Example> training = new ArrayList<>(rows.size());
+        List<Example> holdOut = new ArrayList<>(rows.size() / HOLD_OUT_EVERY + 1);
+        for (int i = 0; i < rows.size(); i++) {
+            CategorizedDescription row = rows.get(i);
+            Example example = new Example(CategoryMemoService.normalize(row.getDescription()), row.getCategory());
+            (i % HOLD_OUT_EVERY == 0 ? holdOut : training).add(example);
+        }
+
+        NaiveBayesClassifier trained = NaiveBayesClassifier.train(training);
+        int answered = 0;
+        int correct = 0;
+        for (Example example : holdOut) {
+            Prediction prediction = trained.predict(example.text());
+            if (prediction != null && prediction.confidence() >= minConfidence) {
+                answered++;
+                if (prediction.label().equals(example.label())) {
+                    correct++;
+                }
+            }
+        }
+        model = trained;
+
+        trainingRows.set(training.size());
+        coveragePercent.set(holdOut.isEmpty() ? 0 : Math.round(100.0 * answered / holdOut.size()));
+        accuracyPercent.set(answered == 0 ? 0 : Math.round(100.0 * correct / answered));
+        log.info("Trained categorization model on {} expenses ({} categories) in {} ms: answers {}% of held-out rows, {}% correct",
+                training.size(), trained.labelCount(), (System.nanoTime() - started) / 1_000_000,
+                coveragePercent.get(), accuracyPercent.get());
+    }
+}
@@ -1,61 +1,138 @@
 package com.intellispend.service;
 
 import com.intellispend.dto.ExpenseRequest;
-import com.opencsv.bean.CsvToBean;
-import com.opencsv.bean.CsvToBeanBuilder;
+import com.intellispend.exception.InvalidRequestException;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+/**
+ * Reads expense CSVs one row at a time. The header names the columns (amount, category,
+ * description, date, paymentMethod and optionally currency, in any order). Each row is parsed and
+ * validated like an {@link ExpenseRequest} posted to the API; a blank category is left for
+ * auto-categorization.
+ */
 @Service
+@RequiredArgsConstructor
 public class CsvService {
+    private static final List<String> REQUIRED_COLUMNS = List.of("amount", "category", "description", "date", "paymentmethod");
 
-    public List<ExpenseRequest> parseCsv(MultipartFile file) {
-        try (Reader reader = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
-            CsvToBean<CsvExpense> csvToBean = new CsvToBeanBuilder<CsvExpense>(reader)
-                    .withType(CsvExpense.class)
-                    .withIgnoreLeadingWhiteSpace(true)
-                    .build();
-
-            return csvToBean.parse().stream()
-                    .map(csv -> {
-                        ExpenseRequest req = new ExpenseRequest();
-                        req.setAmount(new BigDecimal(csv.getAmount()));
-                        req.setCategory(csv.getCategory());
-                        req.setDescription(csv.getDescription());
-                        req.setDate(LocalDate.parse(csv.getDate()));
-                        req.setPaymentMethod(csv.getPaymentMethod());
-                        return req;
-                    })
-                    .collect(Collectors.toList());
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to parse CSV file: " + e.getMessage());
+    private final Validator validator;
+
+    public interface RowHandler {
+        void accept(long line, ExpenseRequest request);
+
+        void reject(long line, String reason);
+    }
+
+    /**
+     * Streams {@code in} through {@code handler}. Row problems are passed to
+     * {@link RowHandler#reject}; only an unreadable file or a missing header column fails the call.
+     */
+    public void read(InputStream in, RowHandler handler) {
+        try (CSVReader reader = new CSVReaderBuilder(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))).build()) {
+            String[] header = reader.readNext();
+            if (header == null) {
+                throw new InvalidRequestException("CSV file is empty");
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            for (int i = 0; i < header.length; i++) {
+                columns.put(header[i].trim().replace("\uFEFF", "").toLowerCase(Locale.ROOT), i);
+            }
+            for (String column : REQUIRED_COLUMNS) {
+                if (!columns.containsKey(column)) {
+                    throw new InvalidRequestException("CSV header is missing column: " + column);
+                }
+            }
+
+            long line = reader.getLinesRead() + 1;
+            String[] record;
+            while ((record = reader.readNext()) != null) {
+                if (record.length == 1 && record[0].isBlank()) {
+                    line = reader.getLinesRead() + 1;
+                    continue;
+                }
+                if (record.length < header.length) {
+                    handler.reject(line, "Expected " + header.length + " columns, found " + record.length);
+                } else {
+                    String error = null;
+                    ExpenseRequest request = null;
+                    try {
+                        request = toRequest(record, columns);
+                        error = validate(request);
+                    } catch (IllegalArgumentException e) {
+                        error = e.getMessage();
+                    }
+                    if (error == null) {
+                        handler.accept(line, request);
+                    } else {
+                        handler.reject(line, error);
+                    }
+                }
+                line = reader.getLinesRead() + 1;
+            }
+        } catch (IOException | CsvValidationException e) {
+            throw new RuntimeException("Failed to read CSV file: " + e.getMessage());
         }
     }
 
-    public static class CsvExpense {
-        private String amount;
-        private String category;
-        private String description;
-        private String date;
-        private String paymentMethod;
-
-        public String getAmount() { return amount; }
-        public void setAmount(String amount) { this.amount = amount; }
-        public String getCategory() { return category; }
-        public void setCategory(String category) { this.category = category; }
-        public String getDescription() { return description; }
-        public void setDescription(String description) { this.description = description; }
-        public String getDate() { return date; }
-        public void setDate(String date) { this.date = date; }
-        public String getPaymentMethod() { return paymentMethod; }
-        public void setPaymentMethod(String paymentMethod) { this.paymentMethod = paymentMethod; }
+    private ExpenseRequest toRequest(String[] record, Map<String, Integer> columns) {
+        ExpenseRequest request = new ExpenseRequest();
+        String amount = cell(record, columns, "amount");
+        try {
+            request.setAmount(amount == null ? null : new BigDecimal(amount));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount '" + amount + "'");
+        }
+        String date = cell(record, columns, "date");
+        try {
+            request.setDate(date == null ? null : LocalDate.parse(date));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date '" + date + "', expected yyyy-MM-dd");
+        }
+        String category = cell(record, columns, "category");
+        request.setCategory(category == null ? "Other" : category);
+        request.setDescription(cell(record, columns, "description"));
+        request.setPaymentMethod(cell(record, columns, "paymentmethod"));
+        request.setCurrency(cell(record, columns, "currency"));
+        return request;
+    }
+
+    private String validate(ExpenseRequest request) {
+        java.util.Set<ConstraintViolation<ExpenseRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static String cell(String[] record, Map<String, Integer> columns, String column) {
+        Integer index = columns.get(column);
+        if (index == null) {
+            return null;
+        }
+        String value = record[index].trim();
+        return value.isEmpty() ? null : value;
     }
 }
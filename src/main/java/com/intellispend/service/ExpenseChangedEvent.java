@@ -0,0 +1,17 @@
+package com.intellispend.service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Published by {@link ExpenseService} whenever expenses are written, listing the months whose
+ * aggregates the write may have changed.
+ */
+public record ExpenseChangedEvent(Long userId, Set<YearMonth> months) {
+    public static ExpenseChangedEvent of(Long userId, Collection<LocalDate> dates) {
+        return new ExpenseChangedEvent(userId, dates.stream().map(YearMonth::from).collect(Collectors.toSet()));
+    }
+}
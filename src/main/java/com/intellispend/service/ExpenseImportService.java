@@ -0,0 +1,392 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.ExpenseRequest;
+import com.intellispend.dto.ImportJobResponse;
+import com.intellispend.dto.ImportReport;
+import com.intellispend.dto.ImportRowError;
+import com.intellispend.entity.EImportStatus;
+import com.intellispend.entity.ImportJob;
+import com.intellispend.entity.ImportJobError;
+import com.intellispend.exception.ResourceNotFoundException;
+import com.intellispend.repository.ImportJobErrorRepository;
+import com.intellispend.repository.ImportJobRepository;
+import com.intellispend.repository.projection.UserRef;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * CSV import pipeline: rows are read, validated and collected into chunks of {@code chunk-size};
+ * each chunk is categorized and saved in its own transaction, so memory stays bounded and a bad
+ * row only costs itself. If saving a chunk fails, every row of that chunk is reported rejected.
+ * <p>
+ * Imports are idempotent: every row gets a fingerprint from its date, amount, currency, description
+ * and payment method, plus how many identical rows came before it in the same file (so a file that
+ * really holds two identical coffees imports both). Rows whose fingerprint the user already has
+ * are skipped and reported as duplicates, so re-uploading an overlapping statement only adds the
+ * new rows.
+ * <p>
+ * Imports run either inline ({@link #importCsv}) or as background jobs ({@link #submit}), at most
+ * {@code concurrency} at a time, whose progress is kept in {@code import_jobs}. Jobs a node had
+ * queued or running when it stopped are failed when it starts again ({@link #failInterruptedJobs}).
+ */
+@Service
+@Slf4j
+public class ExpenseImportService {
+    private static final int MAX_MESSAGE_LENGTH = 500;
+    // Hex digits of the SHA-256 row hash kept in a fingerprint, before the "-<occurrence>" suffix
+    private static final int FINGERPRINT_HASH_LENGTH = 32;
+    private static final String INTERRUPTED = "Interrupted by a server restart; upload the file again to import the remaining rows";
+
+    private final CsvService csvService;
+    private final ExpenseService expenseService;
+    private final FxRateService fxRateService;
+    private final ImportJobRepository importJobRepository;
+    private final ImportJobErrorRepository importJobErrorRepository;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+    private final String node;
+    private final ThreadPoolExecutor executor;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+
+    public ExpenseImportService(CsvService csvService,
+                                ExpenseService expenseService,
+                                FxRateService fxRateService,
+                                ImportJobRepository importJobRepository,
+                                ImportJobErrorRepository importJobErrorRepository,
+                                @Value("${imports.chunk-size}") int chunkSize,
+                                @Value("${imports.max-reported-errors}") int maxReportedErrors,
+                                @Value("${imports.concurrency}") int concurrency,
+                                @Value("${imports.queue-capacity}") int queueCapacity,
+                                @Value("${imports.node}") String node) {
+        this.csvService = csvService;
+        this.expenseService = expenseService;
+        this.fxRateService = fxRateService;
+        this.importJobRepository = importJobRepository;
+        this.importJobErrorRepository = importJobErrorRepository;
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.node = node;
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("csv-import-"));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Imports {@code in} for {@code user} on the calling thread.
+     */
+    public ImportReport importCsv(InputStream in, UserRef user) {
+        return run(in, user, report -> {
+        });
+    }
+
+    /**
+     * Spools {@code file} to disk and imports it in the background. Poll {@link #getJob} for
+     * progress; a job that cannot be queued is returned as {@code FAILED}.
+     */
+    public ImportJobResponse submit(MultipartFile file, UserRef user) {
+        Path spool;
+        try {
+            spool = Files.createTempFile("expense-import-", ".csv");
+            file.transferTo(spool);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to store uploaded file", e);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        ImportJob job = importJobRepository.save(ImportJob.builder()
+                .userId(user.getId())
+                .fileName(truncate(file.getOriginalFilename()))
+                .status(EImportStatus.QUEUED)
+                .node(node)
+                .spoolPath(spool.toString())
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+
+        // Snapshot before handing the job to a worker, which updates it as it goes
+        ImportJobResponse response = toResponse(job, List.of(), List.of());
+        try {
+            executor.execute(() -> runJob(job, spool, user));
+        } catch (RejectedExecutionException e) {
+            deleteQuietly(spool);
+            finish(job, EImportStatus.FAILED, "Too many imports in progress, try again later");
+            response = toResponse(job, List.of(), List.of());
+        }
+        return response;
+    }
+
+    /**
+     * Fails the jobs this node had queued or running when it last stopped, which would otherwise
+     * keep that status forever, and deletes their spool files. Jobs submitted since this node
+     * started are left alone.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failInterruptedJobs() {
+        List<ImportJob> interrupted = importJobRepository.findByNodeAndStatusInAndCreatedAtBefore(
+                node, List.of(EImportStatus.QUEUED, EImportStatus.RUNNING), startedAt);
+        for (ImportJob job : interrupted) {
+            if (job.getSpoolPath() != null) {
+                deleteQuietly(Path.of(job.getSpoolPath()));
+            }
+            finish(job, EImportStatus.FAILED, INTERRUPTED);
+        }
+        if (!interrupted.isEmpty()) {
+            log.warn("Failed {} import jobs interrupted by the last shutdown of {}", interrupted.size(), node);
+        }
+    }
+
+    public ImportJobResponse getJob(Long id, UserRef user) {
+        ImportJob job = importJobRepository.findByIdAndUserId(id, user.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Import job not found with id: " + id));
+        List<ImportRowError> errors = importJobErrorRepository
+                .findByJobIdAndDuplicateOrderByLineNumberAsc(job.getId(), false, Limit.of(maxReportedErrors)).stream()
+                .map(error -> new ImportRowError(error.getLineNumber(), error.getMessage()))
+                .toList();
+        List<Long> duplicateLines = importJobErrorRepository
+                .findByJobIdAndDuplicateOrderByLineNumberAsc(job.getId(), true, Limit.of(maxReportedErrors)).stream()
+                .map(ImportJobError::getLineNumber)
+                .toList();
+        return toResponse(job, errors, duplicateLines);
+    }
+
+    private void runJob(ImportJob job, Path spool, UserRef user) {
+        job.setStatus(EImportStatus.RUNNING);
+        job.setUpdatedAt(LocalDateTime.now());
+        importJobRepository.save(job);
+
+        int[] errorsSaved = {0};
+        int[] duplicatesSaved = {0};
+        try (InputStream in = Files.newInputStream(spool)) {
+            ImportReport report = run(in, user, progress -> {
+                // Persist errors and duplicates reported since the last chunk, then the counters
+                List<ImportRowError> errors = progress.getErrors();
+                List<Long> duplicateLines = progress.getDuplicateLines();
+                List<ImportJobError> newErrors = new ArrayList<>();
+                for (int i = errorsSaved[0]; i < errors.size(); i++) {
+                    newErrors.add(ImportJobError.builder()
+                            .jobId(job.getId())
+                            .lineNumber(errors.get(i).getLine())
+                            .message(truncate(errors.get(i).getMessage()))
+                            .build());
+                }
+                for (int i = duplicatesSaved[0]; i < duplicateLines.size(); i++) {
+                    newErrors.add(ImportJobError.builder()
+                            .jobId(job.getId())
+                            .lineNumber(duplicateLines.get(i))
+                            .message("Already imported")
+                            .duplicate(true)
+                            .build());
+                }
+                importJobErrorRepository.saveAll(newErrors);
+                errorsSaved[0] = errors.size();
+                duplicatesSaved[0] = duplicateLines.size();
+                copyCounters(progress, job);
+                job.setUpdatedAt(LocalDateTime.now());
+                importJobRepository.save(job);
+            });
+            copyCounters(report, job);
+            finish(job, EImportStatus.COMPLETED, report.isErrorsTruncated() || report.isDuplicateLinesTruncated()
+                    ? "Only the first " + maxReportedErrors + " rejected and duplicate rows are listed" : null);
+            log.info("Import job {} for {} finished: {} rows, {} accepted, {} rejected, {} duplicates",
+                    job.getId(), user.getUsername(), report.getRowsRead(), report.getAccepted(), report.getRejected(),
+                    report.getDuplicates());
+        } catch (Exception e) {
+            log.error("Import job {} for {} failed: {}", job.getId(), user.getUsername(), e.getMessage());
+            finish(job, EImportStatus.FAILED, e.getMessage());
+        } finally {
+            deleteQuietly(spool);
+        }
+    }
+
+    private ImportReport run(InputStream in, UserRef user, Consumer<ImportReport> afterChunk) {
+        ImportReport report = new ImportReport();
+        List<ExpenseRequest> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkLines = new ArrayList<>(chunkSize);
+        List<String> chunkFingerprints = new ArrayList<>(chunkSize);
+        // row hash -> identical rows seen so far in this file
+        Map<String, Integer> occurrences = new HashMap<>();
+        MessageDigest digest = sha256();
+
+        csvService.read(in, new CsvService.RowHandler() {
+            @Override
+            public void accept(long line, ExpenseRequest request) {
+                report.setRowsRead(report.getRowsRead() + 1);
+                if (!fxRateService.isSupported(request.getCurrency())) {
+                    recordError(report, line, "Unsupported currency '" + request.getCurrency() + "'");
+                    return;
+                }
+                String hash = rowHash(request, fxRateService.getBaseCurrency(), digest);
+                chunk.add(request);
+                chunkLines.add(line);
+                chunkFingerprints.add(hash + "-" + occurrences.merge(hash, 1, Integer::sum));
+                if (chunk.size() == chunkSize) {
+                    saveChunk(chunk, chunkLines, chunkFingerprints, user, report);
+                    afterChunk.accept(report);
+                }
+            }
+
+            @Override
+            public void reject(long line, String reason) {
+                report.setRowsRead(report.getRowsRead() + 1);
+                recordError(report, line, reason);
+            }
+        });
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, chunkLines, chunkFingerprints, user, report);
+        }
+        afterChunk.accept(report);
+        return report;
+    }
+
+    private void saveChunk(List<ExpenseRequest> chunk, List<Long> lines, List<String> fingerprints,
+                           UserRef user, ImportReport report) {
+        try {
+            Set<String> skipped;
+            try {
+                skipped = expenseService.importExpenses(chunk, fingerprints, user);
+            } catch (DataIntegrityViolationException e) {
+                // Another import of the same rows committed between our duplicate check and insert;
+                // the retry sees its rows and skips them
+                skipped = expenseService.importExpenses(chunk, fingerprints, user);
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                if (skipped.contains(fingerprints.get(i))) {
+                    recordDuplicate(report, lines.get(i));
+                }
+            }
+            report.setAccepted(report.getAccepted() + chunk.size() - skipped.size());
+        } catch (RuntimeException e) {
+            log.warn("Import chunk of {} rows for {} failed: {}", chunk.size(), user.getUsername(), e.getMessage());
+            for (Long line : lines) {
+                recordError(report, line, "Not saved: " + e.getMessage());
+            }
+        }
+        chunk.clear();
+        lines.clear();
+        fingerprints.clear();
+    }
+
+    private void recordDuplicate(ImportReport report, long line) {
+        report.setDuplicates(report.getDuplicates() + 1);
+        if (report.getDuplicateLines().size() < maxReportedErrors) {
+            report.getDuplicateLines().add(line);
+        } else {
+            report.setDuplicateLinesTruncated(true);
+        }
+    }
+
+    /**
+     * Hash of the fields that identify a statement row. Category is left out, so a row
+     * re-categorized by hand, or left blank for auto-categorization, still matches. The currency
+     * only counts when it isn't the base currency, so a blank currency and {@code baseCurrency}
+     * match each other and fingerprints from before the currency was hashed.
+     */
+    static String rowHash(ExpenseRequest request, String baseCurrency, MessageDigest digest) {
+        String description = request.getDescription() == null ? ""
+                : request.getDescription().trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        String paymentMethod = request.getPaymentMethod() == null ? ""
+                : request.getPaymentMethod().trim().toLowerCase(Locale.ROOT);
+        String row = request.getDate() + "|" + request.getAmount().stripTrailingZeros().toPlainString()
+                + "|" + description + "|" + paymentMethod;
+        if (request.getCurrency() != null && !request.getCurrency().equals(baseCurrency)) {
+            row += "|" + request.getCurrency();
+        }
+        byte[] hash = digest.digest(row.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hash).substring(0, FINGERPRINT_HASH_LENGTH);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private void recordError(ImportReport report, long line, String reason) {
+        report.setRejected(report.getRejected() + 1);
+        if (report.getErrors().size() < maxReportedErrors) {
+            report.getErrors().add(new ImportRowError(line, reason));
+        } else {
+            report.setErrorsTruncated(true);
+        }
+    }
+
+    private void finish(ImportJob job, EImportStatus status, String message) {
+        job.setStatus(status);
+        job.setMessage(truncate(message));
+        job.setUpdatedAt(LocalDateTime.now());
+        job.setCompletedAt(job.getUpdatedAt());
+        importJobRepository.save(job);
+    }
+
+    private static void copyCounters(ImportReport report, ImportJob job) {
+        job.setRowsRead(report.getRowsRead());
+        job.setAccepted(report.getAccepted());
+        job.setRejected(report.getRejected());
+        job.setDuplicates(report.getDuplicates());
+    }
+
+    private static ImportJobResponse toResponse(ImportJob job, List<ImportRowError> errors, List<Long> duplicateLines) {
+        return ImportJobResponse.builder()
+                .id(job.getId())
+                .fileName(job.getFileName())
+                .status(job.getStatus())
+                .rowsRead(job.getRowsRead())
+                .accepted(job.getAccepted())
+                .rejected(job.getRejected())
+                .duplicates(job.getDuplicates())
+                .message(job.getMessage())
+                .errors(errors)
+                .duplicateLines(duplicateLines)
+                .createdAt(job.getCreatedAt())
+                .completedAt(job.getCompletedAt())
+                .build();
+    }
+
+    private static String truncate(String text) {
+        return (text != null && text.length() > MAX_MESSAGE_LENGTH) ? text.substring(0, MAX_MESSAGE_LENGTH) : text;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete import spool file {}: {}", path, e.getMessage());
+        }
+    }
+}
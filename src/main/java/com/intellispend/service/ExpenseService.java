@@ -2,148 +2,310 @@ package com.intellispend.service;
 
 import com.intellispend.dto.ExpenseRequest;
 import com.intellispend.dto.ExpenseResponse;
+import com.intellispend.entity.ECategorySource;
 import com.intellispend.entity.Expense;
 import com.intellispend.entity.User;
+import com.intellispend.exception.InvalidRequestException;
 import com.intellispend.repository.ExpenseRepository;
 import com.intellispend.repository.UserRepository;
+import com.intellispend.repository.projection.UserRef;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ExpenseService {
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private static final int MAX_CURSOR_PAGE_SIZE = 100;
+    private static final org.springframework.data.domain.Sort KEYSET_SORT =
+            org.springframework.data.domain.Sort.by(
+                    org.springframework.data.domain.Sort.Order.desc("date"),
+                    org.springframework.data.domain.Sort.Order.desc("id"));
+
     private final ExpenseRepository expenseRepository;
     private final UserRepository userRepository;
     private final CategorizationService categorizationService;
     private final BudgetService budgetService;
+    private final SpendLedgerService spendLedgerService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final FxRateService fxRateService;
 
-    @Transactional
-    public ExpenseResponse createExpense(ExpenseRequest request, String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    // Categorization may wait on OpenAI, so it runs before the transaction opens rather than
+    // holding a database connection; only the writes run in transactionTemplate.
 
+    public ExpenseResponse createExpense(ExpenseRequest request, UserRef userRef) {
+        requireSupportedCurrency(request);
         String category = request.getCategory();
-        if (category == null || category.trim().isEmpty() || category.equalsIgnoreCase("Other")) {
-            category = categorizationService.categorize(request.getDescription());
+        ECategorySource categorySource = ECategorySource.USER;
+        if (needsCategory(category)) {
+            category = categorizationService.categorize(request.getDescription(), userRef.getId());
+            categorySource = ECategorySource.AUTO;
         }
 
         Expense expense = Expense.builder()
                 .amount(request.getAmount())
                 .category(category)
+                .categorySource(categorySource)
                 .description(request.getDescription())
                 .date(request.getDate())
                 .paymentMethod(request.getPaymentMethod())
                 .currency(request.getCurrency())
-                .user(user)
                 .build();
 
-        Expense savedExpense = expenseRepository.save(expense);
-        budgetService.checkBudget(savedExpense);
-        return mapToResponse(savedExpense);
+        return transactionTemplate.execute(status -> {
+            User user = userRepository.getReferenceById(userRef.getId());
+            expense.setUser(user);
+            Expense savedExpense = expenseRepository.save(expense);
+            spendLedgerService.record(savedExpense);
+            eventPublisher.publishEvent(ExpenseChangedEvent.of(user.getId(), List.of(savedExpense.getDate())));
+            budgetService.checkBudget(savedExpense);
+            return mapToResponse(savedExpense);
+        });
     }
 
-    @Transactional
-    public List<ExpenseResponse> createExpenses(List<ExpenseRequest> requests, String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
-
-        List<Expense> expenses = requests.stream()
-                .map(request -> {
-                    String category = request.getCategory();
-                    if (category == null || category.trim().isEmpty() || category.equalsIgnoreCase("Other")) {
-                        category = categorizationService.categorize(request.getDescription());
-                    }
-                    return Expense.builder()
-                            .amount(request.getAmount())
-                            .category(category)
-                            .description(request.getDescription())
-                            .date(request.getDate())
-                            .paymentMethod(request.getPaymentMethod())
-                            .currency(request.getCurrency())
-                            .user(user)
-                            .build();
-                })
-                .collect(Collectors.toList());
+    public List<ExpenseResponse> createExpenses(List<ExpenseRequest> requests, UserRef userRef) {
+        requests.forEach(this::requireSupportedCurrency);
+        java.util.Map<String, String> categories = categorizeMissing(requests, userRef);
 
-        return expenseRepository.saveAll(expenses).stream()
+        return transactionTemplate.execute(status -> saveNew(requests, null, categories, userRef).stream()
                 .map(this::mapToResponse)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Saves one chunk of a CSV import. {@code fingerprints} holds the import fingerprint of each
+     * request; requests whose fingerprint the user already has, including on deleted expenses, are
+     * skipped rather than inserted again.
+     *
+     * @return the fingerprints that were skipped as duplicates
+     */
+    public java.util.Set<String> importExpenses(List<ExpenseRequest> requests, List<String> fingerprints, UserRef userRef) {
+        java.util.Set<String> existing = new java.util.HashSet<>(
+                expenseRepository.findExistingImportFingerprints(userRef.getId(), fingerprints));
+        List<ExpenseRequest> newRequests = new java.util.ArrayList<>();
+        List<String> newFingerprints = new java.util.ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (!existing.contains(fingerprints.get(i))) {
+                newRequests.add(requests.get(i));
+                newFingerprints.add(fingerprints.get(i));
+            }
+        }
+        if (!newRequests.isEmpty()) {
+            // A concurrent import of the same rows that commits first makes the insert fail on the
+            // fingerprint index; the caller retries and the check above then skips them
+            java.util.Map<String, String> categories = categorizeMissing(newRequests, userRef);
+            transactionTemplate.executeWithoutResult(status -> saveNew(newRequests, newFingerprints, categories, userRef));
+        }
+        return existing;
     }
 
-    public List<ExpenseResponse> getAllExpenses(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    // One batched categorization pass for every request that arrived without a category
+    private java.util.Map<String, String> categorizeMissing(List<ExpenseRequest> requests, UserRef userRef) {
+        return categorizationService.categorizeAll(requests.stream()
+                .filter(request -> needsCategory(request.getCategory()))
+                .map(ExpenseRequest::getDescription)
+                .toList(), userRef.getId());
+    }
+
+    private List<Expense> saveNew(List<ExpenseRequest> requests, List<String> fingerprints,
+                                  java.util.Map<String, String> categories, UserRef userRef) {
+        User user = userRepository.getReferenceById(userRef.getId());
+        List<Expense> expenses = new java.util.ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            ExpenseRequest request = requests.get(i);
+            String category = request.getCategory();
+            ECategorySource categorySource = ECategorySource.USER;
+            if (needsCategory(category)) {
+                category = categories.getOrDefault(request.getDescription(), "Other");
+                categorySource = ECategorySource.AUTO;
+            }
+            expenses.add(Expense.builder()
+                    .amount(request.getAmount())
+                    .category(category)
+                    .categorySource(categorySource)
+                    .description(request.getDescription())
+                    .date(request.getDate())
+                    .paymentMethod(request.getPaymentMethod())
+                    .currency(request.getCurrency())
+                    .importFingerprint(fingerprints != null ? fingerprints.get(i) : null)
+                    .user(user)
+                    .build());
+        }
+
+        List<Expense> savedExpenses = expenseRepository.saveAll(expenses);
+        spendLedgerService.recordAll(savedExpenses);
+        eventPublisher.publishEvent(ExpenseChangedEvent.of(user.getId(),
+                savedExpenses.stream().map(Expense::getDate).toList()));
+        return savedExpenses;
+    }
+
+    @Transactional(readOnly = true)
+    public List<ExpenseResponse> getAllExpenses(UserRef userRef) {
+        User user = userRepository.getReferenceById(userRef.getId());
 
         return expenseRepository.findAllByUser(user).stream()
                 .map(this::mapToResponse)
                 .collect(Collectors.toList());
     }
 
-    public org.springframework.data.domain.Page<ExpenseResponse> getPaginatedExpenses(String username, org.springframework.data.domain.Pageable pageable) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    @Transactional(readOnly = true)
+    public org.springframework.data.domain.Page<ExpenseResponse> getPaginatedExpenses(UserRef userRef, org.springframework.data.domain.Pageable pageable) {
+        User user = userRepository.getReferenceById(userRef.getId());
 
         return expenseRepository.findAllByUser(user, pageable)
                 .map(this::mapToResponse);
     }
 
     @Transactional
-    public ExpenseResponse updateExpense(Long id, ExpenseRequest request, String username) {
+    public ExpenseResponse updateExpense(Long id, ExpenseRequest request, UserRef userRef) {
+        requireSupportedCurrency(request);
         Expense expense = expenseRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Expense not found with id: " + id));
 
-        if (!expense.getUser().getUsername().equals(username)) {
+        if (!expense.getUser().getId().equals(userRef.getId())) {
             throw new RuntimeException("Unauthorized to update this expense");
         }
 
+        spendLedgerService.reverse(expense);
+        LocalDate previousDate = expense.getDate();
+        if (!needsCategory(request.getCategory()) && !request.getCategory().equals(expense.getCategory())) {
+            categorizationService.recordCorrection(request.getDescription(), request.getCategory(), userRef.getId());
+            expense.setCategorySource(ECategorySource.USER);
+        }
+
         expense.setAmount(request.getAmount());
         expense.setCategory(request.getCategory());
         expense.setDescription(request.getDescription());
         expense.setDate(request.getDate());
         expense.setPaymentMethod(request.getPaymentMethod());
+        expense.setCurrency(request.getCurrency());
 
         Expense updatedExpense = expenseRepository.save(expense);
+        spendLedgerService.record(updatedExpense);
+        eventPublisher.publishEvent(ExpenseChangedEvent.of(updatedExpense.getUser().getId(),
+                List.of(previousDate, updatedExpense.getDate())));
         return mapToResponse(updatedExpense);
     }
 
     @Transactional
-    public void deleteExpense(Long id, String username) {
+    public void deleteExpense(Long id, UserRef userRef) {
         Expense expense = expenseRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Expense not found with id: " + id));
 
-        if (!expense.getUser().getUsername().equals(username)) {
+        if (!expense.getUser().getId().equals(userRef.getId())) {
             throw new RuntimeException("Unauthorized to delete this expense");
         }
 
         expenseRepository.delete(expense);
+        spendLedgerService.reverse(expense);
+        eventPublisher.publishEvent(ExpenseChangedEvent.of(expense.getUser().getId(), List.of(expense.getDate())));
     }
 
+    @Transactional(readOnly = true)
     public org.springframework.data.domain.Page<ExpenseResponse> getFilteredExpenses(
-            String username,
+            UserRef userRef,
             String category,
             java.time.LocalDate startDate,
             java.time.LocalDate endDate,
             java.math.BigDecimal minAmount,
             java.math.BigDecimal maxAmount,
             String description,
+            com.intellispend.dto.SearchMode searchMode,
             org.springframework.data.domain.Pageable pageable) {
 
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+        User user = userRepository.getReferenceById(userRef.getId());
 
         org.springframework.data.jpa.domain.Specification<Expense> spec = com.intellispend.repository.ExpenseSpecification.filterBy(
-                        user, category, startDate, endDate, minAmount, maxAmount, description);
+                        user, category, startDate, endDate, minAmount, maxAmount, description, searchMode);
 
         return expenseRepository.findAll(java.util.Objects.requireNonNull(spec), 
                 java.util.Objects.requireNonNull(pageable))
                 .map(this::mapToResponse);
     }
 
+    /**
+     * Keyset-paginated variant of {@link #getFilteredExpenses}: seeks past {@code cursor} in
+     * (date, id) order and fetches one extra row to detect the next page, so no COUNT query runs
+     * and deep pages cost the same as the first.
+     */
+    @Transactional(readOnly = true)
+    public com.intellispend.dto.CursorPage<ExpenseResponse> scrollFilteredExpenses(
+            UserRef userRef,
+            String category,
+            java.time.LocalDate startDate,
+            java.time.LocalDate endDate,
+            java.math.BigDecimal minAmount,
+            java.math.BigDecimal maxAmount,
+            String description,
+            com.intellispend.dto.SearchMode searchMode,
+            String cursor,
+            int size) {
+
+        User user = userRepository.getReferenceById(userRef.getId());
+
+        org.springframework.data.jpa.domain.Specification<Expense> spec = com.intellispend.repository.ExpenseSpecification.filterBy(
+                        user, category, startDate, endDate, minAmount, maxAmount, description, searchMode);
+        if (cursor != null && !cursor.isEmpty()) {
+            spec = spec.and(com.intellispend.repository.ExpenseSpecification.after(
+                    com.intellispend.dto.ExpenseCursor.decode(cursor)));
+        }
+
+        int pageSize = Math.min(Math.max(size, 1), MAX_CURSOR_PAGE_SIZE);
+        List<Expense> rows = expenseRepository.findBy(java.util.Objects.requireNonNull(spec),
+                query -> query.sortBy(KEYSET_SORT).limit(pageSize + 1).all());
+
+        boolean hasNext = rows.size() > pageSize;
+        List<Expense> page = hasNext ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasNext) {
+            Expense last = page.get(page.size() - 1);
+            nextCursor = new com.intellispend.dto.ExpenseCursor(last.getDate(), last.getId()).encode();
+        }
+
+        return com.intellispend.dto.CursorPage.<ExpenseResponse>builder()
+                .content(page.stream().map(this::mapToResponse).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public List<ExpenseResponse> searchExpenses(UserRef userRef, String query, int limit) {
+        User user = userRepository.getReferenceById(userRef.getId());
+
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+
+        String term = query.trim();
+        return expenseRepository.searchByDescription(
+                        user.getId(),
+                        com.intellispend.repository.ExpenseSpecification.toPrefixTsQuery(term),
+                        com.intellispend.repository.ExpenseSpecification.toContainsPattern(term),
+                        term.toLowerCase(java.util.Locale.ROOT),
+                        Math.min(Math.max(limit, 1), MAX_SEARCH_RESULTS)).stream()
+                .map(this::mapToResponse)
+                .collect(Collectors.toList());
+    }
+
+    private void requireSupportedCurrency(ExpenseRequest request) {
+        if (!fxRateService.isSupported(request.getCurrency())) {
+            throw new InvalidRequestException("Unsupported currency: " + request.getCurrency());
+        }
+    }
+
+    private boolean needsCategory(String category) {
+        return category == null || category.trim().isEmpty() || category.equalsIgnoreCase("Other");
+    }
+
     private ExpenseResponse mapToResponse(Expense expense) {
         return ExpenseResponse.builder()
                 .id(expense.getId())
@@ -0,0 +1,159 @@
+package com.intellispend.service;
+
+import com.intellispend.repository.FxRateRepository;
+import com.intellispend.util.FxRateTable;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Daily FX rates into {@code fx.base-currency}, read from {@code fx.rates.location}
+ * ({@code date,currency,rate} per line, {@code #} comments; currency codes are upper-cased). Rates
+ * are held in memory as an
+ * {@link FxRateTable} for converting single expenses, and mirrored to {@code fx_rates} for the
+ * {@code fx_to_base} conversion that aggregation queries use.
+ * <p>
+ * When the location is a file on disk it is re-read after it changes; a file that fails to parse is
+ * logged and the previous rates stay in use. Whenever the stored rates change an
+ * {@link FxRatesChangedEvent} is published so converted aggregates are rebuilt.
+ * <p>
+ * Only the base currency and currencies with rates are {@linkplain #isSupported supported}. Converting
+ * any other currency falls back to 1:1, is logged and is counted in {@code fx.conversions.unrated}.
+ */
+@Service
+@Slf4j
+public class FxRateService {
+    private final Resource source;
+    private final String baseCurrency;
+    private final FxRateRepository fxRateRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter unrated;
+    private volatile FxRateTable table;
+    private volatile long loadedModified;
+
+    public FxRateService(@Value("${fx.rates.location}") Resource source,
+                         @Value("${fx.base-currency}") String baseCurrency,
+                         FxRateRepository fxRateRepository,
+                         ApplicationEventPublisher eventPublisher,
+                         MeterRegistry meterRegistry) {
+        this.source = source;
+        this.baseCurrency = FxRateTable.currencyCode(baseCurrency);
+        this.fxRateRepository = fxRateRepository;
+        this.eventPublisher = eventPublisher;
+        this.unrated = meterRegistry.counter("fx.conversions.unrated");
+        try {
+            this.loadedModified = source.isFile() ? source.lastModified() : 0;
+            this.table = FxRateTable.of(parse(source, this.baseCurrency));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load FX rates from " + source, e);
+        }
+        log.info("Loaded {} FX rates for {} currencies into {} from {}", table.size(), table.currencies(), baseCurrency, source);
+    }
+
+    public BigDecimal toBase(BigDecimal amount, String currency, LocalDate date) {
+        FxRateTable current = table;
+        if (!isSupported(current, currency)) {
+            unrated.increment();
+            log.warn("No FX rate for {}, converting {} {} of {} to {} 1:1", currency, amount, currency, date, baseCurrency);
+        }
+        return current.toBase(amount, currency, date);
+    }
+
+    /**
+     * Whether amounts in {@code currency} (an upper-case code, or {@code null} for the base
+     * currency) can be converted to the base currency.
+     */
+    public boolean isSupported(String currency) {
+        return isSupported(table, currency);
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void syncOnStartup() {
+        syncToDatabase();
+    }
+
+    @Scheduled(fixedDelayString = "${fx.rates.reload-interval}")
+    public void reloadIfChanged() {
+        try {
+            if (source.isFile() && source.lastModified() != loadedModified) {
+                long modified = source.lastModified();
+                table = FxRateTable.of(parse(source, baseCurrency));
+                loadedModified = modified;
+                log.info("Reloaded {} FX rates for {} currencies from {}", table.size(), table.currencies(), source);
+                syncToDatabase();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Keeping previous FX rates, reload from {} failed: {}", source, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the in-memory rates to {@code fx_rates} if they differ from what is stored there.
+     *
+     * @return whether the stored rates changed
+     */
+    public boolean syncToDatabase() {
+        FxRateTable current = table;
+        if (!fxRateRepository.replaceIfChanged(current)) {
+            return false;
+        }
+        log.info("Stored FX rates changed, {} rates for {} currencies", current.size(), current.currencies());
+        eventPublisher.publishEvent(new FxRatesChangedEvent(current.size(), current.currencies()));
+        return true;
+    }
+
+    private boolean isSupported(FxRateTable current, String currency) {
+        return currency == null || currency.equals(baseCurrency) || current.hasRates(currency);
+    }
+
+    static List<FxRateTable.Rate> parse(Resource resource, String baseCurrency) throws IOException {
+        List<FxRateTable.Rate> parsed = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length != 3 || fields[1].isBlank()) {
+                    throw new IllegalArgumentException("Invalid FX rate on line " + lineNumber + ": " + line);
+                }
+                FxRateTable.Rate rate;
+                try {
+                    rate = new FxRateTable.Rate(FxRateTable.currencyCode(fields[1]), LocalDate.parse(fields[0].trim()), new BigDecimal(fields[2].trim()));
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid FX rate on line " + lineNumber + ": " + line);
+                }
+                if (rate.rate().signum() <= 0 || (rate.currency().equals(baseCurrency) && rate.rate().compareTo(BigDecimal.ONE) != 0)) {
+                    throw new IllegalArgumentException("Invalid FX rate on line " + lineNumber + ": " + line);
+                }
+                parsed.add(rate);
+            }
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,8 @@
+package com.intellispend.service;
+
+/**
+ * Published by {@link FxRateService} after new rates replace the stored ones, so everything holding
+ * amounts converted at the old rates can rebuild.
+ */
+public record FxRatesChangedEvent(int rates, int currencies) {
+}
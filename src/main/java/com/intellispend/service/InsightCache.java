@@ -0,0 +1,119 @@
+package com.intellispend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.intellispend.dto.AiSummaryStatus;
+import com.intellispend.dto.InsightResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Size- and TTL-bounded cache of monthly insights per (user, month). Entries are dropped once an
+ * expense write in that month commits; the following month is dropped too, since its
+ * month-over-month figures depend on this one. Entries without a ready AI summary only live for
+ * {@code pending-ttl}, so polls soon see the summary or a retry, and are dropped when OpenAI
+ * recovers from an outage. Hit, miss and eviction counts are published as {@code cache.*} metrics
+ * with {@code cache=insights}.
+ */
+@Component
+@Slf4j
+public class InsightCache {
+    private final Cache<Key, InsightResponse> cache;
+    // Keys this thread is loading, and whether they were invalidated while loading
+    private final ThreadLocal<Map<Key, Boolean>> loading = ThreadLocal.withInitial(HashMap::new);
+
+    public InsightCache(@Value("${insights.cache.max-size}") long maxSize,
+                        @Value("${insights.cache.ttl}") Duration ttl,
+                        @Value("${insights.cache.pending-ttl}") Duration pendingTtl,
+                        MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new BySummaryStatus(ttl, pendingTtl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "insights");
+    }
+
+    public InsightResponse get(Long userId, YearMonth month, Supplier<InsightResponse> loader) {
+        Key key = new Key(userId, month);
+        Map<Key, Boolean> ownLoads = loading.get();
+        try {
+            InsightResponse insights = cache.get(key, k -> {
+                ownLoads.put(k, Boolean.FALSE);
+                return loader.get();
+            });
+            if (Boolean.TRUE.equals(ownLoads.get(key))) {
+                cache.invalidate(key);
+            }
+            return insights;
+        } finally {
+            ownLoads.remove(key);
+        }
+    }
+
+    /**
+     * Drops the entry. Safe to call from the entry's own loader, e.g. when the summary it reports as
+     * pending could not be queued: the loaded value is then returned but not kept.
+     */
+    public void invalidate(Long userId, YearMonth month) {
+        Key key = new Key(userId, month);
+        // Removing a key from inside its own load would be a recursive update
+        if (loading.get().replace(key, Boolean.TRUE) == null) {
+            cache.invalidate(key);
+        }
+    }
+
+    // Every cached total was converted at the old rates
+    @EventListener(FxRatesChangedEvent.class)
+    public void onFxRatesChanged() {
+        cache.invalidateAll();
+    }
+
+    // Placeholders handed out while OpenAI was failing can now be generated
+    @EventListener(OpenAiRecoveredEvent.class)
+    public void onOpenAiRecovered() {
+        cache.asMap().values().removeIf(insights -> insights.getAiSummaryStatus() != AiSummaryStatus.READY);
+    }
+
+    @TransactionalEventListener
+    public void onExpenseChanged(ExpenseChangedEvent event) {
+        for (YearMonth month : event.months()) {
+            cache.invalidate(new Key(event.userId(), month));
+            cache.invalidate(new Key(event.userId(), month.plusMonths(1)));
+        }
+        log.debug("Invalidated insights for user {} months {}", event.userId(), event.months());
+    }
+
+    private record Key(Long userId, YearMonth month) {
+    }
+
+    private record BySummaryStatus(Duration ttl, Duration pendingTtl) implements Expiry<Key, InsightResponse> {
+        @Override
+        public long expireAfterCreate(Key key, InsightResponse insights, long currentTime) {
+            AiSummaryStatus status = insights.getAiSummaryStatus();
+            return (status == null || status == AiSummaryStatus.READY ? ttl : pendingTtl).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Key key, InsightResponse insights, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, insights, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Key key, InsightResponse insights, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
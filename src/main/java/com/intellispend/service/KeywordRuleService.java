@@ -0,0 +1,91 @@
+package com.intellispend.service;
+
+import com.intellispend.util.KeywordMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keyword rules for categorization, compiled into a {@link KeywordMatcher}. Rules are read from
+ * {@code categorization.keywords.location} ({@code keyword,category[,priority]} per line, {@code #}
+ * comments). When that is a file on disk it is re-read after it changes; a file that fails to
+ * parse is logged and the previous rules stay in use.
+ */
+@Service
+@Slf4j
+public class KeywordRuleService {
+    private final Resource rules;
+    private volatile KeywordMatcher matcher;
+    private volatile long loadedModified;
+
+    public KeywordRuleService(@Value("${categorization.keywords.location}") Resource rules) {
+        this.rules = rules;
+        try {
+            reload();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot load keyword rules from " + rules, e);
+        }
+    }
+
+    /**
+     * Category of the best matching keyword rule, or {@code null} if none matches.
+     */
+    public String match(String description) {
+        return matcher.match(description);
+    }
+
+    @Scheduled(fixedDelayString = "${categorization.keywords.reload-interval}")
+    public void reloadIfChanged() {
+        try {
+            if (rules.isFile() && rules.lastModified() != loadedModified) {
+                reload();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Keeping previous keyword rules, reload from {} failed: {}", rules, e.getMessage());
+        }
+    }
+
+    private void reload() throws IOException {
+        long modified = rules.isFile() ? rules.lastModified() : 0;
+        List<KeywordMatcher.Rule> parsed = parse(rules);
+        matcher = KeywordMatcher.compile(parsed);
+        loadedModified = modified;
+        log.info("Loaded {} keyword rules from {}", parsed.size(), rules);
+    }
+
+    static List<KeywordMatcher.Rule> parse(Resource resource) throws IOException {
+        List<KeywordMatcher.Rule> parsed = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 2 || fields.length > 3 || fields[0].isBlank() || fields[1].isBlank()) {
+                    throw new IllegalArgumentException("Invalid keyword rule on line " + lineNumber + ": " + line);
+                }
+                int priority;
+                try {
+                    priority = fields.length == 3 ? Integer.parseInt(fields[2].trim()) : 0;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid priority on line " + lineNumber + ": " + line);
+                }
+                parsed.add(new KeywordMatcher.Rule(fields[0].trim(), fields[1].trim(), priority));
+            }
+        }
+        return parsed;
+    }
+}
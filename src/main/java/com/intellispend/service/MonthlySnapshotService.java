@@ -0,0 +1,74 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.MonthlySnapshot;
+import com.intellispend.entity.User;
+import com.intellispend.repository.ExpenseRepository;
+import com.intellispend.repository.projection.CategoryTotal;
+import com.intellispend.repository.projection.DailyTotal;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Service
+@RequiredArgsConstructor
+public class MonthlySnapshotService {
+    private final ExpenseRepository expenseRepository;
+
+    /**
+     * Three aggregate queries: category totals, daily totals and the previous month's total.
+     * Month total and week-of-month totals are derived from those in memory.
+     */
+    @Transactional(readOnly = true)
+    public MonthlySnapshot snapshot(User user, YearMonth month) {
+        LocalDate start = month.atDay(1);
+        LocalDate end = month.atEndOfMonth();
+        YearMonth previousMonth = month.minusMonths(1);
+
+        Map<String, BigDecimal> categoryTotals = new LinkedHashMap<>();
+        for (CategoryTotal categoryTotal : expenseRepository.sumByCategory(user, start, end)) {
+            categoryTotals.put(categoryTotal.getCategory(), categoryTotal.getTotal());
+        }
+
+        BigDecimal currentTotal = categoryTotals.values().stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        BigDecimal previousTotal = expenseRepository.sumAmount(
+                user, previousMonth.atDay(1), previousMonth.atEndOfMonth());
+
+        Double momPercentage = 0.0;
+        if (previousTotal.compareTo(BigDecimal.ZERO) > 0) {
+            momPercentage = currentTotal.subtract(previousTotal)
+                    .divide(previousTotal, 4, RoundingMode.HALF_UP)
+                    .multiply(new BigDecimal(100))
+                    .doubleValue();
+        }
+
+        Map<LocalDate, BigDecimal> dailySpending = new TreeMap<>();
+        Map<Integer, BigDecimal> weeklySpending = new TreeMap<>();
+        for (DailyTotal dailyTotal : expenseRepository.sumByDay(user, start, end)) {
+            dailySpending.put(dailyTotal.getDate(), dailyTotal.getTotal());
+            // Week of month: days 1-7 are week 1, 8-14 week 2, and so on, folded from the daily totals
+            int week = (dailyTotal.getDate().getDayOfMonth() - 1) / 7 + 1;
+            weeklySpending.merge(week, dailyTotal.getTotal(), BigDecimal::add);
+        }
+
+        return MonthlySnapshot.builder()
+                .user(user)
+                .month(month)
+                .categoryTotals(categoryTotals)
+                .totalSpending(currentTotal)
+                .previousMonthTotal(previousTotal)
+                .monthOverMonthPercentage(momPercentage)
+                .dailySpending(dailySpending)
+                .weeklySpending(weeklySpending)
+                .build();
+    }
+}
@@ -0,0 +1,211 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.external.OpenAiResponse;
+import com.intellispend.exception.OpenAiException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.*;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chat completion calls to OpenAI, shared by categorization and AI summaries. Calls go through a
+ * pool of up to {@code openai.api.max-connections} kept-alive connections, so only the first calls
+ * pay for TCP and TLS handshakes; pool state is published as {@code httpcomponents.httpclient.pool.*}
+ * tagged {@code httpclient=openai}.
+ * <p>
+ * Every attempt is bounded by the connect and read timeouts, and waiting for a free pooled
+ * connection counts against the connect timeout. Timeouts, 5xx and 429 responses are retried with
+ * backoff, up to {@code openai.api.max-attempts}, within the deadline the caller passes: an attempt
+ * never waits past it and no retry starts that couldn't begin before it. Each attempt goes through
+ * {@link AiCallGuard}; attempts it turns away are not retried.
+ */
+@Component
+@Slf4j
+public class OpenAiClient {
+    // Closed before servers typically drop idle connections, so a call rarely lands on a dead one
+    private static final TimeValue MAX_IDLE = TimeValue.ofSeconds(30);
+
+    private final RestTemplate restTemplate;
+    private final CloseableHttpClient httpClient;
+    private final AiCallGuard aiCallGuard;
+    private final String apiKey;
+    private final String apiUrl;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    // Time left before the current attempt's deadline, read when its request is created
+    private final ThreadLocal<Duration> attemptTimeLeft = new ThreadLocal<>();
+
+    public OpenAiClient(RestTemplateBuilder restTemplateBuilder,
+                        @Value("${openai.api.key}") String apiKey,
+                        @Value("${openai.api.url}") String apiUrl,
+                        @Value("${openai.api.connect-timeout}") Duration connectTimeout,
+                        @Value("${openai.api.read-timeout}") Duration readTimeout,
+                        @Value("${openai.api.max-connections}") int maxConnections,
+                        @Value("${openai.api.max-attempts}") int maxAttempts,
+                        @Value("${openai.api.retry-delay}") Duration retryDelay,
+                        MeterRegistry meterRegistry,
+                        AiCallGuard aiCallGuard) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .useSystemProperties()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(connectTimeout))
+                        .build())
+                .build();
+        this.httpClient = HttpClients.custom()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig(connectTimeout, readTimeout))
+                .evictIdleConnections(MAX_IDLE)
+                // Retries are complete()'s job, and every attempt has to reach the guard
+                .disableAutomaticRetries()
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "openai").bindTo(meterRegistry);
+        this.restTemplate = restTemplateBuilder
+                .requestFactory(() -> {
+                    HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+                    requestFactory.setHttpContextFactory((method, uri) -> attemptContext());
+                    return requestFactory;
+                })
+                .build();
+        this.apiKey = apiKey;
+        this.apiUrl = apiUrl;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.aiCallGuard = aiCallGuard;
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        httpClient.close();
+    }
+
+    public boolean isConfigured() {
+        return apiKey != null && !apiKey.isEmpty() && !apiKey.equals("your_openai_api_key_here");
+    }
+
+    /**
+     * Configured and not currently failing fast; callers use their fallback otherwise.
+     */
+    public boolean isAvailable() {
+        return isConfigured() && aiCallGuard.isCallPermitted();
+    }
+
+    /**
+     * Completes the prompt, retries included, within {@code deadline}. The last failure is thrown
+     * once attempts run out or the deadline leaves no room for another one.
+     */
+    public String complete(String systemPrompt, String userPrompt, Duration deadline) {
+        long deadlineAt = System.nanoTime() + deadline.toNanos();
+        Duration backoff = retryDelay;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return aiCallGuard.call(() -> {
+                    attemptTimeLeft.set(Duration.ofNanos(deadlineAt - System.nanoTime()));
+                    return send(systemPrompt, userPrompt);
+                });
+            } catch (ResourceAccessException | HttpServerErrorException | HttpClientErrorException.TooManyRequests e) {
+                Duration timeLeft = Duration.ofNanos(deadlineAt - System.nanoTime());
+                if (attempt >= maxAttempts || timeLeft.compareTo(backoff) <= 0) {
+                    throw e;
+                }
+                log.warn("OpenAI call failed ({}), retrying in {} ms", e.getMessage(), backoff.toMillis());
+                sleep(backoff, e);
+                backoff = backoff.multipliedBy(2);
+            } finally {
+                attemptTimeLeft.remove();
+            }
+        }
+    }
+
+    private static void sleep(Duration backoff, RuntimeException failure) {
+        try {
+            Thread.sleep(backoff.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure;
+        }
+    }
+
+    // Caps the attempt's timeouts at the time left before its call's deadline
+    private HttpClientContext attemptContext() {
+        HttpClientContext context = HttpClientContext.create();
+        Duration timeLeft = attemptTimeLeft.get();
+        if (timeLeft != null) {
+            Duration cap = timeLeft.compareTo(Duration.ofMillis(1)) < 0 ? Duration.ofMillis(1) : timeLeft;
+            context.setRequestConfig(requestConfig(min(connectTimeout, cap), min(readTimeout, cap)));
+        }
+        return context;
+    }
+
+    private static RequestConfig requestConfig(Duration connectTimeout, Duration readTimeout) {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(connectTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build();
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private String send(String systemPrompt, String userPrompt) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(apiKey);
+
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("model", "gpt-3.5-turbo");
+
+        Map<String, String> systemMessage = new HashMap<>();
+        systemMessage.put("role", "system");
+        systemMessage.put("content", systemPrompt);
+
+        Map<String, String> userMessage = new HashMap<>();
+        userMessage.put("role", "user");
+        userMessage.put("content", userPrompt);
+
+        requestBody.put("messages", new Object[]{systemMessage, userMessage});
+
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+        ResponseEntity<OpenAiResponse> response = restTemplate.postForEntity(apiUrl, entity, OpenAiResponse.class);
+
+        OpenAiResponse aiResponse = response.getBody();
+        if (response.getStatusCode() == HttpStatus.OK && aiResponse != null
+                && aiResponse.getChoices() != null && !aiResponse.getChoices().isEmpty()) {
+            OpenAiResponse.Message message = aiResponse.getChoices().get(0).getMessage();
+            if (message != null && message.getContent() != null) {
+                return message.getContent().trim();
+            }
+        }
+        throw new OpenAiException("Empty response from OpenAI");
+    }
+}
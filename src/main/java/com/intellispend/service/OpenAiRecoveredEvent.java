@@ -0,0 +1,10 @@
+package com.intellispend.service;
+
+import java.time.Duration;
+
+/**
+ * Published by {@link AiCallGuard} when the circuit closes again, so placeholders handed out while
+ * OpenAI was unavailable can be replaced.
+ */
+public record OpenAiRecoveredEvent(Duration downtime) {
+}
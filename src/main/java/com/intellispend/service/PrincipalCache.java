@@ -0,0 +1,64 @@
+package com.intellispend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Authenticated principals for {@code AuthTokenFilter}: a short-TTL cache of users loaded by
+ * username (metrics: {@code cache.*} with {@code cache=principals}), and the ids of users deleted
+ * since this node started, whose tokens must stop working before they expire. A revocation is
+ * kept for {@code jwt.expiration}, after which every token issued before it has expired anyway.
+ * <p>
+ * Both live in memory, so a deletion is seen by the node that made it; other nodes drop the user
+ * from their cache within {@code ttl} but, in stateless mode, accept its tokens until they expire.
+ */
+@Component
+@Slf4j
+public class PrincipalCache {
+    private final Cache<String, UserDetailsImpl> principals;
+    private final Cache<Long, Boolean> revokedUserIds;
+
+    public PrincipalCache(@Value("${jwt.principal-cache.max-size}") long maxSize,
+                          @Value("${jwt.principal-cache.ttl}") Duration ttl,
+                          @Value("${jwt.expiration}") long jwtExpirationMs,
+                          MeterRegistry meterRegistry) {
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "principals");
+        this.revokedUserIds = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(jwtExpirationMs))
+                .build();
+    }
+
+    public UserDetailsImpl get(String username, Function<String, UserDetailsImpl> loader) {
+        return principals.get(username, loader);
+    }
+
+    public boolean isRevoked(Long userId) {
+        return revokedUserIds.getIfPresent(userId) != null;
+    }
+
+    /**
+     * Rejects the user's tokens from now on.
+     */
+    public void revoke(Long userId, String username) {
+        revokedUserIds.put(userId, Boolean.TRUE);
+        principals.invalidate(username);
+        log.info("Revoked tokens of deleted user {}", userId);
+    }
+
+    public void evict(String username) {
+        principals.invalidate(username);
+    }
+}
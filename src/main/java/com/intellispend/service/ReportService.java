@@ -1,9 +1,13 @@
 package com.intellispend.service;
 
-import com.intellispend.entity.Expense;
+import com.intellispend.config.SqlStatementCounter;
+import com.intellispend.dto.MonthlySnapshot;
 import com.intellispend.entity.User;
+import com.intellispend.repository.ExpenseExportRepository;
 import com.intellispend.repository.ExpenseRepository;
 import com.intellispend.repository.UserRepository;
+import com.intellispend.repository.projection.UserRef;
+import com.intellispend.repository.projection.CategoryTotal;
 import com.itextpdf.kernel.pdf.PdfDocument;
 import com.itextpdf.kernel.pdf.PdfWriter;
 import com.itextpdf.layout.Document;
@@ -11,33 +15,100 @@ import com.itextpdf.layout.element.Paragraph;
 import com.itextpdf.layout.element.Table;
 import com.itextpdf.layout.element.Cell;
 import com.itextpdf.layout.properties.UnitValue;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StopWatch;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.YearMonth;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ReportService {
+    // Rows buffered in the PDF transaction table before it is flushed to the output
+    private static final int PDF_TABLE_FLUSH_ROWS = 200;
+
     private final ExpenseRepository expenseRepository;
+    private final ExpenseExportRepository expenseExportRepository;
     private final UserRepository userRepository;
     private final InsightService insightService;
+    private final AiSummaryService aiSummaryService;
+    private final MonthlySnapshotService monthlySnapshotService;
+    private final FxRateService fxRateService;
+    private final MeterRegistry meterRegistry;
+
+    public byte[] generatePdfReport(UserRef userRef, YearMonth month) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writePdfReport(userRef, month.atDay(1), month.atEndOfMonth(), out);
+        return out.toByteArray();
+    }
+
+    public byte[] generateCsvReport(UserRef userRef, YearMonth month) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeCsvReport(userRef, month.atDay(1), month.atEndOfMonth(), out);
+        return out.toByteArray();
+    }
 
-    public byte[] generatePdfReport(String username, YearMonth month) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
+    /**
+     * Writes the PDF report for {@code [from, to]} straight to {@code out}. The transaction table is
+     * built in large-table mode and flushed every few hundred rows, so memory stays bounded
+     * however many expenses the range holds.
+     */
+    @Transactional(readOnly = true)
+    public void writePdfReport(UserRef userRef, LocalDate from, LocalDate to, OutputStream out) {
+        writePdf(userRef, from, to, out, snapshot -> {
+            String aiSummary = insightService.getMonthlyInsights(snapshot).getAiSummary();
+            return aiSummary != null ? aiSummary : "AI summary is still being generated.";
+        });
+    }
+
+    /**
+     * Month's AI summary for the report batch, waiting up to {@code maxWait} for one being
+     * generated. Runs outside a transaction, so no connection is held while waiting.
+     */
+    public AiSummaryService.Summary awaitAiSummary(UserRef userRef, YearMonth month, Duration maxWait) {
+        User user = userRepository.getReferenceById(userRef.getId());
+        return aiSummaryService.awaitSummary(monthlySnapshotService.snapshot(user, month), maxWait);
+    }
+
+    /**
+     * {@link #writePdfReport} for a whole month, with an AI summary the caller already has (see
+     * {@link #awaitAiSummary}).
+     */
+    @Transactional(readOnly = true)
+    public void writeMonthlyPdfReport(UserRef userRef, YearMonth month, String aiSummary, OutputStream out) {
+        writePdf(userRef, month.atDay(1), month.atEndOfMonth(), out, snapshot -> aiSummary);
+    }
 
-        List<Expense> expenses = expenseRepository.findAllByUser(user).stream()
-                .filter(e -> YearMonth.from(e.getDate()).equals(month))
-                .collect(Collectors.toList());
+    private void writePdf(UserRef userRef, LocalDate from, LocalDate to, OutputStream out,
+                          Function<MonthlySnapshot, String> aiSummaryFor) {
+        ReportTrace trace = new ReportTrace("pdf");
+        try {
+            trace.phase("load");
+            User user = userRepository.getReferenceById(userRef.getId());
 
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
             PdfWriter writer = new PdfWriter(out);
+            writer.setCloseStream(false);
             PdfDocument pdf = new PdfDocument(writer);
             Document document = new Document(pdf);
 
@@ -45,88 +116,131 @@ public class ReportService {
                     .setFontSize(24)
                     .setBold()
                     .setFontColor(new com.itextpdf.kernel.colors.DeviceRgb(63, 81, 181))); // Indigo color
-            
-            document.add(new Paragraph("User: " + username).setItalic());
-            document.add(new Paragraph("Period: " + month).setItalic());
-            document.add(new Paragraph("\n"));
 
-            // Add AI Summary
-            com.intellispend.dto.InsightResponse insights = insightService.getMonthlyInsights(username, month);
-            document.add(new Paragraph("AI Insights").setBold().setFontSize(16));
-            document.add(new Paragraph(insights.getAiSummary()).setItalic().setFontColor(com.itextpdf.kernel.colors.ColorConstants.DARK_GRAY));
+            document.add(new Paragraph("User: " + userRef.getUsername()).setItalic());
+            document.add(new Paragraph("Period: " + describePeriod(from, to)).setItalic());
             document.add(new Paragraph("\n"));
 
+            // Single-month reports share one snapshot between the insight block and the category table
+            Map<String, BigDecimal> categoryTotals;
+            BigDecimal totalSpending;
+            YearMonth month = YearMonth.from(from);
+            if (from.equals(month.atDay(1)) && to.equals(month.atEndOfMonth())) {
+                trace.phase("snapshot");
+                MonthlySnapshot snapshot = monthlySnapshotService.snapshot(user, month);
+                categoryTotals = snapshot.getCategoryTotals();
+                totalSpending = snapshot.getTotalSpending();
+
+                trace.phase("insights");
+                String aiSummary = aiSummaryFor.apply(snapshot);
+                document.add(new Paragraph("AI Insights").setBold().setFontSize(16));
+                document.add(new Paragraph(aiSummary).setItalic().setFontColor(com.itextpdf.kernel.colors.ColorConstants.DARK_GRAY));
+                document.add(new Paragraph("\n"));
+            } else {
+                trace.phase("snapshot");
+                categoryTotals = new LinkedHashMap<>();
+                for (CategoryTotal categoryTotal : expenseRepository.sumByCategory(user, from, to)) {
+                    categoryTotals.put(categoryTotal.getCategory(), categoryTotal.getTotal());
+                }
+                totalSpending = categoryTotals.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+            }
+
             // Category Summary Table
+            trace.phase("categories");
             document.add(new Paragraph("Category Breakdown").setBold().setFontSize(16));
             Table categoryTable = new Table(UnitValue.createPercentArray(new float[]{5, 5}));
             categoryTable.setWidth(UnitValue.createPercentValue(60));
             categoryTable.addHeaderCell(new Cell().add(new Paragraph("Category").setBold()));
-            categoryTable.addHeaderCell(new Cell().add(new Paragraph("Amount").setBold()));
-            
-            insights.getCategoryTotals().forEach((cat, total) -> {
-                categoryTable.addCell(new Cell().add(new Paragraph(cat)));
-                categoryTable.addCell(new Cell().add(new Paragraph(total.toString())));
+            // Category totals and the grand total are converted to the base currency
+            categoryTable.addHeaderCell(new Cell().add(new Paragraph("Amount (" + fxRateService.getBaseCurrency() + ")").setBold()));
+
+            categoryTotals.forEach((category, amount) -> {
+                categoryTable.addCell(new Cell().add(new Paragraph(category)));
+                categoryTable.addCell(new Cell().add(new Paragraph(amount.toString())));
             });
             document.add(categoryTable);
             document.add(new Paragraph("\n"));
 
             // Transaction Details
+            trace.phase("transactions");
             document.add(new Paragraph("Transaction Details").setBold().setFontSize(16));
             float[] columnDistributions = {3, 4, 6, 4};
-            Table table = new Table(UnitValue.createPercentArray(columnDistributions));
+            Table table = new Table(UnitValue.createPercentArray(columnDistributions), true);
             table.setWidth(UnitValue.createPercentValue(100));
 
             table.addHeaderCell(new Cell().add(new Paragraph("Date").setBold()).setBackgroundColor(com.itextpdf.kernel.colors.ColorConstants.LIGHT_GRAY));
             table.addHeaderCell(new Cell().add(new Paragraph("Category").setBold()).setBackgroundColor(com.itextpdf.kernel.colors.ColorConstants.LIGHT_GRAY));
             table.addHeaderCell(new Cell().add(new Paragraph("Description").setBold()).setBackgroundColor(com.itextpdf.kernel.colors.ColorConstants.LIGHT_GRAY));
             table.addHeaderCell(new Cell().add(new Paragraph("Amount").setBold()).setBackgroundColor(com.itextpdf.kernel.colors.ColorConstants.LIGHT_GRAY));
+            document.add(table);
 
-            for (Expense expense : expenses) {
-                table.addCell(new Cell().add(new Paragraph(expense.getDate().toString())));
-                table.addCell(new Cell().add(new Paragraph(expense.getCategory())));
-                table.addCell(new Cell().add(new Paragraph(expense.getDescription() != null ? expense.getDescription() : "")));
-                table.addCell(new Cell().add(new Paragraph(expense.getAmount().toString() + " " + (expense.getCurrency() != null ? expense.getCurrency() : "USD"))));
-            }
+            int[] rowsSinceFlush = {0};
+            expenseExportRepository.streamByUserAndDateRange(user.getId(), from, to, expense -> {
+                table.addCell(new Cell().add(new Paragraph(expense.date().toString())));
+                table.addCell(new Cell().add(new Paragraph(expense.category())));
+                table.addCell(new Cell().add(new Paragraph(expense.description() != null ? expense.description() : "")));
+                table.addCell(new Cell().add(new Paragraph(expense.amount().toString() + " " + (expense.currency() != null ? expense.currency() : fxRateService.getBaseCurrency()))));
+                if (++rowsSinceFlush[0] == PDF_TABLE_FLUSH_ROWS) {
+                    table.flush();
+                    rowsSinceFlush[0] = 0;
+                }
+            });
 
-            document.add(table);
-            document.add(new Paragraph("\nTotal Spending: " + insights.getTotalSpending().toString()).setBold().setFontSize(14));
+            table.complete();
+            document.add(new Paragraph("\nTotal Spending: " + totalSpending + " " + fxRateService.getBaseCurrency()).setBold().setFontSize(14));
 
+            trace.phase("render");
             document.close();
-            return out.toByteArray();
         } catch (Exception e) {
             throw new RuntimeException("Failed to generate PDF report: " + e.getMessage());
+        } finally {
+            trace.finish(userRef.getUsername(), from, to);
         }
     }
 
-    public byte[] generateCsvReport(String username, YearMonth month) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found: " + username));
-
-        List<Expense> expenses = expenseRepository.findAllByUser(user).stream()
-                .filter(e -> YearMonth.from(e.getDate()).equals(month))
-                .collect(Collectors.toList());
-
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             PrintWriter writer = new PrintWriter(out)) {
-            
-            writer.println("Date,Category,Description,Amount,Payment Method");
-
-            for (Expense expense : expenses) {
-                writer.printf("%s,%s,%s,%s,%s%n",
-                        expense.getDate(),
-                        escapeCsv(expense.getCategory()),
-                        escapeCsv(expense.getDescription()),
-                        expense.getAmount(),
-                        escapeCsv(expense.getPaymentMethod()));
-            }
+    /**
+     * Writes the CSV report for {@code [from, to]} straight to {@code out}, one row per expense
+     * as it is read from the database.
+     */
+    @Transactional(readOnly = true)
+    public void writeCsvReport(UserRef userRef, LocalDate from, LocalDate to, OutputStream out) {
+        ReportTrace trace = new ReportTrace("csv");
+        try {
+            trace.phase("transactions");
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write("Date,Category,Description,Amount,Currency,Payment Method\n");
+
+            expenseExportRepository.streamByUserAndDateRange(userRef.getId(), from, to, expense -> {
+                try {
+                    writer.write(expense.date() + "," +
+                            escapeCsv(expense.category()) + "," +
+                            escapeCsv(expense.description()) + "," +
+                            expense.amount() + "," +
+                            escapeCsv(expense.currency() != null ? expense.currency() : fxRateService.getBaseCurrency()) + "," +
+                            escapeCsv(expense.paymentMethod()) + "\n");
+                } catch (IOException e) {
+                    // Client went away; stop reading the cursor instead of exporting into the void
+                    throw new UncheckedIOException(e);
+                }
+            });
 
+            trace.phase("render");
             writer.flush();
-            return out.toByteArray();
         } catch (Exception e) {
             throw new RuntimeException("Failed to generate CSV report: " + e.getMessage());
+        } finally {
+            trace.finish(userRef.getUsername(), from, to);
         }
     }
 
+    private String describePeriod(LocalDate from, LocalDate to) {
+        YearMonth month = YearMonth.from(from);
+        if (from.equals(month.atDay(1)) && to.equals(month.atEndOfMonth())) {
+            return month.toString();
+        }
+        return from + " to " + to;
+    }
+
     private String escapeCsv(String data) {
         if (data == null) return "";
         data = data.replace("\"", "\"\"");
@@ -135,4 +249,59 @@ public class ReportService {
         }
         return data;
     }
+
+    /**
+     * Wall time and SQL statements per report phase, logged per report and recorded as
+     * {@code report.phase.duration} / {@code report.phase.statements} (tags: format, phase).
+     */
+    private class ReportTrace {
+        private final String format;
+        private final StopWatch stopWatch;
+        private String phase;
+        private long statementsAtPhaseStart;
+        private final StringBuilder summary = new StringBuilder();
+
+        ReportTrace(String format) {
+            this.format = format;
+            this.stopWatch = new StopWatch(format);
+            SqlStatementCounter.start();
+        }
+
+        void phase(String name) {
+            endPhase();
+            phase = name;
+            statementsAtPhaseStart = SqlStatementCounter.get();
+            stopWatch.start(name);
+        }
+
+        void finish(String username, LocalDate from, LocalDate to) {
+            endPhase();
+            long statements = SqlStatementCounter.stop();
+            log.debug("{} report for {} [{} - {}]: {} ms, {} statements ({})", format, username, from, to,
+                    stopWatch.getTotalTimeMillis(), statements, summary);
+        }
+
+        private void endPhase() {
+            if (phase == null) {
+                return;
+            }
+            stopWatch.stop();
+            long nanos = stopWatch.lastTaskInfo().getTimeNanos();
+            long statements = SqlStatementCounter.get() - statementsAtPhaseStart;
+            Timer.builder("report.phase.duration")
+                    .tag("format", format).tag("phase", phase)
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder("report.phase.statements")
+                    .tag("format", format).tag("phase", phase)
+                    .register(meterRegistry)
+                    .record(statements);
+            if (summary.length() > 0) {
+                summary.append(", ");
+            }
+            summary.append(phase).append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos))
+                    .append(" ms/").append(statements);
+            phase = null;
+        }
+    }
 }
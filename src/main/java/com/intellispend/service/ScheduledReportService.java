@@ -1,39 +1,237 @@
 package com.intellispend.service;
 
-import com.intellispend.entity.User;
+import com.intellispend.entity.EReportStatus;
+import com.intellispend.entity.ReportRun;
+import com.intellispend.entity.ReportRunItem;
+import com.intellispend.repository.ReportRunItemRepository;
+import com.intellispend.repository.ReportRunRepository;
 import com.intellispend.repository.UserRepository;
+import com.intellispend.repository.projection.UserRef;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.YearMonth;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+/**
+ * Monthly PDF report batch. Users are paged by id and handed to a fixed pool of workers; a
+ * semaphore holds the pager back while every worker is busy, so at most {@code concurrency}
+ * reports hit the database (and OpenAI) at once and only one page of users is in memory.
+ * <p>
+ * Progress is tracked per user in {@code report_run_items} and reports are written to
+ * {@code reports.batch.output-dir}. A run interrupted by a crash stays {@code RUNNING} and is
+ * resumed by {@link #resumeIncompleteRuns()}, skipping users whose report is already done.
+ * <p>
+ * Each report waits up to {@code summary-wait} for its AI summary. A report whose summary is still
+ * not ready is not written with a placeholder; its item is left {@code AWAITING_SUMMARY}, keeps the
+ * run open and is generated again on a later pass without using up an attempt. After
+ * {@code max-summary-deferrals} such passes it is written with the placeholder instead, so an
+ * OpenAI outage can't keep a run open indefinitely.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ScheduledReportService {
     private final ReportService reportService;
     private final UserRepository userRepository;
+    private final ReportRunRepository reportRunRepository;
+    private final ReportRunItemRepository reportRunItemRepository;
+
+    @Value("${reports.batch.concurrency}")
+    private int concurrency;
+
+    @Value("${reports.batch.page-size}")
+    private int pageSize;
+
+    @Value("${reports.batch.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${reports.batch.output-dir}")
+    private String outputDir;
+
+    @Value("${reports.batch.summary-wait}")
+    private Duration summaryWait;
+
+    @Value("${reports.batch.max-summary-deferrals}")
+    private int maxSummaryDeferrals;
+
+    private final AtomicBoolean batchInProgress = new AtomicBoolean();
+    private ExecutorService executor;
+    private Semaphore workerPermits;
+
+    @PostConstruct
+    void startWorkers() {
+        executor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("report-batch-"));
+        workerPermits = new Semaphore(concurrency);
+    }
+
+    @PreDestroy
+    void stopWorkers() {
+        executor.shutdownNow();
+    }
 
     // Run on the 1st of every month at 00:00
-    @Scheduled(cron = "0 0 0 1 * ?")
+    @Scheduled(cron = "${reports.batch.cron}")
     public void generateMonthlyReports() {
-        log.info("Starting scheduled monthly report generation...");
-        YearMonth lastMonth = YearMonth.now().minusMonths(1);
-        List<User> users = userRepository.findAll();
+        runMonth(YearMonth.now().minusMonths(1));
+    }
+
+    @Scheduled(initialDelayString = "${reports.batch.resume-initial-delay}", fixedDelayString = "${reports.batch.resume-interval}")
+    public void resumeIncompleteRuns() {
+        for (ReportRun run : reportRunRepository.findByStatusOrderByMonthAsc(EReportStatus.RUNNING)) {
+            runMonth(run.getMonth());
+        }
+    }
 
-        for (User user : users) {
+    public void runMonth(YearMonth month) {
+        // Recorded before checking for a batch in progress, so a month skipped here is picked up by
+        // the next resume pass
+        ReportRun run = runFor(month);
+        if (run.getStatus() == EReportStatus.COMPLETED) {
+            log.info("Monthly reports for {} already completed", month);
+            return;
+        }
+        if (!batchInProgress.compareAndSet(false, true)) {
+            log.info("Report batch already in progress, {} will be picked up by the next resume pass", month);
+            return;
+        }
+        try {
+            log.info("Starting monthly report generation for {}...", month);
+            long lastUserId = 0L;
+            int dispatched = 0;
+            List<UserRef> page;
+            do {
+                page = userRepository.findByIdGreaterThanOrderByIdAsc(lastUserId, Limit.of(pageSize));
+                if (page.isEmpty()) {
+                    break;
+                }
+                Map<Long, ReportRunItem> items = reportRunItemRepository
+                        .findByRunAndUserIdIn(run, page.stream().map(UserRef::getId).toList()).stream()
+                        .collect(Collectors.toMap(ReportRunItem::getUserId, Function.identity()));
+
+                for (UserRef user : page) {
+                    ReportRunItem item = items.get(user.getId());
+                    if (item != null && (item.getStatus() == EReportStatus.COMPLETED || item.getAttempts() >= maxAttempts)) {
+                        continue;
+                    }
+                    workerPermits.acquire();
+                    ReportRun currentRun = run;
+                    executor.execute(() -> {
+                        try {
+                            generateReport(currentRun, user, item);
+                        } finally {
+                            workerPermits.release();
+                        }
+                    });
+                    dispatched++;
+                }
+                lastUserId = page.get(page.size() - 1).getId();
+            } while (page.size() == pageSize);
+
+            // Wait for in-flight reports
+            workerPermits.acquire(concurrency);
+            workerPermits.release(concurrency);
+
+            long retryable = reportRunItemRepository.countByRunAndStatusAndAttemptsLessThan(run, EReportStatus.FAILED, maxAttempts);
+            long failed = reportRunItemRepository.countByRunAndStatus(run, EReportStatus.FAILED);
+            long awaitingSummary = reportRunItemRepository.countByRunAndStatus(run, EReportStatus.AWAITING_SUMMARY);
+            if (retryable == 0 && awaitingSummary == 0) {
+                run.setStatus(EReportStatus.COMPLETED);
+                run.setCompletedAt(LocalDateTime.now());
+                reportRunRepository.save(run);
+            }
+            log.info("Monthly report generation for {} finished: {} reports generated this pass, {} failed, {} to retry, {} awaiting their AI summary",
+                    month, dispatched, failed, retryable, awaitingSummary);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Monthly report generation for {} interrupted; it will resume on the next check", month);
+        } finally {
+            batchInProgress.set(false);
+        }
+    }
+
+    private ReportRun runFor(YearMonth month) {
+        return reportRunRepository.findByMonth(month).orElseGet(() -> {
             try {
-                // In a real app, we would email this report. 
-                // Here we just trigger generation to ensure it's "ready" or cached.
-                reportService.generatePdfReport(user.getUsername(), lastMonth);
+                return reportRunRepository.save(ReportRun.builder()
+                        .month(month)
+                        .status(EReportStatus.RUNNING)
+                        .startedAt(LocalDateTime.now())
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // Created by a concurrent call for the same month
+                return reportRunRepository.findByMonth(month).orElseThrow(() -> e);
+            }
+        });
+    }
+
+    private void generateReport(ReportRun run, UserRef user, ReportRunItem existing) {
+        ReportRunItem item = (existing != null) ? existing
+                : ReportRunItem.builder().run(run).userId(user.getId()).build();
+        item.setStatus(EReportStatus.RUNNING);
+        item.setAttempts(item.getAttempts() + 1);
+        item.setError(null);
+        item.setUpdatedAt(LocalDateTime.now());
+        item = reportRunItemRepository.save(item);
+
+        try {
+            AiSummaryService.Summary summary = reportService.awaitAiSummary(user, run.getMonth(), summaryWait);
+            if (!summary.isSettled() && item.getSummaryDeferrals() < maxSummaryDeferrals) {
+                item.setStatus(EReportStatus.AWAITING_SUMMARY);
+                item.setAttempts(item.getAttempts() - 1);
+                item.setSummaryDeferrals(item.getSummaryDeferrals() + 1);
+                item.setError("AI summary " + summary.status());
+                log.info("Monthly report for user {} deferred, AI summary {}", user.getUsername(), summary.status());
+            } else {
+                String summaryText = summary.text();
+                if (!summary.isSettled()) {
+                    summaryText = (summaryText != null) ? summaryText : AiSummaryService.GENERATION_FAILED;
+                    log.warn("Monthly report for user {} written without its AI summary ({}) after {} deferrals",
+                            user.getUsername(), summary.status(), item.getSummaryDeferrals());
+                }
+                // In a real app, we would email this report.
+                // Written to a temp file first so a crash never leaves a truncated PDF in place.
+                Path target = Paths.get(outputDir, run.getMonth().toString(), "user-" + user.getId() + ".pdf");
+                Path partial = target.resolveSibling(target.getFileName() + ".part");
+                Files.createDirectories(target.getParent());
+                try (OutputStream out = Files.newOutputStream(partial)) {
+                    reportService.writeMonthlyPdfReport(user, run.getMonth(), summaryText, out);
+                }
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                item.setStatus(EReportStatus.COMPLETED);
+                item.setFilePath(target.toString());
                 log.info("Generated monthly report for user: {}", user.getUsername());
-            } catch (Exception e) {
-                log.error("Failed to generate scheduled report for user {}: {}", user.getUsername(), e.getMessage());
             }
+        } catch (Exception e) {
+            item.setStatus(EReportStatus.FAILED);
+            String message = String.valueOf(e.getMessage());
+            item.setError(message.length() > 500 ? message.substring(0, 500) : message);
+            log.error("Failed to generate scheduled report for user {}: {}", user.getUsername(), e.getMessage());
         }
-        log.info("Scheduled monthly report generation completed.");
+        item.setUpdatedAt(LocalDateTime.now());
+        reportRunItemRepository.save(item);
     }
 }
@@ -0,0 +1,120 @@
+package com.intellispend.service;
+
+import com.intellispend.entity.Expense;
+import com.intellispend.repository.MonthlyCategorySpendRepository;
+import com.intellispend.repository.projection.LedgerCell;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps {@code monthly_category_spend}, the (user, category, month) rollup of total, count and
+ * amount bounds, in step with the expenses table. Amounts are converted to the base currency in
+ * memory on write and by {@code fx_to_base} on repair. Every write method joins the caller's
+ * transaction so the rollup commits or rolls back together with the expense write.
+ * <p>
+ * A removal that races an insert into the same cell can leave a stale bound; {@link #reconcile()}
+ * repairs it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SpendLedgerService {
+    private final MonthlyCategorySpendRepository spendRepository;
+    private final FxRateService fxRateService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(Expense expense) {
+        add(LedgerKey.of(expense), CellDelta.of(toBase(expense)));
+    }
+
+    /**
+     * Takes the expense out of the cell it was recorded in. Call before changing its amount,
+     * category or date.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reverse(Expense expense) {
+        LedgerKey key = LedgerKey.of(expense);
+        spendRepository.removeExpense(key.userId(), key.category(), key.month().toString(),
+                key.month().atDay(1), key.month().atEndOfMonth(),
+                Objects.requireNonNull(expense.getId()), toBase(expense));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(Collection<Expense> expenses) {
+        // One upsert per (user, category, month) cell instead of one per row
+        Map<LedgerKey, CellDelta> deltas = expenses.stream()
+                .collect(Collectors.toMap(LedgerKey::of, expense -> CellDelta.of(toBase(expense)), CellDelta::plus));
+
+        deltas.forEach(this::add);
+    }
+
+    /**
+     * Checks the ledger against the expenses table and recomputes the cells that drifted, each in
+     * its own short transaction holding only that cell's row lock, so expense writes elsewhere carry
+     * on. Does nothing more when no cell drifted. Also runs when FX rates change, since converted
+     * totals may have moved.
+     */
+    @Scheduled(cron = "${ledger.reconcile.cron}")
+    @EventListener(FxRatesChangedEvent.class)
+    public void reconcile() {
+        List<LedgerCell> drifted = spendRepository.findDriftedCells();
+        if (drifted.isEmpty()) {
+            log.info("Spend ledger matches expenses");
+            return;
+        }
+
+        log.warn("Spend ledger drifted from expenses in {} (user, category, month) cells, repairing them", drifted.size());
+        for (LedgerCell cell : drifted) {
+            YearMonth month = YearMonth.parse(cell.getMonth());
+            transactionTemplate.executeWithoutResult(status -> {
+                spendRepository.lockCell(cell.getUserId(), cell.getCategory(), cell.getMonth());
+                spendRepository.recomputeCell(cell.getUserId(), cell.getCategory(), cell.getMonth(),
+                        month.atDay(1), month.atEndOfMonth());
+            });
+        }
+        log.info("Spend ledger repaired {} cells", drifted.size());
+    }
+
+    private BigDecimal toBase(Expense expense) {
+        return fxRateService.toBase(expense.getAmount(), expense.getCurrency(), expense.getDate());
+    }
+
+    private void add(LedgerKey key, CellDelta delta) {
+        spendRepository.addExpenses(key.userId(), key.category(), key.month().toString(),
+                delta.count(), delta.total(), delta.min(), delta.max());
+    }
+
+    private record LedgerKey(Long userId, String category, YearMonth month) {
+        static LedgerKey of(Expense expense) {
+            return new LedgerKey(
+                    Objects.requireNonNull(expense.getUser().getId()),
+                    expense.getCategory(),
+                    YearMonth.from(expense.getDate()));
+        }
+    }
+
+    private record CellDelta(long count, BigDecimal total, BigDecimal min, BigDecimal max) {
+        static CellDelta of(BigDecimal amount) {
+            return new CellDelta(1, amount, amount, amount);
+        }
+
+        CellDelta plus(CellDelta other) {
+            return new CellDelta(count + other.count, total.add(other.total), min.min(other.min), max.max(other.max));
+        }
+    }
+}
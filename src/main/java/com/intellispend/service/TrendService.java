@@ -0,0 +1,141 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.TrendPoint;
+import com.intellispend.dto.TrendResponse;
+import com.intellispend.entity.MonthlyCategorySpend;
+import com.intellispend.exception.InvalidRequestException;
+import com.intellispend.repository.MonthlyCategorySpendRepository;
+import com.intellispend.repository.projection.UserRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Multi-month spending trends read from the {@code monthly_category_spend} rollup, so a request
+ * costs one query over (months x categories) cells rather than a scan of the user's expenses.
+ */
+@Service
+public class TrendService {
+    // Extra months loaded before the range for year-ago and rolling twelve-month totals
+    private static final int LOOKBACK_MONTHS = 12;
+
+    private final MonthlyCategorySpendRepository spendRepository;
+    private final int maxMonths;
+
+    public TrendService(MonthlyCategorySpendRepository spendRepository,
+                        @Value("${insights.trends.max-months}") int maxMonths) {
+        this.spendRepository = spendRepository;
+        this.maxMonths = maxMonths;
+    }
+
+    /**
+     * Overall and per-category series for the {@code months} months ending at {@code to}.
+     * {@code category}, when given, restricts both series to that category.
+     */
+    @Transactional(readOnly = true)
+    public TrendResponse getTrends(UserRef user, YearMonth to, int months, String category) {
+        if (months < 1 || months > maxMonths) {
+            throw new InvalidRequestException("months must be between 1 and " + maxMonths);
+        }
+        YearMonth from = to.minusMonths(months - 1);
+        YearMonth loadFrom = from.minusMonths(LOOKBACK_MONTHS);
+        int width = months + LOOKBACK_MONTHS;
+
+        Cell[] overall = Cell.emptySeries(width);
+        Map<String, Cell[]> byCategory = new TreeMap<>();
+        for (MonthlyCategorySpend spend : spendRepository.findRollup(user.getId(), loadFrom, to)) {
+            if (category != null && !category.equals(spend.getCategory())) {
+                continue;
+            }
+            int index = (int) loadFrom.until(spend.getMonth(), ChronoUnit.MONTHS);
+            Cell cell = Cell.of(spend);
+            overall[index] = overall[index].plus(cell);
+            byCategory.computeIfAbsent(spend.getCategory(), c -> Cell.emptySeries(width))[index] = cell;
+        }
+
+        Map<String, List<TrendPoint>> categories = new LinkedHashMap<>();
+        byCategory.forEach((name, cells) -> categories.put(name, points(cells, loadFrom)));
+
+        return TrendResponse.builder()
+                .from(from)
+                .to(to)
+                .months(points(overall, loadFrom))
+                .categories(categories)
+                .build();
+    }
+
+    private static List<TrendPoint> points(Cell[] cells, YearMonth loadFrom) {
+        List<TrendPoint> points = new ArrayList<>(cells.length - LOOKBACK_MONTHS);
+        BigDecimal rolling = BigDecimal.ZERO;
+        for (int i = 0; i < cells.length; i++) {
+            rolling = rolling.add(cells[i].total());
+            if (i < LOOKBACK_MONTHS) {
+                continue;
+            }
+            // Keep the window at this month and the eleven before it
+            rolling = rolling.subtract(cells[i - LOOKBACK_MONTHS].total());
+
+            Cell cell = cells[i];
+            BigDecimal yearAgo = cells[i - LOOKBACK_MONTHS].total();
+            points.add(TrendPoint.builder()
+                    .month(loadFrom.plusMonths(i))
+                    .expenseCount(cell.count())
+                    .total(cell.total())
+                    .minAmount(cell.min())
+                    .maxAmount(cell.max())
+                    .rollingTwelveMonthTotal(rolling)
+                    .yearAgoTotal(yearAgo)
+                    .yearOverYearPercentage(percentageChange(yearAgo, cell.total()))
+                    .build());
+        }
+        return points;
+    }
+
+    // Same convention as the month-over-month figure in MonthlySnapshotService
+    private static Double percentageChange(BigDecimal previous, BigDecimal current) {
+        if (previous.compareTo(BigDecimal.ZERO) <= 0) {
+            return 0.0;
+        }
+        return current.subtract(previous)
+                .divide(previous, 4, RoundingMode.HALF_UP)
+                .multiply(new BigDecimal(100))
+                .doubleValue();
+    }
+
+    private record Cell(long count, BigDecimal total, BigDecimal min, BigDecimal max) {
+        static final Cell EMPTY = new Cell(0, BigDecimal.ZERO, null, null);
+
+        static Cell of(MonthlyCategorySpend spend) {
+            return new Cell(spend.getExpenseCount(), spend.getTotal(), spend.getMinAmount(), spend.getMaxAmount());
+        }
+
+        static Cell[] emptySeries(int width) {
+            Cell[] cells = new Cell[width];
+            Arrays.fill(cells, EMPTY);
+            return cells;
+        }
+
+        Cell plus(Cell other) {
+            return new Cell(count + other.count, total.add(other.total), lesser(min, other.min), greater(max, other.max));
+        }
+
+        private static BigDecimal lesser(BigDecimal a, BigDecimal b) {
+            return a == null ? b : b == null ? a : a.min(b);
+        }
+
+        private static BigDecimal greater(BigDecimal a, BigDecimal b) {
+            return a == null ? b : b == null ? a : a.max(b);
+        }
+    }
+}
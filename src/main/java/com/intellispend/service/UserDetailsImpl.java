@@ -2,6 +2,7 @@ package com.intellispend.service;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.intellispend.entity.User;
+import com.intellispend.repository.projection.UserRef;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import org.springframework.security.core.GrantedAuthority;
@@ -15,7 +16,7 @@ import java.util.stream.Collectors;
 
 @AllArgsConstructor
 @Getter
-public class UserDetailsImpl implements UserDetails {
+public class UserDetailsImpl implements UserDetails, UserRef {
     private static final long serialVersionUID = 1L;
 
     private Long id;
@@ -0,0 +1,63 @@
+package com.intellispend.service;
+
+import com.intellispend.entity.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Consumer;
+
+/**
+ * Keeps {@link PrincipalCache} in step with the {@code users} table: a changed user is reloaded on
+ * its next request, and a deleted one has its tokens revoked, once the transaction commits.
+ * Created by Hibernate through Spring's bean container; without one (plain Hibernate in
+ * benchmarks) there is no cache to update and the callbacks do nothing.
+ */
+public class UserRevocationListener {
+    private final ObjectProvider<PrincipalCache> principalCache;
+
+    @Autowired
+    public UserRevocationListener(ObjectProvider<PrincipalCache> principalCache) {
+        this.principalCache = principalCache;
+    }
+
+    public UserRevocationListener() {
+        this.principalCache = null;
+    }
+
+    @PostUpdate
+    void updated(User user) {
+        afterCommit(cache -> {
+            if (user.isDeleted()) {
+                cache.revoke(user.getId(), user.getUsername());
+            } else {
+                cache.evict(user.getUsername());
+            }
+        });
+    }
+
+    @PostRemove
+    void removed(User user) {
+        afterCommit(cache -> cache.revoke(user.getId(), user.getUsername()));
+    }
+
+    private void afterCommit(Consumer<PrincipalCache> action) {
+        PrincipalCache cache = principalCache != null ? principalCache.getIfAvailable() : null;
+        if (cache == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.accept(cache);
+                }
+            });
+        } else {
+            action.accept(cache);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.intellispend.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Daily FX rates into the base currency, indexed by currency and then date. Immutable and
+ * thread-safe once built.
+ * <p>
+ * An amount converts at the latest rate on or before its date, or at the earliest known rate for
+ * older dates, and is rounded to cents. Currency codes are upper case. Currencies without rates, the
+ * base currency among them, convert 1:1; callers only let expenses in currencies that have rates
+ * ({@link #hasRates}) or the base currency through. This must agree with {@code fx_to_base}
+ * ({@link com.intellispend.config.FxFunctionContributor}), which converts inside aggregation queries.
+ */
+public final class FxRateTable {
+
+    /**
+     * {@code rate} units of the base currency buy one unit of {@code currency} on {@code date}.
+     */
+    public record Rate(String currency, LocalDate date, BigDecimal rate) {
+    }
+
+    public static final FxRateTable EMPTY = of(List.of());
+
+    // Scale of fx_rates.rate, so tables read back from the database compare equal
+    private static final int RATE_SCALE = 8;
+    private static final int AMOUNT_SCALE = 2;
+
+    private final Map<String, NavigableMap<LocalDate, BigDecimal>> rates;
+    private final int size;
+
+    private FxRateTable(Map<String, NavigableMap<LocalDate, BigDecimal>> rates, int size) {
+        this.rates = rates;
+        this.size = size;
+    }
+
+    /**
+     * Builds a table from {@code rates}; a later rate for the same currency and date replaces an
+     * earlier one.
+     */
+    public static FxRateTable of(Collection<Rate> rates) {
+        Map<String, NavigableMap<LocalDate, BigDecimal>> byCurrency = new HashMap<>();
+        for (Rate rate : rates) {
+            if (rate.rate().signum() <= 0) {
+                throw new IllegalArgumentException("FX rate must be positive: " + rate);
+            }
+            byCurrency.computeIfAbsent(rate.currency(), c -> new TreeMap<>())
+                    .put(rate.date(), rate.rate().setScale(RATE_SCALE, RoundingMode.HALF_UP));
+        }
+        int size = 0;
+        for (Map.Entry<String, NavigableMap<LocalDate, BigDecimal>> entry : byCurrency.entrySet()) {
+            entry.setValue(Collections.unmodifiableNavigableMap(entry.getValue()));
+            size += entry.getValue().size();
+        }
+        return new FxRateTable(Map.copyOf(byCurrency), size);
+    }
+
+    public BigDecimal toBase(BigDecimal amount, String currency, LocalDate date) {
+        return amount.multiply(rate(currency, date)).setScale(AMOUNT_SCALE, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Upper-cased, trimmed currency code; {@code null} when blank.
+     */
+    public static String currencyCode(String currency) {
+        return (currency == null || currency.isBlank()) ? null : currency.trim().toUpperCase(Locale.ROOT);
+    }
+
+    public boolean hasRates(String currency) {
+        return currency != null && rates.containsKey(currency);
+    }
+
+    public BigDecimal rate(String currency, LocalDate date) {
+        NavigableMap<LocalDate, BigDecimal> daily = currency != null ? rates.get(currency) : null;
+        if (daily == null) {
+            return BigDecimal.ONE;
+        }
+        Map.Entry<LocalDate, BigDecimal> entry = daily.floorEntry(date);
+        return (entry != null ? entry : daily.firstEntry()).getValue();
+    }
+
+    public List<Rate> rates() {
+        List<Rate> all = new ArrayList<>(size);
+        rates.forEach((currency, daily) ->
+                daily.forEach((date, rate) -> all.add(new Rate(currency, date, rate))));
+        return all;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int currencies() {
+        return rates.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FxRateTable other && rates.equals(other.rates);
+    }
+
+    @Override
+    public int hashCode() {
+        return rates.hashCode();
+    }
+}
@@ -1,50 +1,98 @@
 package com.intellispend.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.intellispend.service.UserDetailsImpl;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecurityException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Date;
+import java.util.List;
 
+/**
+ * Issues and verifies HS256 tokens. The signing key and parser are built once. Verified tokens are
+ * kept in a bounded cache (metrics: {@code cache.*} with {@code cache=jwt-claims}), each until
+ * {@code max-ttl} has passed or the token expires, whichever is first, so repeat requests with
+ * the same token skip the signature check. A {@code max-size} of 0 turns the cache off.
+ * <p>
+ * Tokens carry the user's id ({@code uid}) and role names ({@code roles}) next to the username,
+ * so a request can be authenticated from the token alone ({@link #getPrincipal}).
+ */
 @Component
 @Slf4j
 public class JwtUtil {
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLES_CLAIM = "roles";
 
-    @Value("${jwt.secret}")
-    private String jwtSecret;
+    private final SecretKey key;
+    private final JwtParser parser;
+    private final int jwtExpirationMs;
+    private final Cache<String, Claims> verified;
 
-    @Value("${jwt.expiration}")
-    private int jwtExpirationMs;
+    public JwtUtil(@Value("${jwt.secret}") String jwtSecret,
+                   @Value("${jwt.expiration}") int jwtExpirationMs,
+                   @Value("${jwt.cache.max-size}") long cacheMaxSize,
+                   @Value("${jwt.cache.max-ttl}") Duration cacheMaxTtl,
+                   MeterRegistry meterRegistry) {
+        this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parserBuilder().setSigningKey(key).build();
+        this.jwtExpirationMs = jwtExpirationMs;
+        if (cacheMaxSize > 0) {
+            this.verified = Caffeine.newBuilder()
+                    .maximumSize(cacheMaxSize)
+                    .expireAfter(new UntilTokenExpiry(cacheMaxTtl))
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, verified, "jwt-claims");
+        } else {
+            this.verified = null;
+        }
+    }
 
     public String generateJwtToken(Authentication authentication) {
         UserDetailsImpl userPrincipal = (UserDetailsImpl) authentication.getPrincipal();
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        Date now = new Date();
 
         return Jwts.builder()
                 .setSubject((userPrincipal.getUsername()))
-                .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
+                .claim(USER_ID_CLAIM, userPrincipal.getId())
+                .claim(ROLES_CLAIM, userPrincipal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList())
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + jwtExpirationMs))
                 .signWith(key, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public String getUserNameFromJwtToken(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-        return Jwts.parserBuilder().setSigningKey(key).build()
-                .parseClaimsJws(token).getBody().getSubject();
-    }
+    /**
+     * Verifies {@code authToken} and returns its claims, or null if it is invalid or expired.
+     */
+    public Claims parseJwtToken(String authToken) {
+        if (verified != null) {
+            Claims claims = verified.getIfPresent(authToken);
+            if (claims != null) {
+                return claims;
+            }
+        }
 
-    public boolean validateJwtToken(String authToken) {
         try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-            Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(authToken);
-            return true;
+            Claims claims = parser.parseClaimsJws(authToken).getBody();
+            if (verified != null) {
+                verified.put(authToken, claims);
+            }
+            return claims;
         } catch (SecurityException e) {
             log.error("Invalid JWT signature: {}", e.getMessage());
         } catch (MalformedJwtException e) {
@@ -57,6 +105,48 @@ public class JwtUtil {
             log.error("JWT claims string is empty: {}", e.getMessage());
         }
 
-        return false;
+        return null;
+    }
+
+    /**
+     * The user described by verified {@code claims}, or null for tokens issued before they carried
+     * the user id and roles. The principal has no email or password.
+     */
+    public UserDetailsImpl getPrincipal(Claims claims) {
+        Long userId = getUserId(claims);
+        List<?> roles = claims.get(ROLES_CLAIM, List.class);
+        if (userId == null || roles == null) {
+            return null;
+        }
+        List<SimpleGrantedAuthority> authorities = roles.stream()
+                .map(role -> new SimpleGrantedAuthority(role.toString()))
+                .toList();
+        return new UserDetailsImpl(userId, claims.getSubject(), null, null, authorities);
+    }
+
+    public Long getUserId(Claims claims) {
+        return claims.get(USER_ID_CLAIM, Long.class);
+    }
+
+    private record UntilTokenExpiry(Duration maxTtl) implements Expiry<String, Claims> {
+        @Override
+        public long expireAfterCreate(String token, Claims claims, long currentTime) {
+            long ttl = maxTtl.toNanos();
+            if (claims.getExpiration() != null) {
+                long untilExpiry = Duration.ofMillis(claims.getExpiration().getTime() - System.currentTimeMillis()).toNanos();
+                ttl = Math.min(ttl, Math.max(untilExpiry, 0));
+            }
+            return ttl;
+        }
+
+        @Override
+        public long expireAfterUpdate(String token, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String token, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
@@ -0,0 +1,160 @@
+package com.intellispend.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton over keyword rules: finds the winning rule for a text in one pass,
+ * independent of the number of rules. Immutable and thread-safe once built.
+ * <p>
+ * Matching is case-insensitive substring matching. When several keywords occur, the rule with the
+ * highest priority wins, then the longest keyword, then the rule that comes first in the list.
+ */
+public final class KeywordMatcher {
+
+    public record Rule(String keyword, String category, int priority) {
+    }
+
+    private static final int NONE = -1;
+
+    private final Rule[] rules;
+    // Per state: sorted transition chars and their target states
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    // Per state: best rule ending here, including via failure links
+    private final int[] bestRule;
+
+    private KeywordMatcher(Rule[] rules, char[][] edgeChars, int[][] edgeTargets, int[] failure, int[] bestRule) {
+        this.rules = rules;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.failure = failure;
+        this.bestRule = bestRule;
+    }
+
+    public static KeywordMatcher compile(List<Rule> ruleList) {
+        Rule[] rules = new Rule[ruleList.size()];
+        for (int i = 0; i < rules.length; i++) {
+            Rule rule = ruleList.get(i);
+            rules[i] = new Rule(rule.keyword().toLowerCase(Locale.ROOT), rule.category(), rule.priority());
+        }
+
+        // 1. Trie
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        children.add(new HashMap<>());
+        terminal.add(NONE);
+        for (int r = 0; r < rules.length; r++) {
+            String keyword = rules[r].keyword();
+            if (keyword.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Integer next = children.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.get(state).put(keyword.charAt(i), next);
+                    children.add(new HashMap<>());
+                    terminal.add(NONE);
+                }
+                state = next;
+            }
+            terminal.set(state, better(rules, terminal.get(state), r));
+        }
+
+        int states = children.size();
+        char[][] edgeChars = new char[states][];
+        int[][] edgeTargets = new int[states][];
+        for (int s = 0; s < states; s++) {
+            Character[] keys = children.get(s).keySet().toArray(new Character[0]);
+            Arrays.sort(keys);
+            edgeChars[s] = new char[keys.length];
+            edgeTargets[s] = new int[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                edgeChars[s][i] = keys[i];
+                edgeTargets[s][i] = children.get(s).get(keys[i]);
+            }
+        }
+
+        // 2. Failure links and best output per state, breadth first
+        int[] failure = new int[states];
+        int[] bestRule = new int[states];
+        bestRule[0] = terminal.get(0);
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int target : edgeTargets[0]) {
+            failure[target] = 0;
+            bestRule[target] = terminal.get(target);
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                char c = edgeChars[state][i];
+                int target = edgeTargets[state][i];
+                int fallback = failure[state];
+                int next;
+                while ((next = step(edgeChars, edgeTargets, fallback, c)) == NONE && fallback != 0) {
+                    fallback = failure[fallback];
+                }
+                failure[target] = (next == NONE || next == target) ? 0 : next;
+                bestRule[target] = better(rules, terminal.get(target), bestRule[failure[target]]);
+                queue.add(target);
+            }
+        }
+
+        return new KeywordMatcher(rules, edgeChars, edgeTargets, failure, bestRule);
+    }
+
+    /**
+     * Category of the winning rule found in {@code text}, or {@code null} if no keyword occurs.
+     */
+    public String match(String text) {
+        if (text == null) {
+            return null;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int state = 0;
+        int best = NONE;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            int next;
+            while ((next = step(edgeChars, edgeTargets, state, c)) == NONE && state != 0) {
+                state = failure[state];
+            }
+            state = (next == NONE) ? 0 : next;
+            best = better(rules, best, bestRule[state]);
+        }
+        return best == NONE ? null : rules[best].category();
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    private static int step(char[][] edgeChars, int[][] edgeTargets, int state, char c) {
+        int i = Arrays.binarySearch(edgeChars[state], c);
+        return i >= 0 ? edgeTargets[state][i] : NONE;
+    }
+
+    private static int better(Rule[] rules, int a, int b) {
+        if (a == NONE) return b;
+        if (b == NONE) return a;
+        Rule ra = rules[a];
+        Rule rb = rules[b];
+        if (ra.priority() != rb.priority()) {
+            return ra.priority() > rb.priority() ? a : b;
+        }
+        if (ra.keyword().length() != rb.keyword().length()) {
+            return ra.keyword().length() > rb.keyword().length() ? a : b;
+        }
+        return Math.min(a, b);
+    }
+}
@@ -0,0 +1,147 @@
+package com.intellispend.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Multinomial naive Bayes over hashed character 3- to 5-grams of a short text such as an expense
+ * description. Pure CPU, no dictionary: the feature space is fixed at {@code 2^HASH_BITS} buckets.
+ * Immutable and thread-safe once trained.
+ */
+public final class NaiveBayesClassifier {
+    private static final int HASH_BITS = 16;
+    private static final int BUCKETS = 1 << HASH_BITS;
+    private static final int MIN_GRAM = 3;
+    private static final int MAX_GRAM = 5;
+    private static final double SMOOTHING = 0.1;
+    // Overlapping n-grams of one text are far from independent, so the raw posterior is wildly
+    // overconfident. Confidence uses the per-n-gram average log-odds, scaled to this many features.
+    private static final double EFFECTIVE_FEATURES = 10;
+
+    public record Example(String text, String label) {
+    }
+
+    public record Prediction(String label, double confidence) {
+    }
+
+    private final String[] labels;
+    private final double[] logPriors;
+    // [label][bucket] log P(feature | label)
+    private final float[][] logLikelihoods;
+
+    private NaiveBayesClassifier(String[] labels, double[] logPriors, float[][] logLikelihoods) {
+        this.labels = labels;
+        this.logPriors = logPriors;
+        this.logLikelihoods = logLikelihoods;
+    }
+
+    public static NaiveBayesClassifier train(List<Example> examples) {
+        Map<String, Integer> labelIndex = new HashMap<>();
+        List<String> labels = new ArrayList<>();
+        List<int[]> counts = new ArrayList<>();
+        List<long[]> totals = new ArrayList<>();
+        int[] documents = new int[0];
+
+        for (Example example : examples) {
+            Integer index = labelIndex.get(example.label());
+            if (index == null) {
+                index = labels.size();
+                labelIndex.put(example.label(), index);
+                labels.add(example.label());
+                counts.add(new int[BUCKETS]);
+                totals.add(new long[1]);
+                documents = Arrays.copyOf(documents, labels.size());
+            }
+            documents[index]++;
+            int[] labelCounts = counts.get(index);
+            long[] labelTotal = totals.get(index);
+            forEachFeature(example.text(), bucket -> {
+                labelCounts[bucket]++;
+                labelTotal[0]++;
+            });
+        }
+
+        double[] logPriors = new double[labels.size()];
+        float[][] logLikelihoods = new float[labels.size()][BUCKETS];
+        for (int l = 0; l < labels.size(); l++) {
+            logPriors[l] = Math.log((double) documents[l] / examples.size());
+            double denominator = Math.log(totals.get(l)[0] + SMOOTHING * BUCKETS);
+            int[] labelCounts = counts.get(l);
+            for (int b = 0; b < BUCKETS; b++) {
+                logLikelihoods[l][b] = (float) (Math.log(labelCounts[b] + SMOOTHING) - denominator);
+            }
+        }
+        return new NaiveBayesClassifier(labels.toArray(new String[0]), logPriors, logLikelihoods);
+    }
+
+    /**
+     * Most likely label and its length-normalised posterior probability, or {@code null} if the model has no labels
+     * or the text is too short to yield any feature.
+     */
+    public Prediction predict(String text) {
+        if (labels.length == 0) {
+            return null;
+        }
+        double[] scores = logPriors.clone();
+        int[] features = {0};
+        forEachFeature(text, bucket -> {
+            features[0]++;
+            for (int l = 0; l < labels.length; l++) {
+                scores[l] += logLikelihoods[l][bucket];
+            }
+        });
+        if (features[0] == 0) {
+            return null;
+        }
+
+        int best = 0;
+        for (int l = 1; l < scores.length; l++) {
+            if (scores[l] > scores[best]) {
+                best = l;
+            }
+        }
+        double scale = EFFECTIVE_FEATURES / features[0];
+        double sum = 0;
+        for (double score : scores) {
+            sum += Math.exp((score - scores[best]) * scale);
+        }
+        return new Prediction(labels[best], 1 / sum);
+    }
+
+    public int labelCount() {
+        return labels.length;
+    }
+
+    private interface FeatureConsumer {
+        void accept(int bucket);
+    }
+
+    // Character n-grams of " text ", hashed inline so predicting allocates nothing per gram
+    private static void forEachFeature(String text, FeatureConsumer consumer) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length() + 2;
+        for (int start = 0; start + MIN_GRAM <= length; start++) {
+            int hash = 0x811C9DC5;
+            for (int n = 0; n < MAX_GRAM && start + n < length; n++) {
+                int i = start + n;
+                char c = (i == 0 || i == length - 1) ? ' ' : text.charAt(i - 1);
+                hash = (hash ^ c) * 0x01000193;
+                if (n + 1 >= MIN_GRAM) {
+                    consumer.accept(mix(hash + n) & (BUCKETS - 1));
+                }
+            }
+        }
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
@@ -13,4 +13,7 @@ public class PromptConstants {
 
     public static final String CATEGORIZATION_USER_PROMPT_TEMPLATE = 
             "Description: %s";
+
+    public static final String BATCH_CATEGORIZATION_SYSTEM_PROMPT =
+            "You are a financial assistant. Categorize each numbered expense description into one of these: Food, Groceries, Transport, Shopping, Entertainment, Housing, Utilities, Health, Education, Other. Reply with exactly one line per description in the form <number>: <category>, and nothing else.";
 }
@@ -21,6 +21,7 @@ public class StartupDataManager implements CommandLineRunner {
     private final UserRepository userRepository;
     private final ExpenseRepository expenseRepository;
     private final com.intellispend.repository.BudgetRepository budgetRepository;
+    private final com.intellispend.service.SpendLedgerService spendLedgerService;
     private final PasswordEncoder encoder;
 
     @Override
@@ -125,6 +126,9 @@ public class StartupDataManager implements CommandLineRunner {
                         .build()));
             }
 
+            // Seeded rows bypass ExpenseService, so bring the spend ledger up to date
+            spendLedgerService.reconcile();
+
             log.info("Comprehensive demo data seeding completed.");
         }
     }
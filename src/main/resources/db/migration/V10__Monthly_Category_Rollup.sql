@@ -0,0 +1,20 @@
+-- Extend the spend ledger into a (user, month, category) rollup for trend analytics
+
+ALTER TABLE monthly_category_spend ADD COLUMN expense_count BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE monthly_category_spend ADD COLUMN min_amount DECIMAL(19, 2);
+ALTER TABLE monthly_category_spend ADD COLUMN max_amount DECIMAL(19, 2);
+
+-- Backfill from existing expenses; cells with no live expenses keep count 0 and no bounds
+UPDATE monthly_category_spend s
+SET expense_count = e.expense_count, min_amount = e.min_amount, max_amount = e.max_amount
+FROM (
+    SELECT user_id, category, to_char(date, 'YYYY-MM') AS month,
+           count(*) AS expense_count, MIN(amount) AS min_amount, MAX(amount) AS max_amount
+    FROM expenses
+    WHERE is_deleted = false
+    GROUP BY user_id, category, to_char(date, 'YYYY-MM')
+) e
+WHERE s.user_id = e.user_id AND s.category = e.category AND s.month = e.month;
+
+-- Trend queries read a user's cells over a month range
+CREATE INDEX idx_monthly_category_spend_user_month ON monthly_category_spend (user_id, month);
@@ -0,0 +1,10 @@
+-- Daily FX rates into the base currency (fx.base-currency), kept in step with fx.rates.location by
+-- FxRateService. Aggregation queries look rates up per expense through the primary key; see
+-- FxFunctionContributor for the conversion expression.
+
+CREATE TABLE fx_rates (
+    currency VARCHAR(10) NOT NULL,
+    rate_date DATE NOT NULL,
+    rate DECIMAL(19, 8) NOT NULL,
+    CONSTRAINT pk_fx_rates PRIMARY KEY (currency, rate_date)
+);
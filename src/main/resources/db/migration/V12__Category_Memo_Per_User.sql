@@ -0,0 +1,13 @@
+-- Corrections become per user: one user's category for a merchant no longer applies to anyone
+-- else's expenses. Rows with a user_id are that user's corrections; rows without one are AI
+-- results, shared by all users.
+
+ALTER TABLE category_memo DROP CONSTRAINT category_memo_pkey;
+ALTER TABLE category_memo ADD COLUMN id BIGSERIAL PRIMARY KEY;
+ALTER TABLE category_memo ADD COLUMN user_id BIGINT REFERENCES users(id) ON DELETE CASCADE;
+
+-- Corrections made so far can't be traced back to the user who made them
+DELETE FROM category_memo WHERE source = 'USER';
+
+CREATE UNIQUE INDEX uk_category_memo_shared_key ON category_memo (description_key) WHERE user_id IS NULL;
+CREATE UNIQUE INDEX uk_category_memo_user_key ON category_memo (user_id, description_key) WHERE user_id IS NOT NULL;
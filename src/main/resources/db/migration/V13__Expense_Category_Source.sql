@@ -0,0 +1,8 @@
+-- Records whether an expense's category was chosen by the user or filled in automatically, so
+-- the local categorization model trains only on categories users chose and not on its own (or
+-- OpenAI's, or the keyword rules') output. Existing rows can't be told apart and count as AUTO.
+
+ALTER TABLE expenses ADD COLUMN category_source VARCHAR(10) NOT NULL DEFAULT 'AUTO';
+
+-- Training rows, newest first
+CREATE INDEX idx_expenses_training_rows ON expenses (id DESC) WHERE category_source = 'USER';
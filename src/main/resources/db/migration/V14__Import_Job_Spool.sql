@@ -0,0 +1,13 @@
+-- Background imports record the node running them and the spooled upload, so a node that
+-- restarts can fail the jobs it was running and delete their spool files
+
+ALTER TABLE import_jobs ADD COLUMN node VARCHAR(100);
+ALTER TABLE import_jobs ADD COLUMN spool_path VARCHAR(500);
+
+CREATE INDEX idx_import_jobs_node_unfinished ON import_jobs (node) WHERE status IN ('QUEUED', 'RUNNING');
+
+-- Jobs left unfinished by earlier versions can't be traced to a node and would never finish
+UPDATE import_jobs
+SET status = 'FAILED', message = 'Interrupted by a server restart; upload the file again to import the remaining rows',
+    updated_at = now(), completed_at = now()
+WHERE status IN ('QUEUED', 'RUNNING');
@@ -0,0 +1,4 @@
+-- Currency codes are upper case, as in the FX rates file; a lower-case code found no rate and was
+-- converted 1:1. The weekly ledger reconcile recomputes the cells whose converted totals move.
+
+UPDATE expenses SET currency = upper(trim(currency)) WHERE currency <> upper(trim(currency));
@@ -0,0 +1,4 @@
+-- Counts the passes a report was put off waiting for its AI summary. Deferrals don't use up an
+-- attempt, so without a limit of their own a month could stay open for as long as OpenAI fails.
+
+ALTER TABLE report_run_items ADD COLUMN summary_deferrals INTEGER NOT NULL DEFAULT 0;
@@ -0,0 +1,17 @@
+-- Per (user, category, month) spend ledger used by budget checks
+
+CREATE TABLE monthly_category_spend (
+    id BIGSERIAL PRIMARY KEY,
+    user_id INTEGER REFERENCES users(id) NOT NULL,
+    category VARCHAR(50) NOT NULL,
+    month VARCHAR(7) NOT NULL,
+    total DECIMAL(19, 2) NOT NULL DEFAULT 0,
+    CONSTRAINT uk_monthly_category_spend UNIQUE (user_id, category, month)
+);
+
+-- Backfill from existing expenses
+INSERT INTO monthly_category_spend (user_id, category, month, total)
+SELECT user_id, category, to_char(date, 'YYYY-MM'), SUM(amount)
+FROM expenses
+WHERE is_deleted = false
+GROUP BY user_id, category, to_char(date, 'YYYY-MM');
@@ -0,0 +1,61 @@
+-- Budgets and insights were previously only created by hibernate ddl-auto; bring them under Flyway
+-- and index the lookup keys the application actually queries.
+
+-- Entities use Long ids; widen the SERIAL keys so ddl-auto=validate accepts the schema
+ALTER SEQUENCE users_id_seq AS BIGINT;
+ALTER TABLE users ALTER COLUMN id TYPE BIGINT;
+ALTER TABLE user_roles ALTER COLUMN user_id TYPE BIGINT;
+ALTER SEQUENCE expenses_id_seq AS BIGINT;
+ALTER TABLE expenses ALTER COLUMN id TYPE BIGINT;
+ALTER TABLE expenses ALTER COLUMN user_id TYPE BIGINT;
+ALTER TABLE monthly_category_spend ALTER COLUMN user_id TYPE BIGINT;
+
+CREATE TABLE IF NOT EXISTS budgets (
+    id BIGSERIAL PRIMARY KEY,
+    category VARCHAR(255) NOT NULL,
+    amount DECIMAL(19, 2) NOT NULL,
+    month VARCHAR(7) NOT NULL,
+    user_id BIGINT REFERENCES users(id) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS insights (
+    id BIGSERIAL PRIMARY KEY,
+    month VARCHAR(7) NOT NULL,
+    summary TEXT,
+    user_id BIGINT REFERENCES users(id) NOT NULL
+);
+
+-- ddl-auto stored YearMonth as a Java-serialized bytea; the value ends with
+-- <int year><byte month> followed by the end-of-block marker, so decode it to 'YYYY-MM'.
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['budgets', 'insights'] LOOP
+        IF EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_schema = current_schema() AND table_name = t
+                     AND column_name = 'month' AND data_type = 'bytea') THEN
+            EXECUTE format(
+                'ALTER TABLE %I ALTER COLUMN month TYPE VARCHAR(7) USING to_char(make_date('
+                || '(get_byte(month, length(month) - 6) << 24) | (get_byte(month, length(month) - 5) << 16) | '
+                || '(get_byte(month, length(month) - 4) << 8) | get_byte(month, length(month) - 3), '
+                || 'get_byte(month, length(month) - 2), 1), ''YYYY-MM'')', t);
+        END IF;
+    END LOOP;
+END $$;
+
+-- Keep the newest row per lookup key before enforcing uniqueness
+DELETE FROM budgets b USING budgets newer
+WHERE b.user_id = newer.user_id AND b.category = newer.category AND b.month = newer.month AND b.id < newer.id;
+
+DELETE FROM insights i USING insights newer
+WHERE i.user_id = newer.user_id AND i.month = newer.month AND i.id < newer.id;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_budgets_user_category_month ON budgets (user_id, category, month);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_insights_user_month ON insights (user_id, month);
+
+-- Expense reads always carry the soft-delete filter (is_deleted=false) from @Where on Expense
+CREATE INDEX IF NOT EXISTS idx_expenses_user_date
+    ON expenses (user_id, date) WHERE is_deleted = false;
+CREATE INDEX IF NOT EXISTS idx_expenses_user_category_date
+    ON expenses (user_id, category, date) WHERE is_deleted = false;
@@ -0,0 +1,12 @@
+-- Description search: trigram index for substring LIKE, tsvector index for word search.
+-- btree_gin lets user_id live in the same GIN index so per-user searches stay selective.
+-- Both extensions ship with PostgreSQL contrib and are trusted (creatable by the database owner).
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+CREATE INDEX IF NOT EXISTS idx_expenses_description_trgm
+    ON expenses USING gin (user_id, lower(description) gin_trgm_ops) WHERE is_deleted = false;
+
+CREATE INDEX IF NOT EXISTS idx_expenses_description_fts
+    ON expenses USING gin (user_id, to_tsvector('simple', coalesce(description, ''))) WHERE is_deleted = false;
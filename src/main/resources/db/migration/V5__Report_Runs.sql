@@ -0,0 +1,22 @@
+-- Monthly report batch: one run per month, one item per processed user
+
+CREATE TABLE report_runs (
+    id BIGSERIAL PRIMARY KEY,
+    month VARCHAR(7) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    started_at TIMESTAMP NOT NULL,
+    completed_at TIMESTAMP,
+    CONSTRAINT uk_report_runs_month UNIQUE (month)
+);
+
+CREATE TABLE report_run_items (
+    id BIGSERIAL PRIMARY KEY,
+    run_id BIGINT REFERENCES report_runs(id) NOT NULL,
+    user_id BIGINT REFERENCES users(id) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    file_path VARCHAR(500),
+    error VARCHAR(500),
+    updated_at TIMESTAMP NOT NULL,
+    CONSTRAINT uk_report_run_items_run_user UNIQUE (run_id, user_id)
+);
@@ -0,0 +1,9 @@
+-- Normalised description -> category, shared by all users. USER rows come from corrections and
+-- are never overwritten by AI results.
+
+CREATE TABLE category_memo (
+    description_key VARCHAR(255) PRIMARY KEY,
+    category VARCHAR(50) NOT NULL,
+    source VARCHAR(10) NOT NULL,
+    updated_at TIMESTAMP NOT NULL
+);
@@ -0,0 +1,6 @@
+-- Hibernate now takes expense ids from the sequence 500 at a time (pooled optimizer, one sequence
+-- call per JDBC batch) instead of reading each one back from an IDENTITY insert, so bulk inserts
+-- can go out as batches. Inserts that rely on the column default still work; each just uses up a
+-- block of ids.
+
+ALTER SEQUENCE expenses_id_seq INCREMENT BY 500;
@@ -0,0 +1,26 @@
+-- Background CSV imports: progress per job, and the rows that were rejected with their reason
+
+CREATE TABLE import_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT REFERENCES users(id) NOT NULL,
+    file_name VARCHAR(255),
+    status VARCHAR(20) NOT NULL,
+    rows_read BIGINT NOT NULL DEFAULT 0,
+    accepted BIGINT NOT NULL DEFAULT 0,
+    rejected BIGINT NOT NULL DEFAULT 0,
+    message VARCHAR(500),
+    created_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NOT NULL,
+    completed_at TIMESTAMP
+);
+
+CREATE INDEX idx_import_jobs_user ON import_jobs (user_id);
+
+CREATE TABLE import_job_errors (
+    id BIGSERIAL PRIMARY KEY,
+    job_id BIGINT REFERENCES import_jobs(id) ON DELETE CASCADE NOT NULL,
+    line_number BIGINT NOT NULL,
+    message VARCHAR(500) NOT NULL
+);
+
+CREATE INDEX idx_import_job_errors_job_line ON import_job_errors (job_id, line_number);
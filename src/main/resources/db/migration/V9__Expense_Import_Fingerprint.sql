@@ -0,0 +1,16 @@
+-- CSV imports fingerprint each row (date, amount, description, payment method and the row's
+-- occurrence number among identical rows of the same file), so re-uploading an overlapping
+-- statement skips the rows that are already there. Rows created through the API, and rows
+-- imported before this migration, have no fingerprint.
+
+ALTER TABLE expenses ADD COLUMN import_fingerprint VARCHAR(48);
+
+CREATE UNIQUE INDEX uk_expenses_user_import_fingerprint ON expenses (user_id, import_fingerprint)
+    WHERE import_fingerprint IS NOT NULL;
+
+ALTER TABLE import_jobs ADD COLUMN duplicates BIGINT NOT NULL DEFAULT 0;
+
+-- import_job_errors also lists the lines skipped as duplicates
+ALTER TABLE import_job_errors ADD COLUMN duplicate BOOLEAN NOT NULL DEFAULT FALSE;
+DROP INDEX idx_import_job_errors_job_line;
+CREATE INDEX idx_import_job_errors_job_duplicate_line ON import_job_errors (job_id, duplicate, line_number);
@@ -0,0 +1,130 @@
+package com.intellispend.benchmark;
+
+import com.intellispend.repository.CategoryMemoRepository;
+import com.intellispend.repository.ExpenseRepository;
+import com.intellispend.service.AiCallGuard;
+import com.intellispend.service.CategorizationService;
+import com.intellispend.service.CategoryMemoService;
+import com.intellispend.service.CategoryModelService;
+import com.intellispend.service.KeywordRuleService;
+import com.intellispend.service.OpenAiClient;
+import com.intellispend.support.FakeCategoryMemoRepository;
+import com.intellispend.support.StubOpenAiServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Categorizing a CSV upload row by row (one OpenAI round-trip per unmatched row) versus
+ * {@code CategorizationService.categorizeAll} (deduplicated, 50 descriptions per prompt, 4 prompts
+ * in flight), cold and with the merchants already in the category memo (a repeat upload the
+ * following month). Runs against a local stub with a fixed per-request latency; {@code roundTrips}
+ * in the secondary results is the number of HTTP requests per upload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class CategorizationBenchmark {
+    private static final Long USER_ID = 1L;
+
+    @Param({"500", "2000"})
+    private int rows;
+
+    // Share of rows that repeat an earlier merchant, as in a typical bank statement
+    @Param({"0.6"})
+    private double repeatRatio;
+
+    @Param({"20"})
+    private int latencyMillis;
+
+    private StubOpenAiServer stub;
+    private CategorizationService categorizationService;
+    private CategorizationService memoisedCategorizationService;
+    private List<String> descriptions;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class RoundTrips {
+        public long roundTrips;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stub = new StubOpenAiServer();
+        stub.respondWith(StubOpenAiServer.batchCategorizer(Duration.ofMillis(latencyMillis)));
+        AiCallGuard aiCallGuard = new AiCallGuard(10, Duration.ofSeconds(30), 50, 20, 10,
+                Duration.ofSeconds(30), 3, new SimpleMeterRegistry(), event -> { });
+        OpenAiClient openAiClient = new OpenAiClient(new RestTemplateBuilder(), "bench-key", stub.url(),
+                Duration.ofSeconds(5), Duration.ofSeconds(30), 10, 1, Duration.ZERO, new SimpleMeterRegistry(), aiCallGuard);
+        KeywordRuleService keywordRules = new KeywordRuleService(new ClassPathResource("categorization/keyword-rules.csv"));
+        // Never trained, so the local model tier passes everything on
+        CategoryModelService untrainedModel = new CategoryModelService(Mockito.mock(ExpenseRepository.class),
+                0, 0, 1.0, new SimpleMeterRegistry());
+        // Memo table left empty and the memory tier at zero size, so every run pays for the AI calls
+        CategoryMemoService coldMemo = new CategoryMemoService(Mockito.mock(CategoryMemoRepository.class),
+                0, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        categorizationService = new CategorizationService(openAiClient, coldMemo, keywordRules, untrainedModel, 50, 4, 100, Duration.ofMinutes(5));
+
+        CategoryMemoService warmMemo = new CategoryMemoService(FakeCategoryMemoRepository.backedBy(new ConcurrentHashMap<>()),
+                100_000, Duration.ofHours(1), new SimpleMeterRegistry());
+        memoisedCategorizationService = new CategorizationService(openAiClient, warmMemo, keywordRules, untrainedModel, 50, 4, 100, Duration.ofMinutes(5));
+
+        int merchants = Math.max(1, (int) (rows * (1 - repeatRatio)));
+        descriptions = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            descriptions.add("POS purchase merchant " + merchantName(i % merchants) + " #Shopping " + (1000 + i));
+        }
+        memoisedCategorizationService.categorizeAll(descriptions, USER_ID);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public void perRow(RoundTrips counters, Blackhole bh) {
+        int before = stub.requestCount();
+        for (String description : descriptions) {
+            bh.consume(categorizationService.categorize(description, USER_ID));
+        }
+        counters.roundTrips += stub.requestCount() - before;
+    }
+
+    @Benchmark
+    public void batched(RoundTrips counters, Blackhole bh) {
+        int before = stub.requestCount();
+        bh.consume(categorizationService.categorizeAll(descriptions, USER_ID));
+        counters.roundTrips += stub.requestCount() - before;
+    }
+
+    @Benchmark
+    public void batchedWithMemo(RoundTrips counters, Blackhole bh) {
+        int before = stub.requestCount();
+        bh.consume(memoisedCategorizationService.categorizeAll(descriptions, USER_ID));
+        counters.roundTrips += stub.requestCount() - before;
+    }
+
+    // Letters only, so each merchant keeps its own memo key
+    private static String merchantName(int n) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return name.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.intellispend.benchmark;
+
+import com.intellispend.service.CategoryMemoService;
+import com.intellispend.support.SyntheticExpenses;
+import com.intellispend.util.NaiveBayesClassifier;
+import com.intellispend.util.NaiveBayesClassifier.Example;
+import com.intellispend.util.NaiveBayesClassifier.Prediction;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local categorization model: time to retrain on {@code trainingRows} categorized expenses, and
+ * time to categorize one description. Held-out coverage and accuracy at the production confidence
+ * threshold are printed once per trial ("held-out: ..."). Data is {@link SyntheticExpenses} with
+ * 20% of rows carrying no category hint, so about 80% coverage is the best achievable.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CategoryModelBenchmark {
+    private static final double MIN_CONFIDENCE = 0.95;
+
+    @Param({"10000", "100000"})
+    private int trainingRows;
+
+    private List<Example> training;
+    private String[] unseen;
+    private NaiveBayesClassifier model;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticExpenses expenses = new SyntheticExpenses(11, 0.2);
+        training = expenses.rows(trainingRows).stream()
+                .map(row -> new Example(CategoryMemoService.normalize(row.description()), row.category()))
+                .toList();
+        model = NaiveBayesClassifier.train(training);
+
+        List<SyntheticExpenses.Row> holdOut = expenses.rows(4096);
+        unseen = new String[holdOut.size()];
+        int answered = 0;
+        int correct = 0;
+        for (int i = 0; i < holdOut.size(); i++) {
+            unseen[i] = holdOut.get(i).description();
+            Prediction prediction = model.predict(CategoryMemoService.normalize(unseen[i]));
+            if (prediction != null && prediction.confidence() >= MIN_CONFIDENCE) {
+                answered++;
+                correct += prediction.label().equals(holdOut.get(i).category()) ? 1 : 0;
+            }
+        }
+        System.out.printf("held-out: coverage %.1f%%, accuracy %.2f%% (%d rows, confidence >= %.2f)%n",
+                100.0 * answered / holdOut.size(), 100.0 * correct / Math.max(1, answered), holdOut.size(), MIN_CONFIDENCE);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void predict(Blackhole blackhole) {
+        String description = unseen[next++ & (unseen.length - 1)];
+        blackhole.consume(model.predict(CategoryMemoService.normalize(description)));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public NaiveBayesClassifier train() {
+        return NaiveBayesClassifier.train(training);
+    }
+}
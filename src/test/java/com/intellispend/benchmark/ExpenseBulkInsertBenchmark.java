@@ -0,0 +1,172 @@
+package com.intellispend.benchmark;
+
+import com.intellispend.entity.Expense;
+import com.intellispend.entity.Role;
+import com.intellispend.entity.User;
+import jakarta.persistence.*;
+import org.flywaydb.core.Flyway;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persisting one CSV upload of {@code rows} expenses in a single transaction, as
+ * {@code ExpenseService.createExpenses} does through {@code saveAll}: the previous IDENTITY mapping
+ * (one INSERT round-trip per row to read the id back) versus the current sequence mapping with
+ * pooled ids, JDBC batching and {@code reWriteBatchedInserts}.
+ * <p>
+ * Needs a PostgreSQL database; defaults to {@code jdbc:postgresql://localhost:5432/intellispend_bench},
+ * override with {@code -Dbench.jdbc.url}, {@code -Dbench.jdbc.user} and {@code -Dbench.jdbc.password}.
+ * Inserted rows are deleted after every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpenseBulkInsertBenchmark {
+    private static final String USERNAME = "bench_bulk_insert";
+
+    @Param({"1000", "10000", "50000"})
+    private int rows;
+
+    private String url;
+    private String user;
+    private String password;
+    private long userId;
+    private SessionFactory identitySessionFactory;
+    private SessionFactory batchedSessionFactory;
+
+    /**
+     * The expense mapping before ids were allocated from the sequence.
+     */
+    @Entity(name = "IdentityExpense")
+    @Table(name = "expenses")
+    public static class IdentityExpense {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+        BigDecimal amount;
+        String category;
+        String description;
+        LocalDate date;
+        String paymentMethod;
+        String currency;
+        boolean isDeleted;
+        Long userId;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        url = System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/intellispend_bench");
+        user = System.getProperty("bench.jdbc.user", "postgres");
+        password = System.getProperty("bench.jdbc.password", "password");
+
+        Flyway.configure().dataSource(url, user, password).load().migrate();
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             PreparedStatement insert = connection.prepareStatement(
+                     "insert into users (username, email, password) values (?, ?, 'x') " +
+                             "on conflict (username) do update set email = excluded.email returning id")) {
+            insert.setString(1, USERNAME);
+            insert.setString(2, USERNAME + "@bench.local");
+            try (ResultSet rs = insert.executeQuery()) {
+                rs.next();
+                userId = rs.getLong(1);
+            }
+        }
+
+        // Settings before this change: no JDBC batching (IDENTITY would disable it anyway)
+        identitySessionFactory = sessionFactory(url, null, IdentityExpense.class);
+        batchedSessionFactory = sessionFactory(url + (url.contains("?") ? "&" : "?") + "reWriteBatchedInserts=true",
+                "500", Expense.class, User.class, Role.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        identitySessionFactory.close();
+        batchedSessionFactory.close();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteInserted() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             PreparedStatement delete = connection.prepareStatement("delete from expenses where user_id = ?")) {
+            delete.setLong(1, userId);
+            delete.executeUpdate();
+        }
+    }
+
+    @Benchmark
+    public void identityPerRow() {
+        try (Session session = identitySessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (int i = 0; i < rows; i++) {
+                IdentityExpense expense = new IdentityExpense();
+                expense.amount = BigDecimal.valueOf(1000 + i, 2);
+                expense.category = "Food";
+                expense.description = "POS MERCHANT " + i;
+                expense.date = LocalDate.of(2024, 1, 1).plusDays(i % 365);
+                expense.paymentMethod = "Card";
+                expense.currency = "USD";
+                expense.userId = userId;
+                session.persist(expense);
+            }
+            transaction.commit();
+        }
+    }
+
+    @Benchmark
+    public void sequenceBatched() {
+        try (Session session = batchedSessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            User owner = session.getReference(User.class, userId);
+            List<Expense> expenses = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                expenses.add(Expense.builder()
+                        .amount(BigDecimal.valueOf(1000 + i, 2))
+                        .category("Food")
+                        .description("POS MERCHANT " + i)
+                        .date(LocalDate.of(2024, 1, 1).plusDays(i % 365))
+                        .paymentMethod("Card")
+                        .currency("USD")
+                        .user(owner)
+                        .build());
+            }
+            expenses.forEach(session::persist);
+            transaction.commit();
+        }
+    }
+
+    private SessionFactory sessionFactory(String jdbcUrl, String batchSize, Class<?>... entities) {
+        StandardServiceRegistryBuilder settings = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.connection.url", jdbcUrl)
+                .applySetting("hibernate.connection.username", user)
+                .applySetting("hibernate.connection.password", password)
+                .applySetting("hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName())
+                .applySetting("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+        if (batchSize != null) {
+            settings.applySetting("hibernate.jdbc.batch_size", batchSize)
+                    .applySetting("hibernate.order_inserts", "true");
+        }
+        StandardServiceRegistry registry = settings.build();
+        MetadataSources sources = new MetadataSources(registry);
+        for (Class<?> entity : entities) {
+            sources.addAnnotatedClass(entity);
+        }
+        return sources.buildMetadata().buildSessionFactory();
+    }
+}
@@ -0,0 +1,171 @@
+package com.intellispend.benchmark;
+
+import com.intellispend.entity.Expense;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.intellispend.config.FxFunctionContributor.EXPENSE_AMOUNT_IN_BASE;
+
+/**
+ * Compares the old insight path (hydrate every expense of the user, then filter and group in Java)
+ * with the aggregate queries now used by {@code MonthlySnapshotService}: category, daily and
+ * previous-month totals converted with {@code fx_to_base}, and week totals folded from the daily ones.
+ * <p>
+ * Needs a PostgreSQL database; defaults to {@code jdbc:postgresql://localhost:5432/intellispend_bench},
+ * override with {@code -Dbench.jdbc.url}, {@code -Dbench.jdbc.user} and {@code -Dbench.jdbc.password}.
+ * Data is seeded once per size and reused across runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class InsightAggregationBenchmark {
+
+    private static final YearMonth MONTH = YearMonth.of(2022, 6);
+
+    @Param({"10000", "100000", "1000000"})
+    private int expensesPerUser;
+
+    private Connection connection;
+    private long userId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        String url = System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/intellispend_bench");
+        String user = System.getProperty("bench.jdbc.user", "postgres");
+        String password = System.getProperty("bench.jdbc.password", "password");
+
+        Flyway.configure().dataSource(url, user, password).load().migrate();
+        connection = DriverManager.getConnection(url, user, password);
+        userId = seedUser("bench_" + expensesPerUser, expensesPerUser);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void hydrated(Blackhole bh) throws SQLException {
+        List<Expense> expenses = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "select id, amount, category, description, date, payment_method, currency from expenses " +
+                        "where user_id = ? and is_deleted = false")) {
+            ps.setLong(1, userId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    expenses.add(Expense.builder()
+                            .id(rs.getLong(1))
+                            .amount(rs.getBigDecimal(2))
+                            .category(rs.getString(3))
+                            .description(rs.getString(4))
+                            .date(rs.getObject(5, LocalDate.class))
+                            .paymentMethod(rs.getString(6))
+                            .currency(rs.getString(7))
+                            .build());
+                }
+            }
+        }
+
+        List<Expense> current = expenses.stream()
+                .filter(e -> YearMonth.from(e.getDate()).equals(MONTH))
+                .collect(Collectors.toList());
+        BigDecimal previousTotal = expenses.stream()
+                .filter(e -> YearMonth.from(e.getDate()).equals(MONTH.minusMonths(1)))
+                .map(Expense::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        bh.consume(current.stream().collect(Collectors.groupingBy(Expense::getCategory,
+                Collectors.reducing(BigDecimal.ZERO, Expense::getAmount, BigDecimal::add))));
+        bh.consume(current.stream().collect(Collectors.groupingBy(Expense::getDate,
+                Collectors.reducing(BigDecimal.ZERO, Expense::getAmount, BigDecimal::add))));
+        bh.consume(current.stream().collect(Collectors.groupingBy(e -> (e.getDate().getDayOfMonth() - 1) / 7 + 1,
+                Collectors.reducing(BigDecimal.ZERO, Expense::getAmount, BigDecimal::add))));
+        bh.consume(previousTotal);
+    }
+
+    @Benchmark
+    public void aggregated(Blackhole bh) throws SQLException {
+        LocalDate start = MONTH.atDay(1);
+        LocalDate end = MONTH.atEndOfMonth();
+        bh.consume(aggregate("select e.category, sum(" + EXPENSE_AMOUNT_IN_BASE + ") from expenses e " +
+                "where e.user_id = ? and e.date between ? and ? and e.is_deleted = false group by e.category", start, end));
+        Map<Object, BigDecimal> daily = aggregate("select e.date, sum(" + EXPENSE_AMOUNT_IN_BASE + ") from expenses e " +
+                "where e.user_id = ? and e.date between ? and ? and e.is_deleted = false group by e.date", start, end);
+        Map<Integer, BigDecimal> weekly = new TreeMap<>();
+        daily.forEach((date, total) ->
+                weekly.merge((((Date) date).toLocalDate().getDayOfMonth() - 1) / 7 + 1, total, BigDecimal::add));
+        bh.consume(daily);
+        bh.consume(weekly);
+        bh.consume(aggregate("select 'total', coalesce(sum(" + EXPENSE_AMOUNT_IN_BASE + "), 0) from expenses e " +
+                "where e.user_id = ? and e.date between ? and ? and e.is_deleted = false",
+                MONTH.minusMonths(1).atDay(1), MONTH.minusMonths(1).atEndOfMonth()));
+    }
+
+    private Map<Object, BigDecimal> aggregate(String sql, LocalDate start, LocalDate end) throws SQLException {
+        Map<Object, BigDecimal> totals = new java.util.HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, userId);
+            ps.setObject(2, start);
+            ps.setObject(3, end);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    totals.put(rs.getObject(1), rs.getBigDecimal(2));
+                }
+            }
+        }
+        return totals;
+    }
+
+    private long seedUser(String username, int expenseCount) throws SQLException {
+        try (PreparedStatement find = connection.prepareStatement("select id from users where username = ?")) {
+            find.setString(1, username);
+            try (ResultSet rs = find.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+
+        long id;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into users (username, email, password) values (?, ?, 'x') returning id")) {
+            insert.setString(1, username);
+            insert.setString(2, username + "@bench.local");
+            try (ResultSet rs = insert.executeQuery()) {
+                rs.next();
+                id = rs.getLong(1);
+            }
+        }
+
+        // Five years of history so the target month is a small slice of the user's data
+        try (PreparedStatement seed = connection.prepareStatement(
+                "insert into expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                        "select round((random() * 200)::numeric, 2) + 1, " +
+                        "(array['Food','Groceries','Transport','Shopping','Entertainment','Housing','Utilities','Health'])[1 + g % 8], " +
+                        "'Expense ' || g, date '2020-01-01' + (g % 1826), 'Card', 'USD', false, ? " +
+                        "from generate_series(1, ?) g")) {
+            seed.setLong(1, id);
+            seed.setInt(2, expenseCount);
+            seed.executeUpdate();
+        }
+        try (Statement analyze = connection.createStatement()) {
+            analyze.execute("analyze expenses");
+        }
+        return id;
+    }
+}
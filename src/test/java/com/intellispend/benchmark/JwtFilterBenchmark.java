@@ -0,0 +1,86 @@
+package com.intellispend.benchmark;
+
+import com.intellispend.config.AuthTokenFilter;
+import com.intellispend.service.PrincipalCache;
+import com.intellispend.service.UserDetailsImpl;
+import com.intellispend.service.UserDetailsServiceImpl;
+import com.intellispend.util.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * One authenticated request through {@link AuthTokenFilter}, with the user lookup stubbed out so
+ * only token handling is measured. {@code legacy} is the previous path (key and parser rebuilt,
+ * token verified twice); {@code filter} runs the current filter, in stateless mode, with the claims
+ * cache off and on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtFilterBenchmark {
+    private static final String SECRET = "changeme_at_least_32_characters_long_secret_key";
+    private static final FilterChain CHAIN = (request, response) -> {
+    };
+
+    @Param({"0", "10000"})
+    private long cacheMaxSize;
+
+    private AuthTokenFilter filter;
+    private UserDetailsServiceImpl userDetailsService;
+    private String header;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 86_400_000, cacheMaxSize, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        UserDetailsImpl user = new UserDetailsImpl(1L, "demo", "demo@example.com", "secret", List.of());
+        userDetailsService = mock(UserDetailsServiceImpl.class);
+        when(userDetailsService.loadUserByUsername("demo")).thenReturn(user);
+        PrincipalCache principalCache = new PrincipalCache(10_000, Duration.ofMinutes(1), 86_400_000, new SimpleMeterRegistry());
+        filter = new AuthTokenFilter(jwtUtil, userDetailsService, principalCache, true);
+        header = "Bearer " + jwtUtil.generateJwtToken(new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+
+    @Benchmark
+    public Object filter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/expenses");
+        request.addHeader("Authorization", header);
+        filter.doFilter(request, new MockHttpServletResponse(), CHAIN);
+        Object authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return authentication;
+    }
+
+    @Benchmark
+    public Object legacy() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/expenses");
+        request.addHeader("Authorization", header);
+        String jwt = request.getHeader("Authorization").substring(7);
+
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(jwt);
+        key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+        String username = Jwts.parserBuilder().setSigningKey(key).build().parseClaimsJws(jwt).getBody().getSubject();
+
+        UserDetailsImpl user = (UserDetailsImpl) userDetailsService.loadUserByUsername(username);
+        return new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+    }
+}
@@ -0,0 +1,98 @@
+package com.intellispend.benchmark;
+
+import com.intellispend.util.KeywordMatcher;
+import com.intellispend.util.KeywordMatcher.Rule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyword categorization of one description: the previous linear {@code contains} scan over a
+ * {@code HashMap} of keywords versus the compiled {@link KeywordMatcher}, at the 15 built-in rules
+ * and at 1k / 10k merchant keywords. Half of the descriptions contain a keyword.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordMatcherBenchmark {
+    private static final String[] BUILT_IN = {
+            "swiggy", "zomato", "restaurant", "grocery", "uber", "ola", "petrol", "amazon",
+            "flipkart", "netflix", "spotify", "rent", "electricity", "water", "internet"};
+    private static final String[] CATEGORIES = {
+            "Food", "Groceries", "Transport", "Shopping", "Entertainment", "Housing", "Utilities"};
+
+    @Param({"15", "1000", "10000"})
+    private int ruleCount;
+
+    private Map<String, String> keywordMap;
+    private KeywordMatcher matcher;
+    private String[] descriptions;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(7);
+        Set<String> keywords = new LinkedHashSet<>(List.of(BUILT_IN));
+        while (keywords.size() < ruleCount) {
+            keywords.add(merchant(random));
+        }
+
+        keywordMap = new HashMap<>();
+        List<Rule> rules = new ArrayList<>();
+        for (String keyword : keywords) {
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            keywordMap.put(keyword, category);
+            rules.add(new Rule(keyword, category, 0));
+        }
+        matcher = KeywordMatcher.compile(rules);
+
+        List<String> pool = new ArrayList<>(keywords);
+        descriptions = new String[1024];
+        for (int i = 0; i < descriptions.length; i++) {
+            String merchant = (i % 2 == 0) ? pool.get(random.nextInt(pool.size())).toUpperCase() : "XQ" + random.nextInt(100_000);
+            descriptions[i] = "POS 4411 " + merchant + " BLR IN " + (10_000 + random.nextInt(90_000));
+        }
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        String lower = nextDescription().toLowerCase();
+        String category = null;
+        for (Map.Entry<String, String> entry : keywordMap.entrySet()) {
+            if (lower.contains(entry.getKey())) {
+                category = entry.getValue();
+                break;
+            }
+        }
+        blackhole.consume(category);
+    }
+
+    @Benchmark
+    public void compiledMatcher(Blackhole blackhole) {
+        blackhole.consume(matcher.match(nextDescription()));
+    }
+
+    private String nextDescription() {
+        return descriptions[next++ & (descriptions.length - 1)];
+    }
+
+    private static String merchant(Random random) {
+        StringBuilder name = new StringBuilder();
+        int length = 5 + random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            name.append((char) ('a' + random.nextInt(26)));
+        }
+        return name.toString();
+    }
+}
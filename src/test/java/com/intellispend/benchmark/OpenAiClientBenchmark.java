@@ -0,0 +1,92 @@
+package com.intellispend.benchmark;
+
+import com.intellispend.dto.external.OpenAiResponse;
+import com.intellispend.service.AiCallGuard;
+import com.intellispend.service.OpenAiClient;
+import com.intellispend.support.StubOpenAiServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One chat completion call at 50 concurrent callers against a local stub with a fixed latency:
+ * {@code urlConnection} is the previous {@code HttpURLConnection} transport (at most 5 idle
+ * connections kept per host, so most calls open a new one), {@code pooled} is {@link OpenAiClient}
+ * with its pooled connections. With {@code tls} the stub serves HTTPS, so a new connection also
+ * costs a TLS handshake as it would against the real API. Connections the stub saw are printed
+ * once per trial ("connections: ...").
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(50)
+@Fork(1)
+public class OpenAiClientBenchmark {
+
+    @Param({"false", "true"})
+    private boolean tls;
+
+    @Param({"20"})
+    private int latencyMillis;
+
+    private StubOpenAiServer stub;
+    private OpenAiClient pooledClient;
+    private RestTemplate urlConnectionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (tls) {
+            // Before anything creates an SSL socket factory; each trial runs in its own fork
+            SSLContext.setDefault(StubOpenAiServer.sslContext());
+        }
+        stub = tls ? StubOpenAiServer.withTls() : new StubOpenAiServer();
+        stub.respondWith(request -> StubOpenAiServer.Reply.ok("Food").delayedBy(Duration.ofMillis(latencyMillis)));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AiCallGuard aiCallGuard = new AiCallGuard(50, Duration.ofSeconds(1), 50, 20, 10,
+                Duration.ofSeconds(30), 3, meterRegistry, event -> { });
+        pooledClient = new OpenAiClient(new RestTemplateBuilder(), "bench-key", stub.url(),
+                Duration.ofSeconds(5), Duration.ofSeconds(30), 50, 1, Duration.ZERO, meterRegistry, aiCallGuard);
+
+        SimpleClientHttpRequestFactory urlConnection = new SimpleClientHttpRequestFactory();
+        urlConnection.setConnectTimeout(Duration.ofSeconds(5));
+        urlConnection.setReadTimeout(Duration.ofSeconds(30));
+        urlConnectionTemplate = new RestTemplate(urlConnection);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("connections: " + stub.connectionCount() + " for " + stub.requestCount() + " requests");
+        stub.close();
+    }
+
+    @Benchmark
+    public String urlConnection() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth("bench-key");
+        Map<String, Object> body = Map.of("model", "gpt-3.5-turbo", "messages", List.of(
+                Map.of("role", "system", "content", "system"),
+                Map.of("role", "user", "content", "Coffee at the station")));
+        OpenAiResponse response = urlConnectionTemplate.postForObject(stub.url(), new HttpEntity<>(body, headers), OpenAiResponse.class);
+        return response.getChoices().get(0).getMessage().getContent();
+    }
+
+    @Benchmark
+    public String pooled() {
+        return pooledClient.complete("system", "Coffee at the station", Duration.ofSeconds(30));
+    }
+}
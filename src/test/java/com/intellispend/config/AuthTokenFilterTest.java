@@ -0,0 +1,115 @@
+package com.intellispend.config;
+
+import com.intellispend.entity.ERole;
+import com.intellispend.entity.Role;
+import com.intellispend.entity.User;
+import com.intellispend.service.PrincipalCache;
+import com.intellispend.service.UserDetailsImpl;
+import com.intellispend.service.UserDetailsServiceImpl;
+import com.intellispend.util.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AuthTokenFilterTest {
+    private static final String SECRET = "test_secret_that_is_at_least_32_characters_long";
+
+    private final JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+    private final PrincipalCache principalCache = new PrincipalCache(100, Duration.ofMinutes(1), 60_000, new SimpleMeterRegistry());
+    private final UserDetailsServiceImpl userDetailsService = mock(UserDetailsServiceImpl.class);
+    private final UserDetailsImpl alice = UserDetailsImpl.build(User.builder()
+            .id(7L).username("alice").email("alice@example.com").password("secret")
+            .roles(Set.of(new Role(1, ERole.ROLE_USER)))
+            .build());
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void statelessModeAuthenticatesFromTokenClaimsAlone() throws Exception {
+        String token = jwtUtil.generateJwtToken(new UsernamePasswordAuthenticationToken(alice, null, alice.getAuthorities()));
+
+        Authentication authentication = authenticate(filter(true), token);
+
+        UserDetailsImpl principal = (UserDetailsImpl) authentication.getPrincipal();
+        assertEquals(7L, principal.getId());
+        assertEquals("alice", principal.getUsername());
+        assertEquals(List.of("ROLE_USER"), authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        verify(userDetailsService, never()).loadUserByUsername(anyString());
+    }
+
+    @Test
+    void databaseModeLoadsEachUserOnceWithinTheTtl() throws Exception {
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(alice);
+        String token = jwtUtil.generateJwtToken(new UsernamePasswordAuthenticationToken(alice, null, alice.getAuthorities()));
+        AuthTokenFilter filter = filter(false);
+
+        assertEquals(alice, authenticate(filter, token).getPrincipal());
+        assertEquals(alice, authenticate(filter, token).getPrincipal());
+
+        verify(userDetailsService, times(1)).loadUserByUsername("alice");
+    }
+
+    @Test
+    void tokensWithoutUserClaimsFallBackToLoadingTheUser() throws Exception {
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(alice);
+        String legacyToken = Jwts.builder()
+                .setSubject("alice")
+                .setExpiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+
+        assertEquals(alice, authenticate(filter(true), legacyToken).getPrincipal());
+    }
+
+    @Test
+    void revokedUsersAreRejectedInBothModes() throws Exception {
+        when(userDetailsService.loadUserByUsername("alice")).thenReturn(alice);
+        String token = jwtUtil.generateJwtToken(new UsernamePasswordAuthenticationToken(alice, null, alice.getAuthorities()));
+        assertNotNull(authenticate(filter(true), token));
+
+        principalCache.revoke(7L, "alice");
+
+        assertNull(authenticate(filter(true), token));
+        assertNull(authenticate(filter(false), token));
+    }
+
+    private AuthTokenFilter filter(boolean stateless) {
+        return new AuthTokenFilter(jwtUtil, userDetailsService, principalCache, stateless);
+    }
+
+    private static Authentication authenticate(AuthTokenFilter filter, String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/expenses");
+        request.addHeader("Authorization", "Bearer " + token);
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+        });
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+}
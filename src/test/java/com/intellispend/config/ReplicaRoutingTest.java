@@ -0,0 +1,220 @@
+package com.intellispend.config;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.intellispend.dto.ExpenseRequest;
+import com.intellispend.dto.ExpenseResponse;
+import com.intellispend.entity.Expense;
+import com.intellispend.entity.User;
+import com.intellispend.repository.FxRateRepository;
+import com.intellispend.service.BudgetService;
+import com.intellispend.service.CategorizationService;
+import com.intellispend.service.ExpenseChangedEvent;
+import com.intellispend.service.ExpenseService;
+import com.intellispend.service.FxRateService;
+import com.intellispend.service.MonthlySnapshotService;
+import com.intellispend.service.SpendLedgerService;
+import com.intellispend.service.UserDetailsImpl;
+import com.intellispend.support.PostgresTestDatabase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Routing against two PostgreSQL instances standing in for a primary and a lagging replica: both
+ * hold the same user, but the replica is missing the user's latest expense, so each total shows
+ * which database answered.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ReplicaDataSourceConfig.class, ExpenseService.class, BudgetService.class, SpendLedgerService.class,
+        MonthlySnapshotService.class, FxRateService.class, FxRateRepository.class, ReplicaRoutingTest.Config.class})
+public class ReplicaRoutingTest {
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+
+    private static PostgresTestDatabase primary;
+    private static PostgresTestDatabase replica;
+
+    @TestConfiguration
+    @EntityScan(basePackageClasses = Expense.class)
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @DynamicPropertySource
+    static void databases(DynamicPropertyRegistry registry) {
+        primary = PostgresTestDatabase.startMigrated();
+        replica = PostgresTestDatabase.startMigrated();
+        // -Dtest.jdbc.url gives both the same database, which cannot show where a read went
+        Assumptions.assumeFalse(primary.getJdbcUrl().equals(replica.getJdbcUrl()),
+                "Replica routing needs two databases");
+        registry.add("spring.datasource.url", primary::getJdbcUrl);
+        registry.add("spring.datasource.username", primary::getUsername);
+        registry.add("spring.datasource.password", primary::getPassword);
+        registry.add("replica.url", replica::getJdbcUrl);
+        registry.add("replica.username", replica::getUsername);
+        registry.add("replica.password", replica::getPassword);
+    }
+
+    @AfterAll
+    static void stopDatabases() throws Exception {
+        for (PostgresTestDatabase database : new PostgresTestDatabase[]{primary, replica}) {
+            if (database != null) {
+                database.close();
+            }
+        }
+    }
+
+    @MockBean
+    private CategorizationService categorizationService;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private MonthlySnapshotService monthlySnapshotService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private UserDetailsImpl user;
+
+    @BeforeEach
+    void setUp() {
+        for (PostgresTestDatabase database : List.of(primary, replica)) {
+            JdbcTemplate jdbc = new JdbcTemplate(database.getDataSource());
+            jdbc.update("TRUNCATE users, expenses, monthly_category_spend CASCADE");
+            jdbc.update("INSERT INTO users (id, username, email, password) VALUES (1, 'routed', 'routed@test.local', 'x')");
+            jdbc.update("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                    "VALUES (70, 'Food', 'Replicated', DATE '2024-03-01', 'Card', 'USD', false, 1)");
+        }
+        new JdbcTemplate(primary.getDataSource()).update("INSERT INTO expenses " +
+                "(amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                "VALUES (30, 'Food', 'Not yet replicated', DATE '2024-03-02', 'Card', 'USD', false, 1)");
+        user = new UserDetailsImpl(1L, "routed", "routed@test.local", null, List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactionsReadTheReplica() {
+        double routed = routed("read-only");
+
+        assertEquals(new BigDecimal("70.00"), monthTotal());
+        assertEquals(routed + 1, routed("read-only"));
+    }
+
+    @Test
+    void expenseListingsReadTheReplica() {
+        double routed = routed("read-only");
+
+        assertEquals(List.of("Replicated"), expenseService.getAllExpenses(user).stream()
+                .map(ExpenseResponse::getDescription).toList());
+        assertEquals(routed + 1, routed("read-only"));
+    }
+
+    @Test
+    void readOnlyWorkInsideAWriteTransactionStaysOnThePrimary() {
+        BigDecimal total = new TransactionTemplate(transactionManager).execute(status -> monthTotal());
+
+        assertEquals(new BigDecimal("100.00"), total);
+    }
+
+    @Test
+    void writersReadTheirOwnWritesFromThePrimary() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+        assertEquals(new BigDecimal("70.00"), monthTotal());
+        double routed = routed("recent-write");
+
+        expenseService.createExpense(request("5.00"), user);
+
+        assertEquals(new BigDecimal("105.00"), monthTotal());
+        assertEquals(routed + 1, routed("recent-write"));
+
+        // Another user's reads are unaffected
+        UserDetailsImpl other = new UserDetailsImpl(2L, "other", "other@test.local", null, List.of());
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(other, null, other.getAuthorities()));
+        assertEquals(new BigDecimal("70.00"), monthTotal());
+    }
+
+    @Test
+    void writesOnlyPinReadsForTheLagTolerance() {
+        AtomicLong nanos = new AtomicLong();
+        Ticker ticker = nanos::get;
+        RecentWriters recentWriters = new RecentWriters(Duration.ofSeconds(5), ticker);
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+        recentWriters.onExpenseChanged(ExpenseChangedEvent.of(1L, List.of(LocalDate.of(2024, 3, 5))));
+        nanos.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertTrue(recentWriters.currentUserWroteRecently());
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertFalse(recentWriters.currentUserWroteRecently());
+    }
+
+    private BigDecimal monthTotal() {
+        return monthlySnapshotService.snapshot(entityManager.getReference(User.class, 1L), MONTH).getTotalSpending();
+    }
+
+    private double routed(String reason) {
+        return meterRegistry.get("datasource.route").tag("reason", reason).counter().count();
+    }
+
+    private static ExpenseRequest request(String amount) {
+        ExpenseRequest request = new ExpenseRequest();
+        request.setAmount(new BigDecimal(amount));
+        request.setCategory("Food");
+        request.setDescription("Coffee");
+        request.setDate(LocalDate.of(2024, 3, 5));
+        request.setPaymentMethod("Card");
+        return request;
+    }
+}
@@ -0,0 +1,152 @@
+package com.intellispend.repository;
+
+import com.intellispend.support.PostgresTestDatabase;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Guards the indexes from V3 and V4 against regressions: each statement mirrors the SQL Hibernate
+ * generates for a repository method and must be answered by an index rather than a sequential scan.
+ */
+public class ExpenseQueryPlanTest {
+
+    private static PostgresTestDatabase database;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        database = PostgresTestDatabase.startMigrated();
+        try (Connection connection = database.getDataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO users (username, email, password) " +
+                    "SELECT 'user' || u, 'user' || u || '@test.local', 'x' FROM generate_series(1, 200) u");
+            statement.execute("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                    "SELECT (g % 500) + 1, (ARRAY['Food','Groceries','Transport','Shopping','Housing','Utilities'])[1 + g % 6], " +
+                    "'Expense ' || g, DATE '2021-01-01' + (g % 1095), 'Card', 'USD', g % 50 = 0, u.id " +
+                    "FROM users u CROSS JOIN generate_series(1, 500) g");
+            // One heavy user whose history is large enough that description search needs its own index
+            statement.execute("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                    "SELECT (g % 500) + 1, 'Food', " +
+                    "CASE WHEN g % 997 = 0 THEN 'Blue Bottle Coffee #' || g ELSE 'Card purchase ' || g END, " +
+                    "DATE '2021-01-01' + (g % 1095), 'Card', 'USD', false, 1 " +
+                    "FROM generate_series(1, 100000) g");
+            statement.execute("INSERT INTO budgets (category, amount, month, user_id) " +
+                    "SELECT c, 100, to_char(DATE '2021-01-01' + (m || ' month')::interval, 'YYYY-MM'), u.id " +
+                    "FROM users u CROSS JOIN generate_series(0, 35) m " +
+                    "CROSS JOIN unnest(ARRAY['Food','Groceries','Transport','Shopping','Housing','Utilities']) c");
+            statement.execute("INSERT INTO insights (month, summary, user_id) " +
+                    "SELECT to_char(DATE '2021-01-01' + (m || ' month')::interval, 'YYYY-MM'), 'summary', u.id " +
+                    "FROM users u CROSS JOIN generate_series(0, 35) m");
+            statement.execute("ANALYZE");
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    @Test
+    void monthlyAggregateUsesUserDateIndex() throws SQLException {
+        String plan = explain("SELECT e.category, sum(e.amount) FROM expenses e " +
+                "WHERE e.user_id = 42 AND e.date BETWEEN '2022-06-01' AND '2022-06-30' AND (e.is_deleted = false) " +
+                "GROUP BY e.category");
+        assertIndexScan(plan, "idx_expenses_user_");
+    }
+
+    @Test
+    void categoryFilterUsesUserCategoryDateIndex() throws SQLException {
+        String plan = explain("SELECT e.* FROM expenses e " +
+                "WHERE e.user_id = 42 AND e.category = 'Food' AND e.date >= '2022-01-01' AND e.date <= '2022-12-31' " +
+                "AND (e.is_deleted = false) ORDER BY e.date DESC OFFSET 0 ROWS FETCH FIRST 10 ROWS ONLY");
+        assertIndexScan(plan, "idx_expenses_user_category_date");
+    }
+
+    @Test
+    void paginatedListingUsesUserDateIndex() throws SQLException {
+        String plan = explain("SELECT e.* FROM expenses e WHERE e.user_id = 42 AND (e.is_deleted = false) " +
+                "ORDER BY e.date DESC OFFSET 0 ROWS FETCH FIRST 10 ROWS ONLY");
+        assertIndexScan(plan, "idx_expenses_user_date");
+    }
+
+    @Test
+    void keysetPageSeeksIntoUserDateIndex() throws SQLException {
+        String plan = explain("SELECT e.* FROM expenses e WHERE e.user_id = 1 AND (e.is_deleted = false) " +
+                "AND e.date <= '2021-06-15' AND (e.date < '2021-06-15' OR e.id < 50000) " +
+                "ORDER BY e.date DESC, e.id DESC FETCH FIRST 11 ROWS ONLY");
+        assertIndexScan(plan, "idx_expenses_user_date");
+        assertTrue(plan.contains("date <= '2021-06-15'::date"), () -> "Expected a date range index condition:\n" + plan);
+    }
+
+    @Test
+    void findAllByUserUsesIndex() throws SQLException {
+        String plan = explain("SELECT e.* FROM expenses e WHERE e.user_id = 42 AND (e.is_deleted = false)");
+        assertIndexScan(plan, "idx_expenses_user_");
+    }
+
+    @Test
+    void budgetLookupUsesUniqueKey() throws SQLException {
+        String plan = explain("SELECT b.* FROM budgets b " +
+                "WHERE b.user_id = 42 AND b.category = 'Food' AND b.month = '2022-06'");
+        assertIndexScan(plan, "uk_budgets_user_category_month");
+    }
+
+    @Test
+    void insightLookupUsesUniqueKey() throws SQLException {
+        String plan = explain("SELECT i.* FROM insights i WHERE i.user_id = 42 AND i.month = '2022-06'");
+        assertIndexScan(plan, "uk_insights_user_month");
+    }
+
+    @Test
+    void substringDescriptionFilterUsesTrigramIndex() throws SQLException {
+        String plan = explain("SELECT e.* FROM expenses e " +
+                "WHERE e.user_id = 1 AND lower(e.description) LIKE '%bottle%' ESCAPE '\\' AND (e.is_deleted = false)");
+        assertIndexScan(plan, "idx_expenses_description_trgm");
+    }
+
+    @Test
+    void wordDescriptionFilterUsesFullTextIndex() throws SQLException {
+        String plan = explain("SELECT e.* FROM expenses e WHERE e.user_id = 1 " +
+                "AND (to_tsvector('simple', coalesce(e.description, '')) @@ to_tsquery('simple', 'bottle:*')) " +
+                "AND (e.is_deleted = false)");
+        assertIndexScan(plan, "idx_expenses_description_fts");
+    }
+
+    @Test
+    void rankedSearchUsesBothDescriptionIndexes() throws SQLException {
+        String plan = explain("SELECT e.* FROM expenses e WHERE e.user_id = 1 AND e.is_deleted = false " +
+                "AND (to_tsvector('simple', coalesce(e.description, '')) @@ to_tsquery('simple', 'bottle:*') " +
+                "     OR lower(e.description) LIKE '%bottle%' ESCAPE '\\') " +
+                "ORDER BY ts_rank(to_tsvector('simple', coalesce(e.description, '')), to_tsquery('simple', 'bottle:*')) DESC " +
+                "LIMIT 20");
+        assertIndexScan(plan, "idx_expenses_description_fts");
+        assertIndexScan(plan, "idx_expenses_description_trgm");
+    }
+
+    private static void assertIndexScan(String plan, String indexName) {
+        assertTrue(plan.contains(indexName), () -> "Expected index " + indexName + " in plan:\n" + plan);
+        assertFalse(plan.contains("Seq Scan"), () -> "Unexpected sequential scan in plan:\n" + plan);
+    }
+
+    private static String explain(String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (Connection connection = database.getDataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("EXPLAIN " + sql)) {
+            while (rs.next()) {
+                plan.append(rs.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+}
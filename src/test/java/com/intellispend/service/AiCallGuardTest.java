@@ -0,0 +1,172 @@
+package com.intellispend.service;
+
+import com.intellispend.exception.OpenAiUnavailableException;
+import com.intellispend.support.StubOpenAiServer;
+import com.intellispend.support.StubOpenAiServer.Reply;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AiCallGuardTest {
+    private static final int WINDOW = 4;
+    private static final int HALF_OPEN_CALLS = 2;
+    private static final Duration OPEN_DURATION = Duration.ofMillis(300);
+    private static final Duration DEADLINE = Duration.ofSeconds(10);
+
+    private StubOpenAiServer stub;
+    private SimpleMeterRegistry meterRegistry;
+    private List<OpenAiRecoveredEvent> recovered;
+    private OpenAiClient openAiClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubOpenAiServer();
+        meterRegistry = new SimpleMeterRegistry();
+        recovered = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openAiClient.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void serverErrorsOpenTheCircuitAndCallsFailFast() {
+        AiCallGuard guard = guard(10, Duration.ofSeconds(1));
+        stub.respondWith(request -> new Reply(503, "{}", Duration.ZERO));
+
+        for (int i = 0; i < WINDOW; i++) {
+            assertThrows(HttpServerErrorException.class, () -> openAiClient.complete("system", "user", DEADLINE));
+        }
+
+        assertEquals(AiCallGuard.State.OPEN, guard.getState());
+        assertFalse(openAiClient.isAvailable());
+        assertThrows(OpenAiUnavailableException.class, () -> openAiClient.complete("system", "user", DEADLINE));
+        assertEquals(WINDOW, stub.requestCount());
+        assertEquals(1, transitions("closed", "open"));
+        assertEquals(1, rejected("circuit-open"));
+        assertEquals(1, meterRegistry.get("openai.circuit.state").tag("state", "open").gauge().value());
+    }
+
+    @Test
+    void successfulTrialCallsCloseTheCircuit() throws Exception {
+        AiCallGuard guard = guard(10, Duration.ofSeconds(1));
+        openCircuit();
+
+        stub.respondWith(request -> Reply.ok("Back."));
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+        assertTrue(openAiClient.isAvailable());
+        for (int i = 0; i < HALF_OPEN_CALLS; i++) {
+            assertEquals("Back.", openAiClient.complete("system", "user", DEADLINE));
+        }
+
+        assertEquals(AiCallGuard.State.CLOSED, guard.getState());
+        assertEquals(1, transitions("open", "half-open"));
+        assertEquals(1, transitions("half-open", "closed"));
+        assertEquals(1, recovered.size());
+        assertTrue(recovered.get(0).downtime().compareTo(OPEN_DURATION) >= 0);
+    }
+
+    @Test
+    void failedTrialCallOpensTheCircuitAgain() throws Exception {
+        AiCallGuard guard = guard(10, Duration.ofSeconds(1));
+        openCircuit();
+
+        Thread.sleep(OPEN_DURATION.toMillis() + 50);
+        assertThrows(HttpServerErrorException.class, () -> openAiClient.complete("system", "user", DEADLINE));
+
+        assertEquals(AiCallGuard.State.OPEN, guard.getState());
+        assertEquals(1, transitions("half-open", "open"));
+        assertThrows(OpenAiUnavailableException.class, () -> openAiClient.complete("system", "user", DEADLINE));
+        assertTrue(recovered.isEmpty());
+    }
+
+    @Test
+    void clientErrorsDoNotOpenTheCircuit() {
+        AiCallGuard guard = guard(10, Duration.ofSeconds(1));
+        stub.respondWith(request -> new Reply(400, "{}", Duration.ZERO));
+
+        for (int i = 0; i < WINDOW * 2; i++) {
+            assertThrows(HttpClientErrorException.BadRequest.class, () -> openAiClient.complete("system", "user", DEADLINE));
+        }
+
+        assertEquals(AiCallGuard.State.CLOSED, guard.getState());
+    }
+
+    @Test
+    void fullBulkheadTurnsCallersAwayWithoutOpeningTheCircuit() throws Exception {
+        AiCallGuard guard = guard(2, Duration.ofMillis(50));
+        stub.respondWith(request -> Reply.ok("Slow.").delayedBy(Duration.ofMillis(500)));
+
+        ExecutorService callers = Executors.newFixedThreadPool(5);
+        int succeeded = 0;
+        int turnedAway = 0;
+        try {
+            List<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                replies.add(callers.submit(() -> openAiClient.complete("system", "user", DEADLINE)));
+            }
+            for (Future<String> reply : replies) {
+                try {
+                    assertEquals("Slow.", reply.get());
+                    succeeded++;
+                } catch (ExecutionException e) {
+                    assertInstanceOf(OpenAiUnavailableException.class, e.getCause());
+                    turnedAway++;
+                }
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertEquals(2, succeeded);
+        assertEquals(3, turnedAway);
+        assertEquals(2, stub.requestCount());
+        assertEquals(3, rejected("bulkhead-full"));
+        assertEquals(0, meterRegistry.get("openai.bulkhead.active").gauge().value());
+        assertEquals(AiCallGuard.State.CLOSED, guard.getState());
+    }
+
+    private AiCallGuard guard(int maxConcurrentCalls, Duration maxWait) {
+        AiCallGuard guard = new AiCallGuard(maxConcurrentCalls, maxWait, 50, WINDOW, WINDOW,
+                OPEN_DURATION, HALF_OPEN_CALLS, meterRegistry, event -> recovered.add((OpenAiRecoveredEvent) event));
+        openAiClient = new OpenAiClient(new RestTemplateBuilder(), "test-key", stub.url(),
+                Duration.ofSeconds(1), Duration.ofSeconds(5), 10, 1, Duration.ZERO, meterRegistry, guard);
+        return guard;
+    }
+
+    private void openCircuit() {
+        stub.respondWith(request -> new Reply(503, "{}", Duration.ZERO));
+        for (int i = 0; i < WINDOW; i++) {
+            assertThrows(HttpServerErrorException.class, () -> openAiClient.complete("system", "user", DEADLINE));
+        }
+    }
+
+    private double transitions(String from, String to) {
+        return meterRegistry.get("openai.circuit.transitions").tag("from", from).tag("to", to).counter().count();
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("openai.calls.rejected").tag("reason", reason).counter().count();
+    }
+}
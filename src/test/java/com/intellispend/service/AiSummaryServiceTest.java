@@ -0,0 +1,272 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.AiSummaryStatus;
+import com.intellispend.dto.InsightResponse;
+import com.intellispend.dto.MonthlySnapshot;
+import com.intellispend.entity.Insight;
+import com.intellispend.entity.User;
+import com.intellispend.repository.InsightRepository;
+import com.intellispend.support.StubOpenAiServer;
+import com.intellispend.support.StubOpenAiServer.Reply;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class AiSummaryServiceTest {
+    private static final Duration READ_TIMEOUT = Duration.ofMillis(300);
+    private static final Duration CIRCUIT_OPEN = Duration.ofMillis(300);
+
+    @Mock
+    private InsightRepository insightRepository;
+
+    private StubOpenAiServer stub;
+    private OpenAiClient openAiClient;
+    private InsightCache insightCache;
+    private AiSummaryService aiSummaryService;
+    private MonthlySnapshot snapshot;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubOpenAiServer();
+        // Opens after two failed calls in a row
+        AiCallGuard aiCallGuard = new AiCallGuard(10, Duration.ofSeconds(1), 100, 2, 2,
+                CIRCUIT_OPEN, 1, new SimpleMeterRegistry(), event -> { });
+        openAiClient = new OpenAiClient(new RestTemplateBuilder(), "test-key", stub.url(),
+                Duration.ofSeconds(1), READ_TIMEOUT, 10, 1, Duration.ZERO, new SimpleMeterRegistry(), aiCallGuard);
+        insightCache = new InsightCache(100, Duration.ofMinutes(5), Duration.ofSeconds(15), new SimpleMeterRegistry());
+        aiSummaryService = new AiSummaryService(openAiClient, insightRepository, insightCache,
+                2, 10, Duration.ofSeconds(5), Duration.ofMinutes(10));
+
+        User user = User.builder().id(1L).username("testuser").build();
+        snapshot = MonthlySnapshot.builder()
+                .user(user)
+                .month(YearMonth.of(2024, 1))
+                .categoryTotals(Map.of("Food", new BigDecimal("120.00")))
+                .totalSpending(new BigDecimal("120.00"))
+                .previousMonthTotal(new BigDecimal("100.00"))
+                .monthOverMonthPercentage(20.0)
+                .build();
+        lenient().when(insightRepository.findByUserAndMonth(user, snapshot.getMonth())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiSummaryService.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void returnsPendingWithoutWaitingForUpstream() {
+        stub.respondWith(request -> Reply.ok("Spending rose 20%.").delayedBy(Duration.ofMillis(200)));
+
+        long started = System.nanoTime();
+        AiSummaryService.Summary summary = aiSummaryService.summaryFor(snapshot);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertEquals(AiSummaryStatus.PENDING, summary.status());
+        assertNull(summary.text());
+        assertTrue(elapsedMillis < 150, "summaryFor blocked for " + elapsedMillis + " ms");
+
+        ArgumentCaptor<Insight> saved = ArgumentCaptor.forClass(Insight.class);
+        verify(insightRepository, timeout(2000)).save(saved.capture());
+        assertEquals("Spending rose 20%.", saved.getValue().getSummary());
+    }
+
+    @Test
+    void startsOneGenerationPerUserAndMonth() {
+        stub.respondWith(request -> Reply.ok("Once.").delayedBy(Duration.ofMillis(100)));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(AiSummaryStatus.PENDING, aiSummaryService.summaryFor(snapshot).status());
+        }
+
+        verify(insightRepository, timeout(2000)).save(any());
+        assertEquals(1, stub.requestCount());
+    }
+
+    @Test
+    void slowUpstreamIsCutOffAndReportedAsFailed() {
+        stub.respondWith(request -> Reply.ok("Too late.").delayedBy(READ_TIMEOUT.multipliedBy(5)));
+
+        assertEquals(AiSummaryStatus.PENDING, aiSummaryService.summaryFor(snapshot).status());
+
+        verify(insightRepository, after(READ_TIMEOUT.multipliedBy(3).toMillis()).never()).save(any());
+        AiSummaryService.Summary summary = aiSummaryService.summaryFor(snapshot);
+        assertEquals(AiSummaryStatus.FAILED, summary.status());
+        assertEquals(AiSummaryService.GENERATION_FAILED, summary.text());
+        assertEquals(1, stub.requestCount());
+    }
+
+    @Test
+    void awaitSummaryWaitsForTheGeneration() {
+        stub.respondWith(request -> Reply.ok("Worth the wait.").delayedBy(Duration.ofMillis(100)));
+
+        AiSummaryService.Summary summary = aiSummaryService.awaitSummary(snapshot, Duration.ofSeconds(2));
+
+        assertEquals(AiSummaryStatus.READY, summary.status());
+        assertEquals("Worth the wait.", summary.text());
+        assertTrue(summary.isSettled());
+        assertEquals(1, stub.requestCount());
+    }
+
+    @Test
+    void awaitSummaryGivesUpAfterMaxWait() {
+        stub.respondWith(request -> Reply.ok("Too late.").delayedBy(Duration.ofMillis(250)));
+
+        AiSummaryService.Summary summary = aiSummaryService.awaitSummary(snapshot, Duration.ofMillis(50));
+
+        assertEquals(AiSummaryStatus.PENDING, summary.status());
+        assertFalse(summary.isSettled());
+    }
+
+    @Test
+    void summaryThatCouldNotBeQueuedIsNotCachedAsPending() {
+        stub.respondWith(request -> Reply.ok("Slow.").delayedBy(Duration.ofMillis(500)));
+        // One generation running and one queued; the third month is turned away
+        AiSummaryService oneAtATime = new AiSummaryService(openAiClient, insightRepository, insightCache,
+                1, 1, Duration.ofSeconds(5), Duration.ofMinutes(10));
+        AtomicInteger loads = new AtomicInteger();
+        try {
+            for (int month = 1; month <= 3; month++) {
+                assertEquals(AiSummaryStatus.PENDING, insights(oneAtATime, YearMonth.of(2024, month), loads).getAiSummaryStatus());
+            }
+            assertEquals(3, loads.get());
+
+            insights(oneAtATime, YearMonth.of(2024, 2), loads);
+            assertEquals(3, loads.get());
+            insights(oneAtATime, YearMonth.of(2024, 3), loads);
+            assertEquals(4, loads.get());
+        } finally {
+            oneAtATime.shutdown();
+        }
+    }
+
+    @Test
+    void persistedSummaryIsReady() {
+        when(insightRepository.findByUserAndMonth(snapshot.getUser(), snapshot.getMonth()))
+                .thenReturn(Optional.of(Insight.builder().summary("Stored.").build()));
+
+        AiSummaryService.Summary summary = aiSummaryService.summaryFor(snapshot);
+
+        assertEquals(AiSummaryStatus.READY, summary.status());
+        assertEquals("Stored.", summary.text());
+        assertEquals(0, stub.requestCount());
+        verify(insightRepository, never()).save(any());
+    }
+
+    @Test
+    void openCircuitGivesAPlaceholderUntilOpenAiRecovers() throws Exception {
+        stub.respondWith(request -> new Reply(503, "{}", Duration.ZERO));
+        assertThrows(HttpServerErrorException.class, () -> openAiClient.complete("system", "user", Duration.ofSeconds(10)));
+        assertThrows(HttpServerErrorException.class, () -> openAiClient.complete("system", "user", Duration.ofSeconds(10)));
+
+        AiSummaryService.Summary summary = aiSummaryService.summaryFor(snapshot);
+        assertEquals(AiSummaryStatus.UNAVAILABLE, summary.status());
+        assertEquals(AiSummaryService.TEMPORARILY_UNAVAILABLE, summary.text());
+        assertEquals(2, stub.requestCount());
+
+        stub.respondWith(request -> Reply.ok("Back again."));
+        Thread.sleep(CIRCUIT_OPEN.toMillis() + 50);
+
+        assertEquals(AiSummaryStatus.PENDING, aiSummaryService.summaryFor(snapshot).status());
+        ArgumentCaptor<Insight> saved = ArgumentCaptor.forClass(Insight.class);
+        verify(insightRepository, timeout(2000)).save(saved.capture());
+        assertEquals("Back again.", saved.getValue().getSummary());
+    }
+
+    @Test
+    void retriesServerErrorsWithTheConfiguredBackoff() {
+        stub.respondWith(request -> request.number() < 3 ? new Reply(503, "{}", Duration.ZERO) : Reply.ok("Third time lucky."));
+
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.ofEntries(
+                    Map.entry("openai.api.key", "test-key"),
+                    Map.entry("openai.api.url", stub.url()),
+                    Map.entry("openai.api.connect-timeout", "PT1S"),
+                    Map.entry("openai.api.read-timeout", "PT1S"),
+                    Map.entry("openai.api.max-connections", "10"),
+                    Map.entry("openai.api.max-attempts", "3"),
+                    Map.entry("openai.api.retry-delay", "PT0.01S"),
+                    Map.entry("openai.resilience.max-concurrent-calls", "10"),
+                    Map.entry("openai.resilience.max-wait", "PT1S"),
+                    Map.entry("openai.resilience.failure-rate-threshold", "50"),
+                    Map.entry("openai.resilience.sliding-window-size", "20"),
+                    Map.entry("openai.resilience.minimum-calls", "10"),
+                    Map.entry("openai.resilience.open-duration", "PT30S"),
+                    Map.entry("openai.resilience.half-open-calls", "3"))));
+            context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+            context.register(ClientConfig.class, AiCallGuard.class, OpenAiClient.class);
+            context.refresh();
+
+            assertEquals("Third time lucky.", context.getBean(OpenAiClient.class).complete("system", "user", Duration.ofSeconds(10)));
+            assertEquals(3, stub.requestCount());
+        }
+    }
+
+    private InsightResponse insights(AiSummaryService service, YearMonth month, AtomicInteger loads) {
+        MonthlySnapshot monthly = MonthlySnapshot.builder()
+                .user(snapshot.getUser())
+                .month(month)
+                .categoryTotals(snapshot.getCategoryTotals())
+                .totalSpending(snapshot.getTotalSpending())
+                .previousMonthTotal(snapshot.getPreviousMonthTotal())
+                .monthOverMonthPercentage(snapshot.getMonthOverMonthPercentage())
+                .build();
+        return insightCache.get(monthly.getUser().getId(), month, () -> {
+            loads.incrementAndGet();
+            return InsightResponse.builder().aiSummaryStatus(service.summaryFor(monthly).status()).build();
+        });
+    }
+
+    @Configuration
+    static class ClientConfig {
+        @Bean
+        static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        RestTemplateBuilder restTemplateBuilder() {
+            return new RestTemplateBuilder();
+        }
+
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
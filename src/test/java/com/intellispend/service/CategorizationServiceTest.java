@@ -0,0 +1,238 @@
+package com.intellispend.service;
+
+import com.intellispend.entity.CategoryMemo;
+import com.intellispend.repository.ExpenseRepository;
+import com.intellispend.support.FakeCategoryMemoRepository;
+import com.intellispend.support.StubOpenAiServer;
+import com.intellispend.support.StubOpenAiServer.Reply;
+import com.intellispend.support.SyntheticExpenses;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CategorizationServiceTest {
+    private static final int BATCH_SIZE = 50;
+    private static final Long USER_ID = 1L;
+    private static final Long OTHER_USER_ID = 2L;
+
+    private StubOpenAiServer stub;
+    private Map<String, CategoryMemo> memoTable;
+    private final ExpenseRepository expenseRepository = mock(ExpenseRepository.class);
+    private CategoryModelService categoryModelService;
+    private OpenAiClient openAiClient;
+    private CategorizationService categorizationService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubOpenAiServer();
+        stub.respondWith(StubOpenAiServer.batchCategorizer(Duration.ZERO));
+        AiCallGuard aiCallGuard = new AiCallGuard(10, Duration.ofSeconds(1), 50, 20, 10,
+                Duration.ofSeconds(30), 3, new SimpleMeterRegistry(), event -> { });
+        openAiClient = new OpenAiClient(new RestTemplateBuilder(), "test-key", stub.url(),
+                Duration.ofSeconds(1), Duration.ofSeconds(5), 10, 1, Duration.ZERO, new SimpleMeterRegistry(), aiCallGuard);
+        KeywordRuleService keywordRules = new KeywordRuleService(new ClassPathResource("categorization/keyword-rules.csv"));
+        memoTable = new ConcurrentHashMap<>();
+        CategoryMemoService categoryMemoService = new CategoryMemoService(FakeCategoryMemoRepository.backedBy(memoTable),
+                1000, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        categoryModelService = new CategoryModelService(expenseRepository, 10_000, 500, 0.95, new SimpleMeterRegistry());
+        categorizationService = new CategorizationService(openAiClient, categoryMemoService, keywordRules, categoryModelService,
+                BATCH_SIZE, 2, 100, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void tearDown() {
+        categorizationService.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void dedupesAndBatchesUnmatchedDescriptions() {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add("Merchant " + merchantName(i % 120) + " #" + (i % 2 == 0 ? "Health" : "Education"));
+        }
+        rows.add("MERCHANT " + merchantName(0).toUpperCase() + " #HEALTH 0042");
+        rows.add("Uber trip home");
+
+        Map<String, String> categories = categorizationService.categorizeAll(rows, USER_ID);
+
+        // 120 unique merchants after normalisation -> 3 prompts of up to 50
+        assertEquals(3, stub.requestCount());
+        assertEquals("Health", categories.get("Merchant " + merchantName(4) + " #Health"));
+        assertEquals("Education", categories.get("Merchant " + merchantName(7) + " #Education"));
+        assertEquals("Health", categories.get("MERCHANT " + merchantName(0).toUpperCase() + " #HEALTH 0042"));
+        assertEquals("Transport", categories.get("Uber trip home"));
+        assertEquals(122, categories.size());
+    }
+
+    @Test
+    void repeatUploadIsServedFromMemo() {
+        List<String> rows = List.of("STARBUCKS #1234 #Food", "AMZN Mktp US*2K3 #Shopping");
+        categorizationService.categorizeAll(rows, USER_ID);
+        assertEquals(1, stub.requestCount());
+
+        Map<String, String> categories = categorizationService.categorizeAll(
+                List.of("Starbucks 0871 #Food", "AMZN Mktp US*9Z1 #Shopping"), USER_ID);
+
+        assertEquals(1, stub.requestCount());
+        assertEquals("Food", categories.get("Starbucks 0871 #Food"));
+        assertEquals("Shopping", categories.get("AMZN Mktp US*9Z1 #Shopping"));
+        assertEquals(CategoryMemo.SOURCE_AI, memoTable.get("starbucks food").getSource());
+    }
+
+    @Test
+    void userCorrectionOverridesKeywordsAndAi() {
+        categorizationService.recordCorrection("Uber Eats order 5521", "Food", USER_ID);
+
+        assertEquals("Food", categorizationService.categorize("UBER EATS ORDER 9910", USER_ID));
+        assertEquals(Map.of("Uber eats order 1", "Food"), categorizationService.categorizeAll(List.of("Uber eats order 1"), USER_ID));
+        assertEquals(0, stub.requestCount());
+    }
+
+    @Test
+    void userCorrectionDoesNotApplyToOtherUsers() {
+        categorizationService.recordCorrection("Uber Eats order 5521", "Date nights", USER_ID);
+
+        assertEquals("Transport", categorizationService.categorize("UBER EATS ORDER 9910", OTHER_USER_ID));
+        assertEquals(Map.of("Uber eats order 1", "Transport"),
+                categorizationService.categorizeAll(List.of("Uber eats order 1"), OTHER_USER_ID));
+    }
+
+    @Test
+    void unknownOrMissingRepliesFallBackToOther() {
+        stub.respondWith(request -> Reply.ok("1: Crypto\n3: Food."));
+
+        Map<String, String> categories = categorizationService.categorizeAll(List.of("Alpha", "Beta", "Gamma"), USER_ID);
+
+        assertEquals("Other", categories.get("Alpha"));
+        assertEquals("Other", categories.get("Beta"));
+        assertEquals("Food", categories.get("Gamma"));
+        assertEquals(1, memoTable.size());
+    }
+
+    @Test
+    void malformedIndicesAreSkippedLineByLine() {
+        stub.respondWith(request -> Reply.ok("99999999999: Food\n1: Transport\n2: Other"));
+
+        Map<String, String> categories = categorizationService.categorizeAll(List.of("Alpha", "Beta"), USER_ID);
+
+        assertEquals("Transport", categories.get("Alpha"));
+        assertEquals("Other", categories.get("Beta"));
+        assertEquals(1, memoTable.size());
+    }
+
+    @Test
+    void failedBatchFallsBackToOtherAndIsNotMemoised() {
+        stub.respondWith(request -> new Reply(400, "{}", Duration.ZERO));
+
+        Map<String, String> categories = categorizationService.categorizeAll(List.of("Alpha", "Netflix"), USER_ID);
+
+        assertEquals("Other", categories.get("Alpha"));
+        assertEquals("Entertainment", categories.get("Netflix"));
+        assertTrue(memoTable.isEmpty());
+    }
+
+    @Test
+    void openCircuitFallsBackToOtherWithoutCallingOpenAi() {
+        stub.respondWith(request -> new Reply(503, "{}", Duration.ZERO));
+        for (int i = 0; i < 10; i++) {
+            assertThrows(HttpServerErrorException.class, () -> openAiClient.complete("system", "user", Duration.ofSeconds(10)));
+        }
+
+        assertEquals("Other", categorizationService.categorize("Zqxv", USER_ID));
+        Map<String, String> categories = categorizationService.categorizeAll(List.of("Alpha", "Netflix"), USER_ID);
+
+        assertEquals(10, stub.requestCount());
+        assertEquals("Other", categories.get("Alpha"));
+        assertEquals("Entertainment", categories.get("Netflix"));
+        assertTrue(memoTable.isEmpty());
+    }
+
+    @Test
+    void confidentModelPredictionsSkipOpenAi() {
+        when(expenseRepository.findRecentCategorized(any(), any())).thenReturn(List.copyOf(new SyntheticExpenses(5, 0).rows(2000)));
+        categoryModelService.retrain();
+
+        Map<String, String> categories = categorizationService.categorizeAll(
+                List.of("POS BRIGHTSMILE DENTAL CARE HYD 220199", "Zqxv #Education"), USER_ID);
+
+        assertEquals("Health", categories.get("POS BRIGHTSMILE DENTAL CARE HYD 220199"));
+        assertEquals("Education", categories.get("Zqxv #Education"));
+        // Only the description the model is unsure about went to OpenAI
+        assertEquals(1, stub.requestCount());
+        assertEquals("Health", categorizationService.categorize("Apollo pharmacy", USER_ID));
+        assertEquals(1, stub.requestCount());
+    }
+
+    @Test
+    void batchesWaitingForASlotGetTheirWholeTimeout() {
+        stub.respondWith(StubOpenAiServer.batchCategorizer(Duration.ofMillis(250)));
+        CategorizationService oneAtATime = withExecutor(1, 10, Duration.ofMillis(400));
+        try {
+            Map<String, String> categories = oneAtATime.categorizeAll(distinctMerchants(3 * BATCH_SIZE), USER_ID);
+
+            // The third batch starts ~500 ms after submission, past its timeout had it counted from then
+            assertEquals(3, stub.requestCount());
+            assertTrue(categories.values().stream().allMatch("Health"::equals), categories.toString());
+        } finally {
+            oneAtATime.shutdown();
+        }
+    }
+
+    @Test
+    void batchesBeyondTheQueueFallBackToOther() {
+        stub.respondWith(StubOpenAiServer.batchCategorizer(Duration.ofMillis(100)));
+        CategorizationService oneAtATime = withExecutor(1, 1, Duration.ofSeconds(10));
+        try {
+            Map<String, String> categories = oneAtATime.categorizeAll(distinctMerchants(3 * BATCH_SIZE), USER_ID);
+
+            assertEquals(2, stub.requestCount());
+            assertEquals(BATCH_SIZE, categories.values().stream().filter("Other"::equals).count());
+        } finally {
+            oneAtATime.shutdown();
+        }
+    }
+
+    private CategorizationService withExecutor(int concurrency, int queueCapacity, Duration timeout) {
+        CategoryMemoService categoryMemoService = new CategoryMemoService(FakeCategoryMemoRepository.backedBy(memoTable),
+                1000, Duration.ofMinutes(5), new SimpleMeterRegistry());
+        return new CategorizationService(openAiClient, categoryMemoService,
+                new KeywordRuleService(new ClassPathResource("categorization/keyword-rules.csv")), categoryModelService,
+                BATCH_SIZE, concurrency, queueCapacity, timeout);
+    }
+
+    private static List<String> distinctMerchants(int count) {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add("Merchant " + merchantName(i) + " #Health");
+        }
+        return rows;
+    }
+
+    private static String merchantName(int n) {
+        // letters only, so each merchant keeps its own memo key
+        StringBuilder name = new StringBuilder();
+        do {
+            name.append((char) ('a' + n % 26));
+            n /= 26;
+        } while (n > 0);
+        return name.toString();
+    }
+}
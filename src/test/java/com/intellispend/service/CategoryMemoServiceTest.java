@@ -0,0 +1,75 @@
+package com.intellispend.service;
+
+import com.intellispend.entity.CategoryMemo;
+import com.intellispend.support.FakeCategoryMemoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CategoryMemoServiceTest {
+    private static final Long USER_ID = 1L;
+    private static final Long OTHER_USER_ID = 2L;
+
+    private SimpleMeterRegistry meterRegistry;
+    private Map<String, CategoryMemo> memoTable;
+    private CategoryMemoService categoryMemoService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        memoTable = new ConcurrentHashMap<>();
+        categoryMemoService = new CategoryMemoService(FakeCategoryMemoRepository.backedBy(memoTable),
+                1000, Duration.ofMinutes(5), meterRegistry);
+    }
+
+    @Test
+    void normalizeDropsStoreNumbersAndPunctuation() {
+        assertEquals("starbucks", CategoryMemoService.normalize("STARBUCKS #1234"));
+        assertEquals("starbucks", CategoryMemoService.normalize("  Starbucks 0871 "));
+        assertEquals("amzn mktp us", CategoryMemoService.normalize("AMZN Mktp US*2K3LL1"));
+        assertEquals("12345", CategoryMemoService.normalize("12345"));
+        assertEquals("", CategoryMemoService.normalize("  "));
+    }
+
+    @Test
+    void lookupCountsMemoryDbAndMisses() {
+        memoTable.put("starbucks", CategoryMemo.builder().descriptionKey("starbucks").category("Food")
+                .source(CategoryMemo.SOURCE_AI).updatedAt(LocalDateTime.now()).build());
+
+        assertEquals(Map.of("starbucks", "Food"), categoryMemoService.lookup(List.of("starbucks", "unknown"), USER_ID));
+        assertEquals(Map.of("starbucks", "Food"), categoryMemoService.lookup(List.of("starbucks"), USER_ID));
+
+        assertEquals(1.0, meterRegistry.get("category.memo.lookups").tag("result", "db").counter().count());
+        assertEquals(1.0, meterRegistry.get("category.memo.lookups").tag("result", "memory").counter().count());
+        assertEquals(1.0, meterRegistry.get("category.memo.lookups").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void userCorrectionWinsOverAiResult() {
+        categoryMemoService.rememberCorrection("Uber Eats 1", "Food", USER_ID);
+        categoryMemoService.rememberAiResults(Map.of("uber eats", "Transport"));
+
+        assertEquals(Map.of("uber eats", "Food"), categoryMemoService.lookup(List.of("uber eats"), USER_ID));
+        assertEquals(1.0, meterRegistry.get("category.memo.lookups").tag("result", "correction").counter().count());
+        assertEquals(CategoryMemo.SOURCE_USER,
+                memoTable.get(FakeCategoryMemoRepository.correctionKey(USER_ID, "uber eats")).getSource());
+    }
+
+    @Test
+    void userCorrectionIsPrivateAndAiResultIsShared() {
+        categoryMemoService.rememberCorrection("Corner shop 12", "Gifts for mum", USER_ID);
+        categoryMemoService.rememberAiResults(Map.of("corner shop", "Groceries"));
+
+        assertEquals(Map.of("corner shop", "Gifts for mum"), categoryMemoService.lookup(List.of("corner shop"), USER_ID));
+        assertEquals(Map.of("corner shop", "Groceries"), categoryMemoService.lookup(List.of("corner shop"), OTHER_USER_ID));
+        assertEquals(Map.of("corner shop", "Groceries"), categoryMemoService.lookup(List.of("corner shop"), null));
+    }
+}
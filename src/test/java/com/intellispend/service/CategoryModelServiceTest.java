@@ -0,0 +1,61 @@
+package com.intellispend.service;
+
+import com.intellispend.repository.ExpenseRepository;
+import com.intellispend.support.SyntheticExpenses;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CategoryModelServiceTest {
+    private final ExpenseRepository expenseRepository = mock(ExpenseRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CategoryModelService service = new CategoryModelService(expenseRepository, 10_000, 500, 0.95, meterRegistry);
+
+    @Test
+    void staysOffUntilEnoughExpensesAreCategorized() {
+        when(expenseRepository.findRecentCategorized(any(), eq(Limit.of(10_000))))
+                .thenReturn(List.copyOf(new SyntheticExpenses(3, 0).rows(100)));
+
+        service.retrain();
+
+        assertNull(service.predict("POS GREENLEAF PHARMACY PUNE 481516"));
+    }
+
+    @Test
+    void answersConfidentlyAndPublishesHeldOutAccuracy() {
+        when(expenseRepository.findRecentCategorized(any(), eq(Limit.of(10_000))))
+                .thenReturn(List.copyOf(new SyntheticExpenses(3, 0.2).rows(5000)));
+
+        service.retrain();
+
+        assertEquals("Health", service.predict("POS GREENLEAF PHARMACY PUNE 481516"));
+        assertNull(service.predict("XKCD"));
+        assertTrue(meterRegistry.get("categorization.model.accuracy").gauge().value() >= 97);
+        assertTrue(meterRegistry.get("categorization.model.coverage").gauge().value() >= 70);
+        assertEquals(4500, meterRegistry.get("categorization.model.training.rows").gauge().value());
+    }
+
+    @Test
+    void trainsOnlyOnBuiltInCategories() {
+        when(expenseRepository.findRecentCategorized(any(), any())).thenReturn(List.of());
+
+        service.retrain();
+
+        verify(expenseRepository).findRecentCategorized(
+                argThat(categories -> categories.contains("Health") && !categories.contains("Other")
+                        && categories.size() == CategorizationService.CATEGORIES.size() - 1),
+                eq(Limit.of(10_000)));
+    }
+}
@@ -0,0 +1,306 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.ExpenseRequest;
+import com.intellispend.dto.ImportJobResponse;
+import com.intellispend.dto.ImportReport;
+import com.intellispend.dto.ImportRowError;
+import com.intellispend.entity.EImportStatus;
+import com.intellispend.entity.ImportJob;
+import com.intellispend.entity.ImportJobError;
+import com.intellispend.repository.ImportJobErrorRepository;
+import com.intellispend.repository.ImportJobRepository;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ExpenseImportServiceTest {
+    private static final String HEADER = "amount,category,description,date,paymentMethod\n";
+    private static final String NODE = "node-1";
+    private static final UserDetailsImpl USER = new UserDetailsImpl(1L, "testuser", "testuser@example.com", null, List.of());
+
+    private final ExpenseService expenseService = mock(ExpenseService.class);
+    private final FxRateService fxRateService = mock(FxRateService.class);
+    private final ImportJobRepository importJobRepository = mock(ImportJobRepository.class);
+    private final ImportJobErrorRepository importJobErrorRepository = mock(ImportJobErrorRepository.class);
+    private final List<Integer> savedChunkSizes = new CopyOnWriteArrayList<>();
+    private ExpenseImportService importService;
+
+    @BeforeEach
+    void setUp() {
+        importService = service(500, 1000);
+        when(fxRateService.getBaseCurrency()).thenReturn("USD");
+        when(fxRateService.isSupported(any())).thenAnswer(invocation ->
+                invocation.getArgument(0) == null || List.of("USD", "EUR").contains(invocation.getArgument(0)));
+        doAnswer(invocation -> {
+            List<ExpenseRequest> chunk = invocation.getArgument(0);
+            savedChunkSizes.add(chunk.size());
+            return Set.of();
+        }).when(expenseService).importExpenses(anyList(), anyList(), eq(USER));
+    }
+
+    @AfterEach
+    void tearDown() {
+        importService.shutdown();
+    }
+
+    @Test
+    void commitsValidRowsInChunksAndReportsRejectedRows() {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 1203; i++) {
+            csv.append("12.50,Food,Lunch ").append(i).append(",2024-03-01,Card\n");
+            if (i == 10) {
+                csv.append("1O.50,Food,Typo,2024-03-01,Card\n");
+                csv.append("abc,Food,Lunch,2024-03-01,Card\n");
+                csv.append("9.99,Food,Lunch,03/01/2024,Card\n");
+                csv.append("-1,Food,,2024-03-01,Card\n");
+                csv.append("5,Food,Short row\n");
+            }
+        }
+
+        ImportReport report = importService.importCsv(stream(csv.toString()), USER);
+
+        assertEquals(List.of(500, 500, 203), savedChunkSizes);
+        assertEquals(1208, report.getRowsRead());
+        assertEquals(1203, report.getAccepted());
+        assertEquals(5, report.getRejected());
+        assertEquals(List.of(
+                new ImportRowError(13, "Invalid amount '1O.50'"),
+                new ImportRowError(14, "Invalid amount 'abc'"),
+                new ImportRowError(15, "Invalid date '03/01/2024', expected yyyy-MM-dd"),
+                new ImportRowError(16, "Amount must be positive; Description is required"),
+                new ImportRowError(17, "Expected 5 columns, found 3")), report.getErrors());
+        assertFalse(report.isErrorsTruncated());
+    }
+
+    @Test
+    void rowsInCurrenciesWithoutRatesAreRejected() {
+        List<ExpenseRequest> saved = new ArrayList<>();
+        doAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return Set.of();
+        }).when(expenseService).importExpenses(anyList(), anyList(), eq(USER));
+        String csv = "amount,category,description,date,paymentMethod,currency\n" +
+                "12.50,Food,Lunch,2024-03-01,Card,eur\n" +
+                "8.00,Food,Coffee,2024-03-01,Card,\n" +
+                "900,Food,Dinner,2024-03-01,Card,jpy\n";
+
+        ImportReport report = importService.importCsv(stream(csv), USER);
+
+        assertEquals(2, report.getAccepted());
+        assertEquals(List.of(new ImportRowError(4, "Unsupported currency 'JPY'")), report.getErrors());
+        assertEquals("EUR", saved.get(0).getCurrency());
+        assertNull(saved.get(1).getCurrency());
+    }
+
+    @Test
+    void failedChunkRejectsOnlyItsOwnRows() {
+        importService.shutdown();
+        importService = service(2, 1000);
+        doAnswer(invocation -> {
+            List<ExpenseRequest> chunk = invocation.getArgument(0);
+            if (chunk.get(0).getDescription().equals("Row 3")) {
+                throw new IllegalStateException("connection reset");
+            }
+            savedChunkSizes.add(chunk.size());
+            return Set.of();
+        }).when(expenseService).importExpenses(anyList(), anyList(), eq(USER));
+
+        ImportReport report = importService.importCsv(stream(rows(5)), USER);
+
+        assertEquals(List.of(2, 1), savedChunkSizes);
+        assertEquals(3, report.getAccepted());
+        assertEquals(2, report.getRejected());
+        assertEquals(List.of(
+                new ImportRowError(4, "Not saved: connection reset"),
+                new ImportRowError(5, "Not saved: connection reset")), report.getErrors());
+    }
+
+    @Test
+    void reimportSkipsRowsTheUserAlreadyHas() {
+        Set<String> stored = new HashSet<>();
+        doAnswer(invocation -> {
+            List<String> fingerprints = invocation.getArgument(1);
+            Set<String> skipped = new HashSet<>();
+            for (String fingerprint : fingerprints) {
+                if (!stored.add(fingerprint)) {
+                    skipped.add(fingerprint);
+                }
+            }
+            return skipped;
+        }).when(expenseService).importExpenses(anyList(), anyList(), eq(USER));
+        // Two genuinely identical coffees in one statement are both kept
+        String march = HEADER
+                + "4.50,Food,Coffee,2024-03-01,Card\n"
+                + "4.50,Food,Coffee,2024-03-01,Card\n"
+                + "12.00,Food,Lunch,2024-03-02,Card\n";
+        // The next statement overlaps: same rows, reformatted, plus one new row
+        String marchAndApril = HEADER
+                + "4.5,Food,coffee,2024-03-01, card\n"
+                + "4.50,,Coffee,2024-03-01,Card\n"
+                + "12.00,Food,Lunch ,2024-03-02,Card\n"
+                + "4.50,Food,Coffee,2024-03-01,Card\n"
+                + "30.00,Transport,Taxi,2024-04-01,Card\n";
+
+        ImportReport first = importService.importCsv(stream(march), USER);
+        ImportReport second = importService.importCsv(stream(marchAndApril), USER);
+
+        assertEquals(3, first.getAccepted());
+        assertEquals(0, first.getDuplicates());
+        assertEquals(2, second.getAccepted());
+        assertEquals(3, second.getDuplicates());
+        assertEquals(List.of(2L, 3L, 4L), second.getDuplicateLines());
+        assertEquals(0, second.getRejected());
+    }
+
+    @Test
+    void rowsDifferingOnlyInCurrencyAreNotDuplicates() {
+        List<String> fingerprints = new ArrayList<>();
+        doAnswer(invocation -> {
+            fingerprints.addAll(invocation.getArgument(1));
+            return Set.of();
+        }).when(expenseService).importExpenses(anyList(), anyList(), eq(USER));
+        String csv = "amount,category,description,date,paymentMethod,currency\n" +
+                "4.50,Food,Coffee,2024-03-01,Card,\n" +
+                "4.50,Food,Coffee,2024-03-01,Card,EUR\n" +
+                "4.50,Food,Coffee,2024-03-01,Card,usd\n";
+
+        importService.importCsv(stream(csv), USER);
+
+        // A blank currency is the base currency: the first and third rows are the same coffee bought twice
+        assertEquals(fingerprints.get(0).replace("-1", "-2"), fingerprints.get(2));
+        assertNotEquals(fingerprints.get(0).substring(0, 32), fingerprints.get(1).substring(0, 32));
+        assertTrue(fingerprints.get(1).endsWith("-1"));
+    }
+
+    @Test
+    void chunkRacingAnotherImportIsRetried() {
+        doThrow(new DataIntegrityViolationException("duplicate key"))
+                .doReturn(Set.of())
+                .when(expenseService).importExpenses(anyList(), anyList(), eq(USER));
+
+        ImportReport report = importService.importCsv(stream(rows(3)), USER);
+
+        assertEquals(3, report.getAccepted());
+        assertEquals(0, report.getRejected());
+        verify(expenseService, times(2)).importExpenses(anyList(), anyList(), eq(USER));
+    }
+
+    @Test
+    void rejectedRowsBeyondTheLimitAreCountedButNotListed() {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 1500; i++) {
+            csv.append("x,Food,Bad,2024-03-01,Card\n");
+        }
+
+        ImportReport report = importService.importCsv(stream(csv.toString()), USER);
+
+        assertEquals(1500, report.getRejected());
+        assertEquals(1000, report.getErrors().size());
+        assertTrue(report.isErrorsTruncated());
+    }
+
+    @Test
+    void backgroundJobRecordsProgressAndErrors() {
+        importService.shutdown();
+        importService = service(2, 1000);
+        List<ImportJob> savedJobs = new CopyOnWriteArrayList<>();
+        when(importJobRepository.save(any())).thenAnswer(invocation -> {
+            ImportJob job = invocation.getArgument(0);
+            job.setId(7L);
+            savedJobs.add(ImportJob.builder().status(job.getStatus()).accepted(job.getAccepted())
+                    .rejected(job.getRejected()).rowsRead(job.getRowsRead()).build());
+            return job;
+        });
+        List<ImportJobError> savedErrors = new CopyOnWriteArrayList<>();
+        when(importJobErrorRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            savedErrors.addAll(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        MockMultipartFile file = new MockMultipartFile("file", "march.csv", "text/csv",
+                (rows(5) + "oops,Food,Bad,2024-03-01,Card\n").getBytes(StandardCharsets.UTF_8));
+
+        ImportJobResponse response = importService.submit(file, USER);
+
+        assertEquals(7L, response.getId());
+        assertEquals("march.csv", response.getFileName());
+        verify(importJobRepository, timeout(5000).times(6)).save(any());
+        List<EImportStatus> statuses = savedJobs.stream().map(ImportJob::getStatus).toList();
+        // queued, running, two full chunks, final chunk, completed
+        assertEquals(List.of(EImportStatus.QUEUED, EImportStatus.RUNNING, EImportStatus.RUNNING,
+                EImportStatus.RUNNING, EImportStatus.RUNNING, EImportStatus.COMPLETED), statuses);
+        ImportJob completed = savedJobs.get(5);
+        assertEquals(6, completed.getRowsRead());
+        assertEquals(5, completed.getAccepted());
+        assertEquals(1, completed.getRejected());
+        assertEquals(1, savedErrors.size());
+        assertEquals(7, savedErrors.get(0).getLineNumber());
+        assertEquals(7L, savedErrors.get(0).getJobId());
+    }
+
+    @Test
+    void jobsInterruptedByARestartAreFailedAndTheirSpoolDeleted() throws IOException {
+        Path spool = Files.createTempFile("expense-import-", ".csv");
+        ImportJob running = ImportJob.builder().id(3L).status(EImportStatus.RUNNING).node(NODE)
+                .spoolPath(spool.toString()).rowsRead(500).accepted(500).build();
+        when(importJobRepository.findByNodeAndStatusInAndCreatedAtBefore(eq(NODE),
+                eq(List.of(EImportStatus.QUEUED, EImportStatus.RUNNING)), any())).thenReturn(List.of(running));
+
+        importService.failInterruptedJobs();
+
+        verify(importJobRepository).save(running);
+        assertEquals(EImportStatus.FAILED, running.getStatus());
+        assertTrue(running.getMessage().startsWith("Interrupted by a server restart"), running.getMessage());
+        assertNotNull(running.getCompletedAt());
+        assertEquals(500, running.getAccepted());
+        assertFalse(Files.exists(spool));
+    }
+
+    private ExpenseImportService service(int chunkSize, int maxReportedErrors) {
+        CsvService csvService = new CsvService(Validation.buildDefaultValidatorFactory().getValidator());
+        return new ExpenseImportService(csvService, expenseService, fxRateService, importJobRepository,
+                importJobErrorRepository, chunkSize, maxReportedErrors, 1, 1, NODE);
+    }
+
+    private static String rows(int count) {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 1; i <= count; i++) {
+            csv.append("10.00,Food,Row ").append(i).append(",2024-03-01,Card\n");
+        }
+        return csv.toString();
+    }
+
+    private static ByteArrayInputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,6 +2,7 @@ package com.intellispend.service;
 
 import com.intellispend.entity.Expense;
 import com.intellispend.entity.User;
+import com.intellispend.exception.InvalidRequestException;
 import com.intellispend.repository.ExpenseRepository;
 import com.intellispend.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,14 +10,24 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -32,6 +43,18 @@ public class ExpenseServiceTest {
     @Mock
     private BudgetService budgetService;
 
+    @Mock
+    private SpendLedgerService spendLedgerService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private FxRateService fxRateService;
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
     @InjectMocks
     private ExpenseService expenseService;
 
@@ -41,6 +64,7 @@ public class ExpenseServiceTest {
     @BeforeEach
     void setUp() {
         user = User.builder()
+                .id(1L)
                 .username("testuser")
                 .build();
 
@@ -60,13 +84,38 @@ public class ExpenseServiceTest {
         request.setCategory("Food");
         request.setDate(LocalDate.now());
 
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        when(fxRateService.isSupported(null)).thenReturn(true);
+        when(userRepository.getReferenceById(1L)).thenReturn(user);
         when(expenseRepository.save(any(Expense.class))).thenReturn(expense);
 
-        com.intellispend.dto.ExpenseResponse response = expenseService.createExpense(request, "testuser");
+        com.intellispend.dto.ExpenseResponse response = expenseService.createExpense(request, new UserDetailsImpl(1L, "testuser", null, null, List.of()));
 
         assertEquals(new BigDecimal("100.00"), response.getAmount());
         assertEquals("Food", response.getCategory());
+        verify(eventPublisher).publishEvent(new ExpenseChangedEvent(1L, Set.of(YearMonth.from(expense.getDate()))));
         verify(budgetService).checkBudget(any(Expense.class));
     }
+
+    @Test
+    void updateValidatesAndAppliesTheCurrency() {
+        com.intellispend.dto.ExpenseRequest request = new com.intellispend.dto.ExpenseRequest();
+        request.setAmount(new BigDecimal("100.00"));
+        request.setCategory("Food");
+        request.setDate(expense.getDate());
+        request.setCurrency("xyz");
+        UserDetailsImpl userRef = new UserDetailsImpl(1L, "testuser", null, null, List.of());
+
+        assertThrows(InvalidRequestException.class, () -> expenseService.updateExpense(1L, request, userRef));
+        verify(expenseRepository, never()).save(any());
+
+        request.setCurrency("eur");
+        when(fxRateService.isSupported("EUR")).thenReturn(true);
+        when(expenseRepository.findById(1L)).thenReturn(Optional.of(expense));
+        when(expenseRepository.save(expense)).thenReturn(expense);
+
+        expenseService.updateExpense(1L, request, userRef);
+
+        assertEquals("EUR", expense.getCurrency());
+        verify(spendLedgerService).record(expense);
+    }
 }
@@ -0,0 +1,120 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.AiSummaryStatus;
+import com.intellispend.dto.InsightResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InsightCacheTest {
+    private static final Duration PENDING_TTL = Duration.ofMillis(200);
+
+    private final YearMonth january = YearMonth.of(2024, 1);
+    private final YearMonth february = YearMonth.of(2024, 2);
+    private final YearMonth march = YearMonth.of(2024, 3);
+
+    private SimpleMeterRegistry meterRegistry;
+    private InsightCache insightCache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        insightCache = new InsightCache(100, Duration.ofMinutes(30), PENDING_TTL, meterRegistry);
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void servesRepeatedReadsFromCache() {
+        load(1L, january);
+        load(1L, january);
+        load(2L, january);
+
+        assertEquals(2, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tags("cache", "insights", "result", "hit").functionCounter().count());
+        assertEquals(2.0, meterRegistry.get("cache.gets").tags("cache", "insights", "result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void expenseChangeInvalidatesItsMonthAndTheFollowingOne() {
+        load(1L, january);
+        load(1L, february);
+        load(1L, march);
+        load(2L, january);
+
+        insightCache.onExpenseChanged(ExpenseChangedEvent.of(1L, List.of(LocalDate.of(2024, 1, 20))));
+
+        load(1L, january);
+        load(1L, february);
+        load(1L, march);
+        load(2L, january);
+        assertEquals(6, loads.get());
+    }
+
+    @Test
+    void evictsBeyondMaximumSize() throws InterruptedException {
+        SimpleMeterRegistry smallRegistry = new SimpleMeterRegistry();
+        InsightCache small = new InsightCache(2, Duration.ofMinutes(30), PENDING_TTL, smallRegistry);
+        for (long userId = 1; userId <= 50; userId++) {
+            small.get(userId, january, InsightResponse::new);
+        }
+
+        // Caffeine applies size evictions on a background thread
+        FunctionCounter evictions = smallRegistry.get("cache.evictions").tags("cache", "insights").functionCounter();
+        for (int i = 0; i < 100 && evictions.count() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(evictions.count() > 0);
+    }
+
+    @Test
+    void entriesWithoutAReadySummaryExpireSooner() throws InterruptedException {
+        load(1L, january, AiSummaryStatus.READY);
+        load(1L, february, AiSummaryStatus.PENDING);
+        load(1L, march, AiSummaryStatus.FAILED);
+        load(1L, february, AiSummaryStatus.PENDING);
+        assertEquals(3, loads.get());
+
+        Thread.sleep(PENDING_TTL.toMillis() + 50);
+
+        load(1L, january, AiSummaryStatus.READY);
+        load(1L, february, AiSummaryStatus.PENDING);
+        load(1L, march, AiSummaryStatus.FAILED);
+        assertEquals(5, loads.get());
+    }
+
+    @Test
+    void invalidatedByItsOwnLoaderIsReturnedButNotKept() {
+        InsightResponse loaded = insightCache.get(1L, january, () -> {
+            loads.incrementAndGet();
+            insightCache.invalidate(1L, january);
+            return InsightResponse.builder().aiSummaryStatus(AiSummaryStatus.PENDING).build();
+        });
+
+        assertEquals(AiSummaryStatus.PENDING, loaded.getAiSummaryStatus());
+        load(1L, january);
+        assertEquals(2, loads.get());
+    }
+
+    private InsightResponse load(Long userId, YearMonth month) {
+        return load(userId, month, null);
+    }
+
+    private InsightResponse load(Long userId, YearMonth month, AiSummaryStatus status) {
+        return insightCache.get(userId, month, () -> {
+            loads.incrementAndGet();
+            return InsightResponse.builder().totalSpending(BigDecimal.TEN).aiSummaryStatus(status).build();
+        });
+    }
+}
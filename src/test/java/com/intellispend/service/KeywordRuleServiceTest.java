@@ -0,0 +1,49 @@
+package com.intellispend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class KeywordRuleServiceTest {
+
+    @Test
+    void defaultRulesCoverBuiltInKeywords() {
+        KeywordRuleService service = new KeywordRuleService(new ClassPathResource("categorization/keyword-rules.csv"));
+
+        assertEquals("Food", service.match("Zomato order"));
+        assertEquals("Utilities", service.match("ELECTRICITY BILL MARCH"));
+        assertNull(service.match("Bookstore"));
+    }
+
+    @Test
+    void reloadsChangedFileAndKeepsRulesWhenItIsBroken(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("rules.csv");
+        Files.writeString(file, "# test rules\nstarbucks,Food\n");
+        KeywordRuleService service = new KeywordRuleService(new FileSystemResource(file));
+        assertEquals("Food", service.match("STARBUCKS #1234"));
+
+        Files.writeString(file, "starbucks,Food\nstarbucks reserve,Entertainment,5\n");
+        touch(file, 1);
+        service.reloadIfChanged();
+        assertEquals("Entertainment", service.match("Starbucks Reserve Roastery"));
+
+        Files.writeString(file, "starbucks\n");
+        touch(file, 2);
+        service.reloadIfChanged();
+        assertEquals("Entertainment", service.match("Starbucks Reserve Roastery"));
+    }
+
+    private static void touch(Path file, int seconds) throws Exception {
+        // Make the change visible on file systems with coarse modification times
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(seconds)));
+    }
+}
@@ -0,0 +1,122 @@
+package com.intellispend.service;
+
+import com.intellispend.support.StubOpenAiServer;
+import com.intellispend.support.StubOpenAiServer.Reply;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OpenAiClientTest {
+    private static final Duration READ_TIMEOUT = Duration.ofMillis(500);
+    private static final int MAX_CONNECTIONS = 10;
+    private static final int CALLERS = 50;
+    private static final Duration DEADLINE = Duration.ofSeconds(10);
+
+    private StubOpenAiServer stub;
+    private SimpleMeterRegistry meterRegistry;
+    private OpenAiClient openAiClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new StubOpenAiServer();
+        meterRegistry = new SimpleMeterRegistry();
+        openAiClient = client(1, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        openAiClient.shutdown();
+        stub.close();
+    }
+
+    @Test
+    void concurrentCallersShareAPoolOfKeptAliveConnections() throws Exception {
+        stub.respondWith(request -> Reply.ok("reply " + request.number()).delayedBy(Duration.ofMillis(10)));
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < CALLERS * 4; i++) {
+                replies.add(callers.submit(() -> openAiClient.complete("system", "user", DEADLINE)));
+            }
+            for (Future<String> reply : replies) {
+                assertTrue(reply.get().startsWith("reply "));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertEquals(CALLERS * 4, stub.requestCount());
+        assertTrue(stub.connectionCount() <= MAX_CONNECTIONS, "connections opened: " + stub.connectionCount());
+        assertEquals(MAX_CONNECTIONS, pool("total.max"));
+        assertEquals(0, pool("total.pending"));
+        assertEquals(0, meterRegistry.get("httpcomponents.httpclient.pool.total.connections")
+                .tags("httpclient", "openai", "state", "leased").gauge().value());
+        assertEquals(stub.connectionCount(), meterRegistry.get("httpcomponents.httpclient.pool.total.connections")
+                .tags("httpclient", "openai", "state", "available").gauge().value());
+    }
+
+    @Test
+    void slowResponsesFailAfterTheReadTimeout() {
+        stub.respondWith(request -> Reply.ok("Too late.").delayedBy(READ_TIMEOUT.multipliedBy(4)));
+
+        long started = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> openAiClient.complete("system", "user", DEADLINE));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - started).compareTo(READ_TIMEOUT.multipliedBy(3)) < 0);
+    }
+
+    @Test
+    void retriesServerErrorsWithBackoff() throws Exception {
+        openAiClient.shutdown();
+        openAiClient = client(3, Duration.ofMillis(10));
+        stub.respondWith(request -> request.number() < 3 ? new Reply(503, "{}", Duration.ZERO) : Reply.ok("Third time lucky."));
+
+        assertEquals("Third time lucky.", openAiClient.complete("system", "user", DEADLINE));
+        assertEquals(3, stub.requestCount());
+
+        stub.respondWith(request -> new Reply(503, "{}", Duration.ZERO));
+        assertThrows(HttpServerErrorException.class, () -> openAiClient.complete("system", "user", DEADLINE));
+        assertEquals(6, stub.requestCount());
+    }
+
+    @Test
+    void retriesStopAtTheCallersDeadline() throws Exception {
+        openAiClient.shutdown();
+        openAiClient = client(5, Duration.ofMillis(10));
+        stub.respondWith(request -> Reply.ok("Too late.").delayedBy(READ_TIMEOUT.multipliedBy(4)));
+        Duration deadline = READ_TIMEOUT.plusMillis(200);
+
+        long started = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> openAiClient.complete("system", "user", deadline));
+
+        // The second attempt only gets what the first left of the deadline, and no third one starts
+        assertTrue(Duration.ofNanos(System.nanoTime() - started).compareTo(deadline.plusMillis(200)) < 0);
+        assertEquals(2, stub.requestCount());
+    }
+
+    private OpenAiClient client(int maxAttempts, Duration retryDelay) {
+        AiCallGuard aiCallGuard = new AiCallGuard(CALLERS, Duration.ofSeconds(1), 50, 20, 10,
+                Duration.ofSeconds(30), 3, meterRegistry, event -> { });
+        return new OpenAiClient(new RestTemplateBuilder(), "test-key", stub.url(),
+                Duration.ofSeconds(5), READ_TIMEOUT, MAX_CONNECTIONS, maxAttempts, retryDelay, meterRegistry, aiCallGuard);
+    }
+
+    private double pool(String name) {
+        return meterRegistry.get("httpcomponents.httpclient.pool." + name).tag("httpclient", "openai").gauge().value();
+    }
+}
@@ -0,0 +1,178 @@
+package com.intellispend.service;
+
+import com.intellispend.config.SqlStatementCounter;
+import com.intellispend.dto.InsightResponse;
+import com.intellispend.dto.MonthlySnapshot;
+import com.intellispend.entity.User;
+import com.intellispend.repository.ExpenseExportRepository;
+import com.intellispend.repository.ExpenseRepository;
+import com.intellispend.repository.UserRepository;
+import com.intellispend.repository.projection.UserRef;
+import com.intellispend.repository.projection.ExpenseExportRow;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Exports must not buffer the report: at any point while rows are produced, almost everything
+ * produced so far has to be in the output already. That bounds memory independently of row count.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ReportServiceTest {
+    private static final int ROWS = 200_000;
+    private static final int CHECK_EVERY = 10_000;
+    // "2024-01-15,Food,Coffee beans,12.50,USD,Card\n"
+    private static final int CSV_ROW_BYTES = 44;
+    private static final long MAX_BUFFERED_BYTES = 64 * 1024;
+    private static final UserDetailsImpl USER = new UserDetailsImpl(1L, "testuser", "testuser@example.com", null, List.of());
+
+    @Mock
+    private ExpenseRepository expenseRepository;
+
+    @Mock
+    private ExpenseExportRepository expenseExportRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private InsightService insightService;
+
+    @Mock
+    private MonthlySnapshotService monthlySnapshotService;
+
+    @Mock
+    private FxRateService fxRateService;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private ReportService reportService;
+
+    private final LocalDate from = LocalDate.of(2024, 1, 1);
+    private final LocalDate to = LocalDate.of(2024, 12, 31);
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(userRepository.getReferenceById(1L)).thenReturn(User.builder().id(1L).username("testuser").build());
+    }
+
+    @Test
+    void csvExportWritesRowsAsTheyAreRead() {
+        CountingOutputStream out = new CountingOutputStream();
+        emitRows(rowsEmitted -> {
+            long produced = (long) rowsEmitted * CSV_ROW_BYTES;
+            assertTrue(out.count >= produced - MAX_BUFFERED_BYTES,
+                    () -> "Only " + out.count + " bytes written after " + rowsEmitted + " rows");
+        });
+
+        reportService.writeCsvReport(USER, from, to, out);
+
+        assertEquals((long) ROWS * CSV_ROW_BYTES, out.count - "Date,Category,Description,Amount,Currency,Payment Method\n".length());
+    }
+
+    @Test
+    void pdfExportFlushesTransactionTableWhileReading() {
+        when(expenseRepository.sumByCategory(any(), eq(from), eq(to))).thenReturn(List.of());
+
+        CountingOutputStream out = new CountingOutputStream();
+        long[] lastCheckpoint = {0};
+        emitRows(rowsEmitted -> {
+            if (rowsEmitted >= CHECK_EVERY) {
+                assertTrue(out.count > lastCheckpoint[0],
+                        () -> "PDF output did not grow between row " + (rowsEmitted - CHECK_EVERY) + " and " + rowsEmitted);
+            }
+            lastCheckpoint[0] = out.count;
+        });
+
+        reportService.writePdfReport(USER, from, to, out);
+
+        assertTrue(out.count > 0);
+    }
+
+    @Test
+    void singleMonthPdfComputesSnapshotOnce() {
+        YearMonth month = YearMonth.of(2024, 3);
+        MonthlySnapshot snapshot = MonthlySnapshot.builder()
+                .month(month)
+                .categoryTotals(Map.of("Food", new BigDecimal("42.00")))
+                .totalSpending(new BigDecimal("42.00"))
+                .build();
+        when(monthlySnapshotService.snapshot(any(), eq(month))).thenReturn(snapshot);
+        when(insightService.getMonthlyInsights(snapshot))
+                .thenReturn(InsightResponse.builder().aiSummary("Spending is stable.").build());
+        doAnswer(invocation -> {
+            SqlStatementCounter.increment();
+            return null;
+        }).when(expenseExportRepository).streamByUserAndDateRange(eq(1L), eq(month.atDay(1)), eq(month.atEndOfMonth()), any());
+
+        reportService.writePdfReport(USER, month.atDay(1), month.atEndOfMonth(), new CountingOutputStream());
+
+        verify(monthlySnapshotService, times(1)).snapshot(any(), eq(month));
+        verify(insightService, never()).getMonthlyInsights(any(UserRef.class), any());
+        verify(expenseRepository, never()).sumByCategory(any(), any(), any());
+        assertNotNull(meterRegistry.find("report.phase.duration").tags("format", "pdf", "phase", "transactions").timer());
+        assertEquals(1, meterRegistry.get("report.phase.statements").tags("format", "pdf", "phase", "transactions")
+                .summary().totalAmount());
+    }
+
+    private void emitRows(Checkpoint checkpoint) {
+        ExpenseExportRow row = new ExpenseExportRow(
+                LocalDate.of(2024, 1, 15), "Food", "Coffee beans", new BigDecimal("12.50"), "USD", "Card");
+        doAnswer(invocation -> {
+            Consumer<ExpenseExportRow> handler = invocation.getArgument(3);
+            for (int i = 1; i <= ROWS; i++) {
+                if (i % CHECK_EVERY == 1) {
+                    checkpoint.check(i - 1);
+                }
+                handler.accept(row);
+            }
+            return null;
+        }).when(expenseExportRepository).streamByUserAndDateRange(eq(1L), eq(from), eq(to), any());
+    }
+
+    private interface Checkpoint {
+        void check(int rowsEmitted);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
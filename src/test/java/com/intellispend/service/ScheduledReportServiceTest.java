@@ -0,0 +1,227 @@
+package com.intellispend.service;
+
+import com.intellispend.dto.AiSummaryStatus;
+import com.intellispend.entity.EReportStatus;
+import com.intellispend.entity.ReportRun;
+import com.intellispend.entity.ReportRunItem;
+import com.intellispend.repository.ReportRunItemRepository;
+import com.intellispend.repository.ReportRunRepository;
+import com.intellispend.repository.UserRepository;
+import com.intellispend.repository.projection.UserRef;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ScheduledReportServiceTest {
+    private static final int CONCURRENCY = 3;
+    private static final int PAGE_SIZE = 5;
+
+    @Mock
+    private ReportService reportService;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private ReportRunRepository reportRunRepository;
+
+    @Mock
+    private ReportRunItemRepository reportRunItemRepository;
+
+    @InjectMocks
+    private ScheduledReportService scheduledReportService;
+
+    @TempDir
+    Path outputDir;
+
+    private final YearMonth month = YearMonth.of(2024, 1);
+    private ReportRun run;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(scheduledReportService, "concurrency", CONCURRENCY);
+        ReflectionTestUtils.setField(scheduledReportService, "pageSize", PAGE_SIZE);
+        ReflectionTestUtils.setField(scheduledReportService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(scheduledReportService, "outputDir", outputDir.toString());
+        ReflectionTestUtils.setField(scheduledReportService, "summaryWait", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(scheduledReportService, "maxSummaryDeferrals", 2);
+        scheduledReportService.startWorkers();
+
+        run = ReportRun.builder().id(1L).month(month).status(EReportStatus.RUNNING).startedAt(LocalDateTime.now()).build();
+        when(reportRunRepository.findByMonth(month)).thenReturn(Optional.of(run));
+        lenient().when(reportRunItemRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(reportService.awaitAiSummary(any(), any(), any()))
+                .thenReturn(new AiSummaryService.Summary(AiSummaryStatus.READY, "Spending was flat."));
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduledReportService.stopWorkers();
+    }
+
+    @Test
+    void resumesRunSkippingCompletedUsers() {
+        List<UserRef> users = users(1, 12);
+        stubUserPages(users);
+        ReportRunItem done = ReportRunItem.builder().run(run).userId(2L).status(EReportStatus.COMPLETED).attempts(1).build();
+        when(reportRunItemRepository.findByRunAndUserIdIn(eq(run), any())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(1);
+            return ids.contains(2L) ? List.of(done) : List.of();
+        });
+
+        scheduledReportService.runMonth(month);
+
+        verify(reportService, never()).writeMonthlyPdfReport(argThat(user -> user.getId() == 2L), any(), any(), any());
+        verify(reportService, times(11)).writeMonthlyPdfReport(any(), eq(month), eq("Spending was flat."), any());
+        assertTrue(Files.exists(outputDir.resolve("2024-01").resolve("user-12.pdf")));
+        assertFalse(Files.exists(outputDir.resolve("2024-01").resolve("user-12.pdf.part")));
+        assertEquals(EReportStatus.COMPLETED, run.getStatus());
+    }
+
+    @Test
+    void neverRunsMoreReportsThanConcurrencyAllows() {
+        stubUserPages(users(1, 20));
+        when(reportRunItemRepository.findByRunAndUserIdIn(eq(run), any())).thenReturn(List.of());
+
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            active.decrementAndGet();
+            return null;
+        }).when(reportService).writeMonthlyPdfReport(any(), any(), any(), any(OutputStream.class));
+
+        scheduledReportService.runMonth(month);
+
+        verify(reportService, times(20)).writeMonthlyPdfReport(any(), any(), any(), any());
+        assertTrue(maxActive.get() <= CONCURRENCY, "max concurrent reports was " + maxActive.get());
+    }
+
+    @Test
+    void failedReportKeepsRunOpenForRetry() {
+        stubUserPages(users(1, 1));
+        when(reportRunItemRepository.findByRunAndUserIdIn(eq(run), any())).thenReturn(List.of());
+        doAnswer(invocation -> {
+            throw new RuntimeException("boom");
+        }).when(reportService).writeMonthlyPdfReport(any(), any(), any(), any());
+        when(reportRunItemRepository.countByRunAndStatusAndAttemptsLessThan(run, EReportStatus.FAILED, 3)).thenReturn(1L);
+
+        scheduledReportService.runMonth(month);
+
+        assertEquals(EReportStatus.RUNNING, run.getStatus());
+        verify(reportRunRepository, never()).save(run);
+    }
+
+    @Test
+    void reportWithoutItsAiSummaryIsDeferredNotWritten() {
+        stubUserPages(users(1, 1));
+        ReportRunItem item = ReportRunItem.builder().run(run).userId(1L).status(EReportStatus.AWAITING_SUMMARY).attempts(1).build();
+        when(reportRunItemRepository.findByRunAndUserIdIn(eq(run), any())).thenReturn(List.of(item));
+        when(reportService.awaitAiSummary(any(), eq(month), any()))
+                .thenReturn(new AiSummaryService.Summary(AiSummaryStatus.UNAVAILABLE, AiSummaryService.TEMPORARILY_UNAVAILABLE));
+        lenient().when(reportRunItemRepository.countByRunAndStatus(run, EReportStatus.AWAITING_SUMMARY)).thenReturn(1L);
+
+        scheduledReportService.runMonth(month);
+
+        verify(reportService, never()).writeMonthlyPdfReport(any(), any(), any(), any());
+        assertFalse(Files.exists(outputDir.resolve("2024-01").resolve("user-1.pdf")));
+        assertEquals(EReportStatus.AWAITING_SUMMARY, item.getStatus());
+        assertEquals(1, item.getAttempts());
+        assertEquals(1, item.getSummaryDeferrals());
+        assertEquals(EReportStatus.RUNNING, run.getStatus());
+        verify(reportRunRepository, never()).save(run);
+    }
+
+    @Test
+    void reportIsWrittenWithThePlaceholderOnceItsSummaryDeferralsRunOut() {
+        stubUserPages(users(1, 1));
+        ReportRunItem item = ReportRunItem.builder().run(run).userId(1L).status(EReportStatus.AWAITING_SUMMARY)
+                .attempts(1).summaryDeferrals(2).build();
+        when(reportRunItemRepository.findByRunAndUserIdIn(eq(run), any())).thenReturn(List.of(item));
+        when(reportService.awaitAiSummary(any(), eq(month), any()))
+                .thenReturn(new AiSummaryService.Summary(AiSummaryStatus.FAILED, AiSummaryService.GENERATION_FAILED));
+
+        scheduledReportService.runMonth(month);
+
+        verify(reportService).writeMonthlyPdfReport(any(), eq(month), eq(AiSummaryService.GENERATION_FAILED), any());
+        assertTrue(Files.exists(outputDir.resolve("2024-01").resolve("user-1.pdf")));
+        assertEquals(EReportStatus.COMPLETED, item.getStatus());
+        assertEquals(EReportStatus.COMPLETED, run.getStatus());
+    }
+
+    @Test
+    void monthSkippedWhileABatchRunsIsRecordedForTheNextResumePass() {
+        when(reportRunRepository.findByMonth(month)).thenReturn(Optional.empty());
+        when(reportRunRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        AtomicBoolean batchInProgress = (AtomicBoolean) ReflectionTestUtils.getField(scheduledReportService, "batchInProgress");
+        batchInProgress.set(true);
+
+        scheduledReportService.runMonth(month);
+
+        verify(reportRunRepository).save(argThat(saved -> saved.getMonth().equals(month) && saved.getStatus() == EReportStatus.RUNNING));
+        verify(userRepository, never()).findByIdGreaterThanOrderByIdAsc(anyLong(), any());
+        assertTrue(batchInProgress.get());
+    }
+
+    private void stubUserPages(List<UserRef> users) {
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class))).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            Limit limit = invocation.getArgument(1);
+            return users.stream().filter(u -> u.getId() > afterId).limit(limit.max()).toList();
+        });
+    }
+
+    private static List<UserRef> users(int fromId, int toId) {
+        List<UserRef> users = new ArrayList<>();
+        for (long id = fromId; id <= toId; id++) {
+            long userId = id;
+            users.add(new UserRef() {
+                @Override
+                public Long getId() {
+                    return userId;
+                }
+
+                @Override
+                public String getUsername() {
+                    return "user" + userId;
+                }
+            });
+        }
+        return users;
+    }
+}
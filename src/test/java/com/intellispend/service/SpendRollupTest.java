@@ -0,0 +1,292 @@
+package com.intellispend.service;
+
+import com.intellispend.config.SqlStatementCounter;
+import com.intellispend.dto.ExpenseRequest;
+import com.intellispend.dto.ExpenseResponse;
+import com.intellispend.dto.TrendPoint;
+import com.intellispend.dto.TrendResponse;
+import com.intellispend.entity.Expense;
+import com.intellispend.entity.User;
+import com.intellispend.exception.InvalidRequestException;
+import com.intellispend.repository.FxRateRepository;
+import com.intellispend.repository.MonthlyCategorySpendRepository;
+import com.intellispend.support.PostgresTestDatabase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The (user, category, month) rollup against real PostgreSQL: kept exact through expense writes in
+ * any currency, repaired cell by cell by reconcile, and read by trends in a single query.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ExpenseService.class, BudgetService.class, SpendLedgerService.class, TrendService.class,
+        MonthlySnapshotService.class, FxRateService.class, FxRateRepository.class, SpendRollupTest.Config.class})
+public class SpendRollupTest {
+
+    @TestConfiguration
+    @EntityScan(basePackageClasses = Expense.class)
+    static class Config {
+        @Bean(destroyMethod = "close")
+        PostgresTestDatabase postgresTestDatabase() {
+            return PostgresTestDatabase.startMigrated();
+        }
+
+        @Bean
+        DataSource dataSource(PostgresTestDatabase database) {
+            return database.getDataSource();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @DynamicPropertySource
+    static void fxRates(DynamicPropertyRegistry registry) throws IOException {
+        Path rates = Files.createTempFile("fx-rates", ".csv");
+        rates.toFile().deleteOnExit();
+        Files.writeString(rates, "2024-01-01,EUR,1.10\n2024-03-15,EUR,1.20\n");
+        registry.add("fx.rates.location", () -> "file:" + rates);
+    }
+
+    @MockBean
+    private CategorizationService categorizationService;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private SpendLedgerService spendLedgerService;
+
+    @Autowired
+    private TrendService trendService;
+
+    @Autowired
+    private MonthlySnapshotService monthlySnapshotService;
+
+    @Autowired
+    private FxRateService fxRateService;
+
+    @Autowired
+    private MonthlyCategorySpendRepository spendRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private UserDetailsImpl user;
+
+    @BeforeEach
+    void setUp() {
+        Long id = jdbcTemplate.queryForObject("INSERT INTO users (username, email, password) " +
+                "VALUES ('rollup', 'rollup@test.local', 'x') RETURNING id", Long.class);
+        user = new UserDetailsImpl(id, "rollup", "rollup@test.local", null, List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        SqlStatementCounter.stop();
+    }
+
+    @Test
+    void writesKeepCountAndBoundsExact() {
+        ExpenseResponse five = expenseService.createExpense(request("5.00", "Food", 3), user);
+        ExpenseResponse twenty = expenseService.createExpense(request("20.00", "Food", 10), user);
+        ExpenseResponse twelve = expenseService.createExpense(request("12.00", "Food", 20), user);
+        assertCell("Food", 3, "37.00", "5.00", "20.00");
+
+        // Lowering the maximum recomputes it from the other expenses in the cell
+        expenseService.updateExpense(twenty.getId(), request("8.00", "Food", 10), user);
+        assertCell("Food", 3, "25.00", "5.00", "12.00");
+
+        expenseService.deleteExpense(five.getId(), user);
+        assertCell("Food", 2, "20.00", "8.00", "12.00");
+
+        expenseService.updateExpense(twelve.getId(), request("12.00", "Transport", 20), user);
+        assertCell("Food", 1, "8.00", "8.00", "8.00");
+        assertCell("Transport", 1, "12.00", "12.00", "12.00");
+
+        expenseService.deleteExpense(twenty.getId(), user);
+        assertCell("Food", 0, "0.00", null, null);
+        assertEquals(0, spendRepository.findDriftedCells().size());
+    }
+
+    @Test
+    void foreignCurrencyExpensesAreConvertedAtTheirDatesRate() {
+        fxRateService.syncToDatabase();
+        ExpenseRequest hundredEuros = request("100.00", "Food", 10);
+        hundredEuros.setCurrency("EUR");
+        ExpenseRequest fiftyEuros = request("50.00", "Food", 20);
+        fiftyEuros.setCurrency("EUR");
+
+        ExpenseResponse atOldRate = expenseService.createExpense(hundredEuros, user);
+        expenseService.createExpense(fiftyEuros, user);
+        expenseService.createExpense(request("5.00", "Food", 5), user);
+        // Ledger writes convert in memory, the rebuild check converts in SQL; both must agree
+        assertCell("Food", 3, "175.00", "5.00", "110.00");
+        assertEquals(0, spendRepository.findDriftedCells().size());
+        assertAmount("175.00", monthlySnapshotService.snapshot(
+                entityManager.getReference(User.class, user.getId()), YearMonth.of(2024, 3)).getTotalSpending());
+
+        // Removing the maximum recomputes it from converted amounts
+        expenseService.deleteExpense(atOldRate.getId(), user);
+        assertCell("Food", 2, "65.00", "5.00", "60.00");
+        assertEquals(0, spendRepository.findDriftedCells().size());
+    }
+
+    @Test
+    void currencyCodesAreUpperCasedAndCurrenciesWithoutRatesRejected() {
+        fxRateService.syncToDatabase();
+        ExpenseRequest lowerCase = request("100.00", "Food", 10);
+        lowerCase.setCurrency("eur");
+        ExpenseRequest unknown = request("100.00", "Food", 10);
+        unknown.setCurrency("XYZ");
+
+        assertEquals("EUR", expenseService.createExpense(lowerCase, user).getCurrency());
+        assertCell("Food", 1, "110.00", "110.00", "110.00");
+        assertThrows(InvalidRequestException.class, () -> expenseService.createExpense(unknown, user));
+        assertThrows(InvalidRequestException.class, () -> expenseService.createExpenses(List.of(request("5.00", "Food", 1), unknown), user));
+        assertCell("Food", 1, "110.00", "110.00", "110.00");
+    }
+
+    @Test
+    void trendsComeFromTheRollupInOneQuery() {
+        // 2023: two 50.00 Food expenses a month; 2024 Q1: 40, 50 and 60 a month plus one Transport in February
+        jdbcTemplate.update("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                "SELECT 50, 'Food', 'Old', DATE '2023-01-01' + (m || ' month')::interval + (d || ' day')::interval, " +
+                "'Card', 'USD', false, ? FROM generate_series(0, 11) m, generate_series(0, 1) d", user.getId());
+        jdbcTemplate.update("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                "SELECT a, 'Food', 'New', DATE '2024-01-10' + (m || ' month')::interval, 'Card', 'USD', false, ? " +
+                "FROM generate_series(0, 2) m, unnest(ARRAY[40, 50, 60]) a", user.getId());
+        jdbcTemplate.update("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                "VALUES (30, 'Transport', 'Train', DATE '2024-02-14', 'Card', 'USD', false, ?), " +
+                "(999, 'Food', 'Removed', DATE '2024-03-01', 'Card', 'USD', true, ?)", user.getId(), user.getId());
+        // Rows written behind the service's back are picked up by the rebuild
+        spendLedgerService.reconcile();
+
+        SqlStatementCounter.start();
+        TrendResponse trends = trendService.getTrends(user, YearMonth.of(2024, 3), 3, null);
+        assertEquals(1, SqlStatementCounter.stop());
+
+        assertEquals(YearMonth.of(2024, 1), trends.getFrom());
+        assertEquals(List.of(YearMonth.of(2024, 1), YearMonth.of(2024, 2), YearMonth.of(2024, 3)),
+                trends.getMonths().stream().map(TrendPoint::getMonth).toList());
+
+        TrendPoint march = trends.getMonths().get(2);
+        assertEquals(3, march.getExpenseCount());
+        assertAmount("150.00", march.getTotal());
+        assertAmount("40.00", march.getMinAmount());
+        assertAmount("60.00", march.getMaxAmount());
+        assertAmount("100.00", march.getYearAgoTotal());
+        assertEquals(50.0, march.getYearOverYearPercentage());
+        // April to December 2023, then 2024 Q1 including Transport
+        assertAmount("1380.00", march.getRollingTwelveMonthTotal());
+
+        List<TrendPoint> transport = trends.getCategories().get("Transport");
+        assertEquals(0, transport.get(0).getExpenseCount());
+        assertNull(transport.get(0).getMinAmount());
+        assertAmount("30.00", transport.get(1).getTotal());
+
+        TrendResponse transportOnly = trendService.getTrends(user, YearMonth.of(2024, 3), 3, "Transport");
+        assertAmount("30.00", transportOnly.getMonths().get(1).getTotal());
+        assertEquals(List.of("Transport"), List.copyOf(transportOnly.getCategories().keySet()));
+    }
+
+    @Test
+    void reconcileRepairsOnlyTheCellsThatDrifted() {
+        expenseService.createExpense(request("5.00", "Food", 3), user);
+        expenseService.createExpense(request("20.00", "Food", 10), user);
+        expenseService.createExpense(request("12.00", "Transport", 20), user);
+        entityManager.flush();
+        Long transportCell = cellId("Transport");
+        spendLedgerService.reconcile();
+        assertEquals(transportCell, cellId("Transport"));
+
+        // A lost update, an expense written behind the service's back and a cell left without expenses
+        jdbcTemplate.update("UPDATE monthly_category_spend SET total = 99, max_amount = 94 " +
+                "WHERE user_id = ? AND category = 'Food'", user.getId());
+        jdbcTemplate.update("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                "VALUES (7, 'Health', 'Pharmacy', DATE '2024-03-12', 'Card', 'USD', false, ?)", user.getId());
+        jdbcTemplate.update("INSERT INTO monthly_category_spend (user_id, category, month, total, expense_count, min_amount, max_amount) " +
+                "VALUES (?, 'Shopping', '2024-03', 40, 2, 15, 25)", user.getId());
+        assertEquals(3, spendRepository.findDriftedCells().size());
+
+        spendLedgerService.reconcile();
+
+        assertEquals(0, spendRepository.findDriftedCells().size());
+        assertCell("Food", 2, "25.00", "5.00", "20.00");
+        assertCell("Health", 1, "7.00", "7.00", "7.00");
+        assertCell("Shopping", 0, "0.00", null, null);
+        // Cells that matched are left alone rather than deleted and rebuilt
+        assertEquals(transportCell, cellId("Transport"));
+        assertCell("Transport", 1, "12.00", "12.00", "12.00");
+    }
+
+    @Test
+    void trendRangeIsBounded() {
+        assertThrows(InvalidRequestException.class, () -> trendService.getTrends(user, YearMonth.of(2024, 3), 0, null));
+        assertThrows(InvalidRequestException.class, () -> trendService.getTrends(user, YearMonth.of(2024, 3), 61, null));
+    }
+
+    private static ExpenseRequest request(String amount, String category, int dayOfMarch) {
+        ExpenseRequest request = new ExpenseRequest();
+        request.setAmount(new BigDecimal(amount));
+        request.setCategory(category);
+        request.setDescription(category + " " + amount);
+        request.setDate(LocalDate.of(2024, 3, dayOfMarch));
+        request.setPaymentMethod("Card");
+        return request;
+    }
+
+    private void assertCell(String category, long count, String total, String min, String max) {
+        entityManager.flush();
+        Map<String, Object> cell = jdbcTemplate.queryForMap("SELECT expense_count, total, min_amount, max_amount " +
+                "FROM monthly_category_spend WHERE user_id = ? AND category = ? AND month = '2024-03'", user.getId(), category);
+        assertEquals(count, ((Number) cell.get("expense_count")).longValue());
+        assertAmount(total, (BigDecimal) cell.get("total"));
+        assertAmount(min, (BigDecimal) cell.get("min_amount"));
+        assertAmount(max, (BigDecimal) cell.get("max_amount"));
+    }
+
+    private Long cellId(String category) {
+        return jdbcTemplate.queryForObject("SELECT id FROM monthly_category_spend " +
+                "WHERE user_id = ? AND category = ? AND month = '2024-03'", Long.class, user.getId(), category);
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(expected == null ? null : new BigDecimal(expected), actual);
+    }
+}
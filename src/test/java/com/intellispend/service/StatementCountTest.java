@@ -0,0 +1,165 @@
+package com.intellispend.service;
+
+import com.intellispend.config.SqlStatementCounter;
+import com.intellispend.dto.AiSummaryStatus;
+import com.intellispend.dto.ExpenseRequest;
+import com.intellispend.entity.Expense;
+import com.intellispend.repository.ExpenseExportRepository;
+import com.intellispend.repository.FxRateRepository;
+import com.intellispend.support.PostgresTestDatabase;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * SQL round trips per service call against real Hibernate and PostgreSQL. Services take the
+ * authenticated principal, so none of these counts include a {@code users} lookup; a count going
+ * up means a query crept back into the request path.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ExpenseService.class, BudgetService.class, SpendLedgerService.class, InsightService.class, InsightCache.class,
+        MonthlySnapshotService.class, ReportService.class, ExpenseExportRepository.class, FxRateService.class,
+        FxRateRepository.class, StatementCountTest.Config.class})
+public class StatementCountTest {
+    private static final YearMonth MONTH = YearMonth.of(2024, 3);
+
+    // Keeps benchmark-only entities on the test classpath out of the persistence unit
+    @TestConfiguration
+    @EntityScan(basePackageClasses = Expense.class)
+    static class Config {
+        @Bean(destroyMethod = "close")
+        PostgresTestDatabase postgresTestDatabase() {
+            return PostgresTestDatabase.startMigrated();
+        }
+
+        @Bean
+        DataSource dataSource(PostgresTestDatabase database) {
+            return database.getDataSource();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @MockBean
+    private CategorizationService categorizationService;
+
+    @MockBean
+    private AiSummaryService aiSummaryService;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private InsightService insightService;
+
+    @Autowired
+    private ReportService reportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private UserDetailsImpl user;
+
+    @BeforeEach
+    void setUp() {
+        Long id = jdbcTemplate.queryForObject("INSERT INTO users (username, email, password) " +
+                "VALUES ('counted', 'counted@test.local', 'x') RETURNING id", Long.class);
+        jdbcTemplate.update("INSERT INTO expenses (amount, category, description, date, payment_method, currency, is_deleted, user_id) " +
+                "SELECT 10, 'Food', 'Lunch ' || g, DATE '2024-03-01' + (g % 28), 'Card', 'USD', false, ? " +
+                "FROM generate_series(1, 20) g", id);
+        user = new UserDetailsImpl(id, "counted", "counted@test.local", null, List.of());
+        when(aiSummaryService.summaryFor(any())).thenReturn(new AiSummaryService.Summary(AiSummaryStatus.READY, "Steady."));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SqlStatementCounter.stop();
+    }
+
+    @Test
+    void listingExpensesIsOneQuery() {
+        assertEquals(1, statements(() -> expenseService.getAllExpenses(user)));
+        assertEquals(1, statements(() -> expenseService.searchExpenses(user, "lunch", 10)));
+    }
+
+    @Test
+    void creatingAnExpenseNeedsNoUserLookup() {
+        ExpenseRequest request = new ExpenseRequest();
+        request.setAmount(new BigDecimal("4.50"));
+        request.setCategory("Food");
+        request.setDescription("Coffee");
+        request.setDate(LocalDate.of(2024, 3, 5));
+        request.setPaymentMethod("Card");
+
+        // id block, budget lookup, then insert and ledger upsert on flush
+        assertEquals(4, statements(() -> {
+            expenseService.createExpense(request, user);
+            entityManager.flush();
+            return null;
+        }));
+    }
+
+    @Test
+    void monthlyInsightsAreTheSnapshotQueriesOnly() {
+        assertEquals(3, statements(() -> insightService.getMonthlyInsights(user, MONTH)));
+    }
+
+    @Test
+    void reportsSpendNoStatementsLoadingTheUser() {
+        reportService.writeCsvReport(user, MONTH.atDay(1), MONTH.atEndOfMonth(), new ByteArrayOutputStream());
+        reportService.writePdfReport(user, MONTH.atDay(1), MONTH.atEndOfMonth(), new ByteArrayOutputStream());
+
+        // CSV exports only need the user's id, so they have no load phase at all
+        assertNull(meterRegistry.find("report.phase.statements").tags("format", "csv", "phase", "load").summary());
+        assertEquals(1, reportStatements("csv", "transactions"));
+        assertEquals(0, reportStatements("pdf", "load"));
+        assertEquals(3, reportStatements("pdf", "snapshot"));
+        assertEquals(1, reportStatements("pdf", "transactions"));
+    }
+
+    private static long statements(Supplier<?> call) {
+        SqlStatementCounter.start();
+        call.get();
+        return SqlStatementCounter.stop();
+    }
+
+    private long reportStatements(String format, String phase) {
+        return (long) meterRegistry.get("report.phase.statements").tags("format", format, "phase", phase)
+                .summary().totalAmount();
+    }
+}
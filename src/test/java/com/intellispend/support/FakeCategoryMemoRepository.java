@@ -0,0 +1,53 @@
+package com.intellispend.support;
+
+import com.intellispend.entity.CategoryMemo;
+import com.intellispend.repository.CategoryMemoRepository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Map-backed stand-in for the memo table. Shared AI results are keyed by description key, a user's
+ * corrections by {@link #correctionKey}.
+ */
+public final class FakeCategoryMemoRepository {
+    private FakeCategoryMemoRepository() {
+    }
+
+    public static String correctionKey(Long userId, String descriptionKey) {
+        return userId + "/" + descriptionKey;
+    }
+
+    public static CategoryMemoRepository backedBy(Map<String, CategoryMemo> table) {
+        CategoryMemoRepository repository = mock(CategoryMemoRepository.class);
+        when(repository.findByUserIdIsNullAndDescriptionKeyIn(any())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            return keys.stream().map(table::get).filter(Objects::nonNull).toList();
+        });
+        when(repository.findByUserId(any())).thenAnswer(invocation -> {
+            Long userId = invocation.getArgument(0);
+            return table.values().stream().filter(memo -> userId.equals(memo.getUserId())).toList();
+        });
+        doAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            table.put(key, CategoryMemo.builder().descriptionKey(key).category(invocation.getArgument(1))
+                    .source(CategoryMemo.SOURCE_AI).updatedAt(LocalDateTime.now()).build());
+            return null;
+        }).when(repository).upsertAiResult(any(), any());
+        doAnswer(invocation -> {
+            Long userId = invocation.getArgument(0);
+            String key = invocation.getArgument(1);
+            table.put(correctionKey(userId, key), CategoryMemo.builder().userId(userId).descriptionKey(key)
+                    .category(invocation.getArgument(2)).source(CategoryMemo.SOURCE_USER).updatedAt(LocalDateTime.now()).build());
+            return null;
+        }).when(repository).upsertCorrection(any(), any(), any());
+        return repository;
+    }
+}
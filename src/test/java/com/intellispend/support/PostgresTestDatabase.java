@@ -0,0 +1,94 @@
+package com.intellispend.support;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Assumptions;
+import org.postgresql.ds.PGSimpleDataSource;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+
+/**
+ * Real PostgreSQL for tests that depend on planner or SQL dialect behaviour. Starts an embedded
+ * server by default; set {@code -Dtest.jdbc.url} (plus {@code test.jdbc.user}/{@code test.jdbc.password})
+ * to use an existing scratch database instead. That database is cleaned before migrating.
+ * <p>
+ * PostgreSQL refuses to run as root, so when the embedded server cannot start the calling test is
+ * skipped rather than failed.
+ */
+public final class PostgresTestDatabase implements AutoCloseable {
+    private final EmbeddedPostgres embedded;
+    private final DataSource dataSource;
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+
+    private PostgresTestDatabase(EmbeddedPostgres embedded, DataSource dataSource, String jdbcUrl, String username, String password) {
+        this.embedded = embedded;
+        this.dataSource = dataSource;
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+    }
+
+    public static PostgresTestDatabase startMigrated() {
+        PostgresTestDatabase database = start();
+        Flyway.configure()
+                .dataSource(database.dataSource)
+                .cleanDisabled(false)
+                .load()
+                .clean();
+        Flyway.configure()
+                .dataSource(database.dataSource)
+                .load()
+                .migrate();
+        return database;
+    }
+
+    private static PostgresTestDatabase start() {
+        String url = System.getProperty("test.jdbc.url");
+        if (url != null && !url.isEmpty()) {
+            String user = System.getProperty("test.jdbc.user", "postgres");
+            String password = System.getProperty("test.jdbc.password", "password");
+            PGSimpleDataSource dataSource = new PGSimpleDataSource();
+            dataSource.setUrl(url);
+            dataSource.setUser(user);
+            dataSource.setPassword(password);
+            return new PostgresTestDatabase(null, dataSource, url, user, password);
+        }
+
+        try {
+            EmbeddedPostgres embedded = EmbeddedPostgres.builder().start();
+            return new PostgresTestDatabase(embedded, embedded.getPostgresDatabase(),
+                    embedded.getJdbcUrl("postgres", "postgres"), "postgres", "");
+        } catch (IOException | RuntimeException e) {
+            Assumptions.abort("Embedded PostgreSQL unavailable (" + e.getMessage()
+                    + "); set -Dtest.jdbc.url to run against an existing database");
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    // For tests that let Spring Boot build its own pool against this database
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (embedded != null) {
+            embedded.close();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.intellispend.support;
+
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the OpenAI chat completions endpoint. Each request is answered by
+ * {@code responder}, which gets the 1-based request number and the request body and returns
+ * status, body and delay. Distinct client addresses are counted, so tests can tell whether
+ * connections were reused.
+ * <p>
+ * {@link #withTls()} serves HTTPS with the self-signed certificate in {@code stub-openai.p12};
+ * clients trust it through {@link #sslContext()}.
+ */
+public class StubOpenAiServer implements AutoCloseable {
+    public record Reply(int status, String body, Duration delay) {
+        public static Reply ok(String content) {
+            return new Reply(200, chatCompletion(content), Duration.ZERO);
+        }
+
+        public Reply delayedBy(Duration delay) {
+            return new Reply(status, body, delay);
+        }
+    }
+
+    public record Request(int number, String body) {
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private volatile Function<Request, Reply> responder = request -> Reply.ok("stub");
+
+    public StubOpenAiServer() throws IOException {
+        this(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0));
+    }
+
+    public static StubOpenAiServer withTls() throws IOException {
+        HttpsServer server = HttpsServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext()));
+        return new StubOpenAiServer(server);
+    }
+
+    private StubOpenAiServer(HttpServer server) {
+        this.server = server;
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", exchange -> {
+            connections.add(exchange.getRemoteAddress());
+            String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Reply reply = responder.apply(new Request(requests.incrementAndGet(), requestBody));
+            try {
+                Thread.sleep(reply.delay().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = reply.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            try {
+                exchange.sendResponseHeaders(reply.status(), body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (IOException e) {
+                // client gave up (timeout); nothing to deliver
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    public void respondWith(Function<Request, Reply> responder) {
+        this.responder = responder;
+    }
+
+    public int requestCount() {
+        return requests.get();
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    public String url() {
+        String scheme = server instanceof HttpsServer ? "https" : "http";
+        return scheme + "://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    /**
+     * Holds the stub's key and trusts its certificate, so it serves the server side and the client side.
+     */
+    public static SSLContext sslContext() {
+        char[] password = "changeit".toCharArray();
+        try (InputStream in = StubOpenAiServer.class.getResourceAsStream("/stub-openai.p12")) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, password);
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, password);
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(keyStore);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+            return context;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot load stub-openai.p12", e);
+        }
+    }
+
+    /**
+     * Answers batch categorization prompts. Descriptions written as {@code "<text> #<Category>"}
+     * are answered with that category; anything else gets "Other".
+     */
+    public static Function<Request, Reply> batchCategorizer(Duration latency) {
+        Pattern item = Pattern.compile("(\\d+)\\. ([^\\\\\"]*)");
+        return request -> {
+            StringBuilder reply = new StringBuilder();
+            Matcher matcher = item.matcher(request.body());
+            while (matcher.find()) {
+                String description = matcher.group(2);
+                int hash = description.lastIndexOf('#');
+                String category = hash >= 0 ? description.substring(hash + 1).trim() : "Other";
+                reply.append(matcher.group(1)).append(": ").append(category).append('\n');
+            }
+            return Reply.ok(reply.toString()).delayedBy(latency);
+        };
+    }
+
+    public static String chatCompletion(String content) {
+        String escaped = content.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"" + escaped + "\"}}]}";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
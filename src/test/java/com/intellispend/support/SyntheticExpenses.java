@@ -0,0 +1,71 @@
+package com.intellispend.support;
+
+import com.intellispend.repository.projection.CategorizedDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Bank-statement-like labelled descriptions: a made-up brand, a word that hints at the category
+ * ("pharmacy", "tuition", ...), a city and reference numbers. A share of rows carry no hint at
+ * all and a random label, so a classifier cannot be sure of everything.
+ */
+public final class SyntheticExpenses {
+    private static final String[][] HINTS = {
+            {"Food", "cafe", "pizzeria", "bistro", "bakery", "burgers", "kitchen", "sushi bar", "diner"},
+            {"Groceries", "supermarket", "fresh mart", "grocers", "hypermarket", "provisions", "organics"},
+            {"Transport", "fuel station", "parking", "metro card", "taxi", "toll plaza", "railways"},
+            {"Shopping", "fashion", "electronics", "apparel", "footwear", "department store", "outlet"},
+            {"Entertainment", "cinemas", "gaming", "tickets", "music", "theatre", "bowling"},
+            {"Health", "pharmacy", "clinic", "hospital", "dental care", "diagnostics", "medicos"},
+            {"Education", "tuition", "academy", "school fees", "courses", "university", "learning"},
+            {"Utilities", "telecom", "broadband", "gas agency", "power corp", "recharge", "waterworks"},
+    };
+    private static final String[] PREFIXES = {"POS ", "UPI/", "CARD ", "ACH ", ""};
+    private static final String[] CITIES = {"BLR", "MUMBAI", "DELHI", "PUNE", "CHENNAI", "HYD"};
+
+    private final Random random;
+    private final double noHintShare;
+
+    public SyntheticExpenses(long seed, double noHintShare) {
+        this.random = new Random(seed);
+        this.noHintShare = noHintShare;
+    }
+
+    public record Row(String description, String category) implements CategorizedDescription {
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public String getCategory() {
+            return category;
+        }
+    }
+
+    /**
+     * {@code count} rows with fresh random brands, so rows from two calls rarely share a brand.
+     */
+    public List<Row> rows(int count) {
+        List<Row> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String[] hints = HINTS[random.nextInt(HINTS.length)];
+            String hint = random.nextDouble() < noHintShare ? "" : " " + hints[1 + random.nextInt(hints.length - 1)];
+            String description = PREFIXES[random.nextInt(PREFIXES.length)] + brand().toUpperCase() + hint.toUpperCase()
+                    + " " + CITIES[random.nextInt(CITIES.length)] + " " + (100_000 + random.nextInt(900_000));
+            rows.add(new Row(description, hints[0]));
+        }
+        return rows;
+    }
+
+    private String brand() {
+        StringBuilder brand = new StringBuilder();
+        int length = 4 + random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            brand.append((char) ('a' + random.nextInt(26)));
+        }
+        return brand.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package com.intellispend.util;
+
+import com.intellispend.util.FxRateTable.Rate;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FxRateTableTest {
+    private static final FxRateTable TABLE = FxRateTable.of(List.of(
+            new Rate("EUR", LocalDate.of(2024, 1, 2), new BigDecimal("1.10")),
+            new Rate("EUR", LocalDate.of(2024, 3, 1), new BigDecimal("1.20")),
+            new Rate("JPY", LocalDate.of(2024, 1, 2), new BigDecimal("0.00705"))));
+
+    @Test
+    void convertsAtTheLatestRateOnOrBeforeTheDate() {
+        assertEquals(new BigDecimal("110.00"), TABLE.toBase(new BigDecimal("100.00"), "EUR", LocalDate.of(2024, 2, 29)));
+        assertEquals(new BigDecimal("120.00"), TABLE.toBase(new BigDecimal("100.00"), "EUR", LocalDate.of(2024, 3, 1)));
+        assertEquals(new BigDecimal("120.00"), TABLE.toBase(new BigDecimal("100.00"), "EUR", LocalDate.of(2025, 1, 1)));
+    }
+
+    @Test
+    void datesBeforeTheFirstRateUseTheEarliestOne() {
+        assertEquals(new BigDecimal("110.00"), TABLE.toBase(new BigDecimal("100.00"), "EUR", LocalDate.of(2023, 6, 1)));
+    }
+
+    @Test
+    void currenciesWithoutRatesConvertOneToOne() {
+        assertEquals(new BigDecimal("12.50"), TABLE.toBase(new BigDecimal("12.50"), "USD", LocalDate.of(2024, 3, 1)));
+        assertEquals(new BigDecimal("12.50"), TABLE.toBase(new BigDecimal("12.50"), null, LocalDate.of(2024, 3, 1)));
+    }
+
+    @Test
+    void currencyCodesAreUpperCase() {
+        assertEquals("EUR", FxRateTable.currencyCode(" eur "));
+        assertNull(FxRateTable.currencyCode(" "));
+        assertTrue(TABLE.hasRates("JPY"));
+        assertFalse(TABLE.hasRates("jpy"));
+        assertFalse(TABLE.hasRates("USD"));
+    }
+
+    @Test
+    void roundsHalfUpToCentsLikeTheSqlFunction() {
+        // 1234 * 0.00705 = 8.6997; 1 * 0.00705 = 0.00705 -> 0.01
+        assertEquals(new BigDecimal("8.70"), TABLE.toBase(new BigDecimal("1234"), "JPY", LocalDate.of(2024, 3, 1)));
+        assertEquals(new BigDecimal("0.01"), TABLE.toBase(BigDecimal.ONE, "JPY", LocalDate.of(2024, 3, 1)));
+        assertEquals(new BigDecimal("-0.01"), TABLE.toBase(BigDecimal.ONE.negate(), "JPY", LocalDate.of(2024, 3, 1)));
+    }
+
+    @Test
+    void tablesCompareByRatesRegardlessOfScale() {
+        FxRateTable rescaled = FxRateTable.of(TABLE.rates().stream()
+                .map(rate -> new Rate(rate.currency(), rate.date(), rate.rate().stripTrailingZeros()))
+                .toList());
+
+        assertEquals(TABLE, rescaled);
+        assertEquals(3, rescaled.size());
+        assertNotEquals(FxRateTable.EMPTY, TABLE);
+        assertThrows(IllegalArgumentException.class, () -> FxRateTable.of(List.of(
+                new Rate("EUR", LocalDate.of(2024, 1, 2), BigDecimal.ZERO))));
+    }
+}
@@ -0,0 +1,78 @@
+package com.intellispend.util;
+
+import com.intellispend.service.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class JwtUtilTest {
+    private static final String SECRET = "test_secret_that_is_at_least_32_characters_long";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void verifiesOnceAndServesRepeatsFromCache() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 100, Duration.ofMinutes(10), meterRegistry);
+        String token = jwtUtil.generateJwtToken(authentication("alice"));
+
+        Claims first = jwtUtil.parseJwtToken(token);
+        Claims second = jwtUtil.parseJwtToken(token);
+
+        assertEquals("alice", first.getSubject());
+        assertEquals("alice", second.getSubject());
+        assertEquals(1, meterRegistry.get("cache.gets").tags("cache", "jwt-claims", "result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void rejectsTokensSignedWithAnotherKeyOrTamperedWith() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 100, Duration.ofMinutes(10), meterRegistry);
+        JwtUtil otherKey = new JwtUtil(SECRET + "x", 60_000, 100, Duration.ofMinutes(10), new SimpleMeterRegistry());
+        String token = jwtUtil.generateJwtToken(authentication("alice"));
+        jwtUtil.parseJwtToken(token);
+
+        String foreign = otherKey.generateJwtToken(authentication("alice"));
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+
+        assertNull(jwtUtil.parseJwtToken(foreign));
+        assertNull(jwtUtil.parseJwtToken(tampered));
+        assertNull(jwtUtil.parseJwtToken("not-a-token"));
+        assertNotNull(jwtUtil.parseJwtToken(token));
+    }
+
+    @Test
+    void cachedTokenStopsWorkingWhenItExpires() throws InterruptedException {
+        // exp is stored in whole seconds, so the token lives between 1 and 2 seconds
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 2_000, 100, Duration.ofMinutes(10), meterRegistry);
+        String token = jwtUtil.generateJwtToken(authentication("alice"));
+        assertNotNull(jwtUtil.parseJwtToken(token));
+
+        Thread.sleep(2_100);
+
+        assertNull(jwtUtil.parseJwtToken(token));
+    }
+
+    @Test
+    void zeroMaxSizeDisablesTheCache() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 0, Duration.ofMinutes(10), meterRegistry);
+        String token = jwtUtil.generateJwtToken(authentication("alice"));
+
+        assertEquals("alice", jwtUtil.parseJwtToken(token).getSubject());
+        assertEquals("alice", jwtUtil.parseJwtToken(token).getSubject());
+        assertNull(meterRegistry.find("cache.gets").tags("cache", "jwt-claims").functionCounter());
+    }
+
+    private static UsernamePasswordAuthenticationToken authentication(String username) {
+        UserDetailsImpl principal = new UserDetailsImpl(1L, username, username + "@example.com", "secret", List.of());
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+}
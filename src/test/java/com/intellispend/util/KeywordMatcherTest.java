@@ -0,0 +1,98 @@
+package com.intellispend.util;
+
+import com.intellispend.util.KeywordMatcher.Rule;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class KeywordMatcherTest {
+
+    @Test
+    void matchesCaseInsensitiveSubstrings() {
+        KeywordMatcher matcher = KeywordMatcher.compile(List.of(
+                new Rule("swiggy", "Food", 0),
+                new Rule("Netflix", "Entertainment", 0)));
+
+        assertEquals("Food", matcher.match("SWIGGY order #123"));
+        assertEquals("Entertainment", matcher.match("netflix.com subscription"));
+        assertNull(matcher.match("Bookstore"));
+        assertNull(matcher.match(""));
+        assertNull(matcher.match(null));
+    }
+
+    @Test
+    void priorityThenLengthThenRuleOrderDecide() {
+        KeywordMatcher matcher = KeywordMatcher.compile(List.of(
+                new Rule("uber", "Transport", 0),
+                new Rule("uber eats", "Food", 0),
+                new Rule("amazon", "Shopping", 0),
+                new Rule("disney", "Entertainment", 0),
+                new Rule("refund", "Other", 10),
+                new Rule("ola", "Transport", 0),
+                new Rule("cab", "Transport", 0),
+                new Rule("bus", "Travel", 0)));
+
+        // Longest keyword beats a shorter one it contains
+        assertEquals("Food", matcher.match("Uber Eats dinner"));
+        // Equal priority and length: the rule listed first wins, wherever it occurs
+        assertEquals("Shopping", matcher.match("Disney+ on Amazon"));
+        assertEquals("Transport", matcher.match("bus after cab"));
+        // Explicit priority beats everything else
+        assertEquals("Other", matcher.match("Uber Eats refund"));
+    }
+
+    @Test
+    void followsFailureLinksIntoOverlappingKeywords() {
+        KeywordMatcher matcher = KeywordMatcher.compile(List.of(
+                new Rule("he", "A", 0),
+                new Rule("she", "B", 0),
+                new Rule("hers", "C", 0),
+                new Rule("his", "D", 0)));
+
+        assertEquals("C", matcher.match("ushers"));
+        assertEquals("B", matcher.match("ushe"));
+        assertEquals("D", matcher.match("thhis"));
+        assertEquals("A", matcher.match("the"));
+    }
+
+    @Test
+    void agreesWithLinearScanOnRandomRules() {
+        Random random = new Random(42);
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rules.add(new Rule(randomWord(random, 2 + random.nextInt(5)), "C" + i, random.nextInt(3)));
+        }
+        KeywordMatcher matcher = KeywordMatcher.compile(rules);
+
+        for (int i = 0; i < 2000; i++) {
+            String text = randomWord(random, 5 + random.nextInt(30));
+            assertEquals(linearScan(rules, text), matcher.match(text), text);
+        }
+    }
+
+    private static String linearScan(List<Rule> rules, String text) {
+        Rule best = null;
+        for (Rule rule : rules) {
+            if (text.toLowerCase(Locale.ROOT).contains(rule.keyword())
+                    && (best == null || rule.priority() > best.priority()
+                    || (rule.priority() == best.priority() && rule.keyword().length() > best.keyword().length()))) {
+                best = rule;
+            }
+        }
+        return best == null ? null : best.category();
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(4)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.intellispend.util;
+
+import com.intellispend.support.SyntheticExpenses;
+import com.intellispend.util.NaiveBayesClassifier.Example;
+import com.intellispend.util.NaiveBayesClassifier.Prediction;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NaiveBayesClassifierTest {
+
+    @Test
+    void learnsCategoryHintsAndGeneralisesToUnseenMerchants() {
+        SyntheticExpenses expenses = new SyntheticExpenses(1, 0.2);
+        NaiveBayesClassifier classifier = NaiveBayesClassifier.train(expenses.rows(5000).stream()
+                .map(row -> new Example(row.description().toLowerCase(), row.category()))
+                .toList());
+
+        List<SyntheticExpenses.Row> unseen = expenses.rows(1000);
+        int answered = 0;
+        int correct = 0;
+        for (SyntheticExpenses.Row row : unseen) {
+            Prediction prediction = classifier.predict(row.description().toLowerCase());
+            if (prediction.confidence() >= 0.95) {
+                answered++;
+                correct += prediction.label().equals(row.category()) ? 1 : 0;
+            }
+        }
+
+        assertEquals(8, classifier.labelCount());
+        assertTrue(answered > 700, "answered " + answered);
+        assertTrue(correct > 0.97 * answered, correct + " of " + answered + " correct");
+    }
+
+    @Test
+    void confidenceIsLowWithoutEvidence() {
+        NaiveBayesClassifier classifier = NaiveBayesClassifier.train(List.of(
+                new Example("green pharmacy", "Health"),
+                new Example("city pharmacy", "Health"),
+                new Example("pizza corner", "Food"),
+                new Example("pizza hut", "Food")));
+
+        assertEquals("Health", classifier.predict("corner pharmacy").label());
+        assertTrue(classifier.predict("qwxz").confidence() < 0.9);
+        assertNull(classifier.predict(""));
+        assertNull(NaiveBayesClassifier.train(List.of()).predict("pizza"));
+    }
+}